@@ -0,0 +1,72 @@
+package es.udc.santiago.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.MazeUtils;
+
+/**
+ * Maze files, written to and read from a temporary file (so the results
+ * depend on the page cache as much as on the code).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileBenchmark {
+	/**
+	 * Height and width of the maze.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+	@Param({ "1", "2" })
+	public long seed;
+
+	private Maze maze;
+	private File written;
+	private File read;
+
+	@Setup
+	public void setUp() throws IOException {
+		maze = new Maze(size, size, seed);
+		written = File.createTempFile("written", ".maze");
+		read = File.createTempFile("read", ".maze");
+		MazeUtils.mazeToFile(maze, read);
+	}
+
+	@TearDown
+	public void tearDown() {
+		written.delete();
+		read.delete();
+	}
+
+	@Benchmark
+	public void mazeToFile() throws IOException {
+		MazeUtils.mazeToFile(maze, written);
+	}
+
+	@Benchmark
+	public Maze fileToMaze() throws IOException {
+		return MazeUtils.fileToMaze(read);
+	}
+}
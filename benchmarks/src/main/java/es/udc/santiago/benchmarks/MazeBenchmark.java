@@ -0,0 +1,96 @@
+package es.udc.santiago.benchmarks;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.MazeGenerator;
+
+/**
+ * Generation of mazes and the queries walkers make on every step. The
+ * queries go over every cell of the maze, so their score is the time per
+ * maze (divide it by size^2 to get the time per cell).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MazeBenchmark {
+	/**
+	 * Height and width of the maze.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+	@Param({ "1", "2" })
+	public long seed;
+
+	private Maze maze;
+
+	@Setup
+	public void setUp() {
+		maze = new Maze(size, size, seed);
+	}
+
+	@Benchmark
+	public Maze generate() {
+		return new Maze(size, size, seed);
+	}
+
+	/**
+	 * Generation with a band of rows per processor.
+	 */
+	@Benchmark
+	public Maze generateParallel() {
+		return new MazeGenerator(seed).generate(size, size, Runtime
+				.getRuntime().availableProcessors());
+	}
+
+	@Benchmark
+	public void findPossibleDirections(Blackhole blackhole) {
+		Point point = new Point();
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				point.setLocation(x, y);
+				blackhole.consume(maze.findPossibleDirections(point));
+			}
+		}
+	}
+
+	/**
+	 * Asks for the right and bottom neighbors of every cell (the left and
+	 * top ones are the same walls).
+	 */
+	@Benchmark
+	public void canWalk(Blackhole blackhole) {
+		Point from = new Point();
+		Point right = new Point();
+		Point down = new Point();
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				from.setLocation(x, y);
+				right.setLocation(x + 1, y);
+				down.setLocation(x, y + 1);
+				blackhole.consume(maze.canWalk(from, right));
+				blackhole.consume(maze.canWalk(from, down));
+			}
+		}
+	}
+}
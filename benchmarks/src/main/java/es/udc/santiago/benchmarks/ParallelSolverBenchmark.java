@@ -0,0 +1,94 @@
+package es.udc.santiago.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelJob;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.ThreadCommunicator;
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.parallel.ParallelWalker;
+import es.udc.santiago.maze.walker.parallel.ParallelWalkingManager;
+import es.udc.santiago.maze.walker.parallel.TileWalker;
+import es.udc.santiago.maze.walker.parallel.TileWalkingManager;
+
+/**
+ * Parallel solver with a thread per process (ThreadCommunicator), from the
+ * broadcast of the maze to the path in the master. Every invocation starts
+ * the threads again, like a run of Main.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelSolverBenchmark {
+	/**
+	 * Height and width of the maze.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+	@Param({ "1", "2" })
+	public long seed;
+	/**
+	 * Processes, including the master.
+	 */
+	@Param({ "2", "5" })
+	public int ranks;
+	/**
+	 * Values of -Dmaze.parallelMode.
+	 */
+	@Param({ "paths", "junctions", "tiles" })
+	public String mode;
+
+	private Maze maze;
+
+	@Setup
+	public void setUp() {
+		maze = new Maze(size, size, seed);
+	}
+
+	@Benchmark
+	public Path solve() throws Exception {
+		final Path[] result = new Path[1];
+		ThreadCommunicator.run(ranks, new ParallelJob() {
+			public void run(Communicator comm) throws Exception {
+				if (mode.equals("tiles")) {
+					if (comm.rank() == 0) {
+						result[0] = new TileWalkingManager(comm, maze).doJob();
+					} else {
+						new TileWalker(comm).doJob();
+					}
+					return;
+				}
+				boolean paths = mode.equals("paths");
+				Maze received = ParallelUtils.broadcastMaze(comm,
+						(comm.rank() == 0) ? maze : null);
+				if (comm.rank() == 0) {
+					result[0] = new ParallelWalkingManager(comm, received,
+							paths).doJob();
+				} else {
+					new ParallelWalker(comm, received, paths).doJob();
+				}
+			}
+		});
+		return result[0];
+	}
+}
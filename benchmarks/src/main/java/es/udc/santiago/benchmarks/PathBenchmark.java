@@ -0,0 +1,76 @@
+package es.udc.santiago.benchmarks;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * Path operations, on the solution of a maze (so its length depends on the
+ * size and the seed).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathBenchmark {
+	/**
+	 * Height and width of the maze.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+	@Param({ "1", "2" })
+	public long seed;
+
+	private Path solution;
+	private byte[] movements;
+
+	@Setup
+	public void setUp() {
+		solution = new SequentialWalker(new Maze(size, size, seed)).walk();
+		movements = solution.toArray();
+	}
+
+	/**
+	 * Builds the solution again, a movement at a time.
+	 */
+	@Benchmark
+	public Path append() {
+		Path path = new Path(solution.getStart());
+		for (byte movement : movements) {
+			path.addMovement(movement);
+		}
+		return path;
+	}
+
+	@Benchmark
+	public Path cloneAndAppend() {
+		Path path = solution.clone();
+		path.addMovement(movements[movements.length - 1]);
+		return path;
+	}
+
+	@Benchmark
+	public Point getCurrentPoint() {
+		return solution.getCurrentPoint();
+	}
+}
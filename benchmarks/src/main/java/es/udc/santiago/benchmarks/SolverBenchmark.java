@@ -0,0 +1,53 @@
+package es.udc.santiago.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * Sequential solver (see ParallelSolverBenchmark for the parallel ones).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolverBenchmark {
+	/**
+	 * Height and width of the maze.
+	 */
+	@Param({ "256", "1024" })
+	public int size;
+	@Param({ "1", "2" })
+	public long seed;
+
+	private Maze maze;
+
+	@Setup
+	public void setUp() {
+		maze = new Maze(size, size, seed);
+	}
+
+	@Benchmark
+	public Path sequentialWalk() {
+		return new SequentialWalker(maze).walk();
+	}
+}
@@ -0,0 +1,139 @@
+package es.udc.santiago.executionEnvironment;
+
+/**
+ * Point to point communication between the processes of a parallel job, as
+ * seen by one of them. Messages are arrays of longs; the ones sent by a
+ * process to another with the same tag are received in order.
+ * 
+ * There are two implementations: MpiCommunicator (one process per rank,
+ * through FastMPJ) and ThreadCommunicator (one thread per rank, in a single
+ * JVM).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public interface Communicator {
+	/**
+	 * Source which matches messages from every process.
+	 */
+	int ANY_SOURCE = -1;
+
+	/**
+	 * Gets the ID of this process.
+	 * 
+	 * @return Rank, from 0 (the master) to size() - 1.
+	 */
+	int rank();
+
+	/**
+	 * Gets the number of processes.
+	 * 
+	 * @return Number of processes.
+	 */
+	int size();
+
+	/**
+	 * Sends a message (it may block until it's received).
+	 * 
+	 * @param buffer
+	 *            Words.
+	 * @param offset
+	 *            First word.
+	 * @param count
+	 *            Number of words.
+	 * @param destination
+	 *            Destination rank.
+	 * @param tag
+	 *            Tag.
+	 */
+	void send(long[] buffer, int offset, int count, int destination, int tag);
+
+	/**
+	 * Starts sending a message (it doesn't block). The buffer mustn't be
+	 * modified until the request completes.
+	 * 
+	 * @param buffer
+	 *            Words.
+	 * @param offset
+	 *            First word.
+	 * @param count
+	 *            Number of words.
+	 * @param destination
+	 *            Destination rank.
+	 * @param tag
+	 *            Tag.
+	 * @return Request of the send.
+	 */
+	Request isend(long[] buffer, int offset, int count, int destination,
+			int tag);
+
+	/**
+	 * Receives a message (it blocks until it arrives).
+	 * 
+	 * @param buffer
+	 *            Array where the words are received.
+	 * @param offset
+	 *            First word.
+	 * @param count
+	 *            Maximum number of words.
+	 * @param source
+	 *            Source rank or ANY_SOURCE.
+	 * @param tag
+	 *            Tag.
+	 * @return Status of the message.
+	 */
+	Status recv(long[] buffer, int offset, int count, int source, int tag);
+
+	/**
+	 * Starts receiving a message (it doesn't block).
+	 * 
+	 * @param buffer
+	 *            Array where the words are received.
+	 * @param offset
+	 *            First word.
+	 * @param count
+	 *            Maximum number of words.
+	 * @param source
+	 *            Source rank or ANY_SOURCE.
+	 * @param tag
+	 *            Tag.
+	 * @return Request of the receive.
+	 */
+	Request irecv(long[] buffer, int offset, int count, int source, int tag);
+
+	/**
+	 * Waits until a message arrives, without receiving it.
+	 * 
+	 * @param source
+	 *            Source rank or ANY_SOURCE.
+	 * @param tag
+	 *            Tag.
+	 * @return Status of the message.
+	 */
+	Status probe(int source, int tag);
+
+	/**
+	 * Checks if a message arrived, without receiving it (it doesn't block).
+	 * 
+	 * @param source
+	 *            Source rank or ANY_SOURCE.
+	 * @param tag
+	 *            Tag.
+	 * @return Status of the message, <i>null</i> if there isn't any.
+	 */
+	Status iprobe(int source, int tag);
+
+	/**
+	 * Waits until one of the posted receives completes, a message which no
+	 * posted receive matches arrives or the time is over. Messages which
+	 * arrived before and weren't received count too, so callers receive
+	 * everything they expect first.
+	 * 
+	 * @param requests
+	 *            Posted receives.
+	 * @param nanos
+	 *            Maximum time to wait (ns), Long.MAX_VALUE to wait for a
+	 *            message.
+	 */
+	void waitAny(Request[] requests, long nanos);
+}
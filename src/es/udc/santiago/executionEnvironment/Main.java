@@ -1,69 +1,548 @@
 package es.udc.santiago.executionEnvironment;
 
+import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.MazeGenerator;
+import es.udc.santiago.maze.graphics.MazeRenderer;
 import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
 import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+import es.udc.santiago.maze.walker.bidirectional.BidirectionalWalker;
+import es.udc.santiago.maze.walker.parallel.ForkJoinWalker;
 import es.udc.santiago.maze.walker.parallel.ParallelWalker;
 import es.udc.santiago.maze.walker.parallel.ParallelWalkingManager;
+import es.udc.santiago.maze.walker.parallel.TileWalker;
+import es.udc.santiago.maze.walker.parallel.TileWalkingManager;
+import es.udc.santiago.maze.walker.sequential.BreadthFirstWalker;
+import es.udc.santiago.maze.walker.sequential.JunctionGraphWalker;
 import es.udc.santiago.maze.walker.sequential.SequentialWalker;
-import mpi.MPI;
+import es.udc.santiago.maze.walker.sequential.StreamingWalker;
 
 public class Main {
 	private static final String LAST_MAZE_FILENAME = "last.maze";
+	/**
+	 * Number of arguments fmpjrun adds before the program ones.
+	 */
+	private static final int MPJ_ARGUMENTS = 6;
+	/**
+	 * Communicator which runs the job on FastMPJ. It's loaded by name, so
+	 * Main builds without FastMPJ (only that class needs it).
+	 */
+	private static final String MPI_COMMUNICATOR = "es.udc.santiago.executionEnvironment.MpiCommunicator";
+	/**
+	 * System property which selects the walker used when there is only one
+	 * process (-Dmaze.walker=sequential|breadth-first|bidirectional|
+	 * bidirectional-threads|junction-graph|fork-join|streaming).
+	 */
+	private static final String WALKER_PROPERTY = "maze.walker";
+	/**
+	 * Walker which reads the maze file by bands (only with a file and without
+	 * FastMPJ).
+	 */
+	private static final String STREAMING_WALKER = "streaming";
+	/**
+	 * System property which sets the rows kept in memory by the streaming
+	 * walker (-Dmaze.windowRows=<number_of_rows>).
+	 */
+	private static final String WINDOW_ROWS_PROPERTY = "maze.windowRows";
+	/**
+	 * System property which enables filling the dead ends before solving
+	 * (-Dmaze.fillDeadEnds=<number_of_threads>).
+	 */
+	private static final String FILL_DEAD_ENDS_PROPERTY = "maze.fillDeadEnds";
+	/**
+	 * System property which sets the seed of generated mazes
+	 * (-Dmaze.seed=<number>), so they can be reproduced.
+	 */
+	private static final String SEED_PROPERTY = "maze.seed";
+	/**
+	 * System property which sets the number of threads used to generate mazes
+	 * (-Dmaze.generatorThreads=<number_of_threads>).
+	 */
+	private static final String GENERATOR_THREADS_PROPERTY = "maze.generatorThreads";
+	/**
+	 * System property which selects how the parallel walkers share the work:
+	 * junctions sent with whole paths, junctions sent alone (the path is
+	 * rebuilt at the end) or one tile of the maze per son
+	 * (-Dmaze.parallelMode=paths|junctions|tiles). Every process must get the
+	 * same value.
+	 */
+	private static final String PARALLEL_MODE_PROPERTY = "maze.parallelMode";
+	/**
+	 * Domain decomposition mode: sons only get their tile, and a maze file
+	 * isn't even loaded by the master.
+	 */
+	private static final String TILES_MODE = "tiles";
+	/**
+	 * System property which runs the parallel walkers without FastMPJ, with a
+	 * thread per process (-Dmaze.ranks=<number_of_processes>).
+	 */
+	private static final String RANKS_PROPERTY = "maze.ranks";
+	/**
+	 * System property which enables the metrics and sets the file they are
+	 * written to at the end, CSV if it ends with ".csv" and JSON otherwise
+	 * (-Dmaze.metrics=<file>).
+	 */
+	private static final String METRICS_PROPERTY = "maze.metrics";
+	/**
+	 * System property which draws the solved maze into a PNG image instead of
+	 * showing it in a window (-Dmaze.image=<file>). Without it the window is
+	 * only shown if there is a display.
+	 */
+	private static final String IMAGE_PROPERTY = "maze.image";
+	/**
+	 * System property which sets the pixels per cell side of the image
+	 * (-Dmaze.imageCellSize=<pixels>).
+	 */
+	private static final String IMAGE_CELL_SIZE_PROPERTY = "maze.imageCellSize";
+	/**
+	 * System property which splits the image in square tiles, named after the
+	 * image file with their row and column (-Dmaze.imageTile=<pixels>).
+	 */
+	private static final String IMAGE_TILE_PROPERTY = "maze.imageTile";
 
 	public static void main(String[] args) {
-		if (args.length < 7 && args.length > 8) {
-			if (Integer.valueOf(args[0]) == 0) { // Master
+		boolean mpiAvailable = isMpiAvailable();
+		// fmpjrun passes its own arguments first (the rank is args[0])
+		int offset = mpiAvailable ? MPJ_ARGUMENTS : 0;
+		boolean master = !mpiAvailable
+				|| (args.length > 0 && Integer.valueOf(args[0]) == 0);
+		if (args.length < offset + 1 || args.length > offset + 2) {
+			if (master) {
 				printUsage();
 			}
 			System.exit(-1);
 		}
+		if (!mpiAvailable && args.length == offset + 1
+				&& STREAMING_WALKER.equals(System.getProperty(WALKER_PROPERTY))) {
+			// The maze isn't loaded, it may not fit in memory
+			solveStreaming(new File(args[offset]));
+			return;
+		}
+		String mode = System.getProperty(PARALLEL_MODE_PROPERTY, "paths");
+		String ranks = System.getProperty(RANKS_PROPERTY);
 		Maze maze = null;
-		if (args.length == 8) {
-			int mazeHeight = Integer.valueOf(args[6]);
-			int mazeWidth = Integer.valueOf(args[7]);
-			maze = new Maze(mazeHeight, mazeWidth, false);
-			if (Integer.valueOf(args[0]) == 0) {
+		File mazeFile = null;
+		// Sons get the maze from the master
+		if (master) {
+			if (args.length == offset + 2) {
+				int mazeHeight = Integer.valueOf(args[offset]);
+				int mazeWidth = Integer.valueOf(args[offset + 1]);
+				String seed = System.getProperty(SEED_PROPERTY);
+				int threads = Integer.valueOf(System.getProperty(
+						GENERATOR_THREADS_PROPERTY, "1"));
+				MazeGenerator generator = new MazeGenerator(
+						(seed != null) ? Long.valueOf(seed) : new Random()
+								.nextLong());
+				maze = generator.generate(mazeHeight, mazeWidth, threads);
 				try {
 					MazeUtils.mazeToFile(maze, new File(LAST_MAZE_FILENAME));
 				} catch (IOException e) {
 					System.out.println("PROBLEM serializing maze");
 				}
+			} else if ((mpiAvailable || ranks != null)
+					&& TILES_MODE.equals(mode)) {
+				// It's read by bands of tiles
+				mazeFile = new File(args[offset]);
+			} else {
+				try {
+					maze = MazeUtils.fileToMaze(new File(args[offset]));
+				} catch (IOException e) {
+					System.out.println("Problem reading the maze, abort.");
+					return;
+				}
 			}
-		} else {
+			String fillThreads = System.getProperty(FILL_DEAD_ENDS_PROPERTY);
+			if (fillThreads != null && maze != null) {
+				maze.fillDeadEnds(Integer.valueOf(fillThreads));
+			}
+		}
+		if (!mpiAvailable && ranks != null) {
+			runThreads(Integer.valueOf(ranks), maze, mazeFile, mode);
+			return;
+		}
+		if (!mpiAvailable) {
+			// Shared memory
+			long startTime = System.currentTimeMillis();
+			Metrics metrics = createMetrics(0);
+			Walker walker = createWalker(maze, "fork-join");
+			walker.setMetrics(metrics);
+			Path result = walker.walk();
+			printResult(maze, result, startTime);
+			writeMetrics(Collections.singletonList(metrics));
+			return;
+		}
+		runMpi(args, maze, mazeFile, mode);
+	}
+
+	/**
+	 * Solves the maze with FastMPJ.
+	 * 
+	 * @param args
+	 *            Program arguments.
+	 * @param maze
+	 *            Maze (<i>null</i> on the sons).
+	 * @param mazeFile
+	 *            Maze file, if the maze wasn't loaded in the tiles mode.
+	 * @param mode
+	 *            Parallel mode.
+	 */
+	private static void runMpi(String[] args, final Maze maze,
+			final File mazeFile, final String mode) {
+		ParallelJob job = new ParallelJob() {
+			public void run(Communicator comm) {
+				runParallel(comm, maze, mazeFile, mode);
+			}
+		};
+		try {
+			// MpiCommunicator.run(args, job)
+			Class.forName(MPI_COMMUNICATOR)
+					.getMethod("run", String[].class, ParallelJob.class)
+					.invoke(null, new Object[] { args, job });
+		} catch (InvocationTargetException e) {
+			System.out.println("Parallel job failed: " + e.getCause());
+		} catch (Exception e) {
+			System.out.println("Parallel job failed: " + e);
+		}
+	}
+
+	/**
+	 * Solves the maze with a thread per process.
+	 * 
+	 * @param nproc
+	 *            Number of processes.
+	 * @param maze
+	 *            Maze.
+	 * @param mazeFile
+	 *            Maze file, if the maze wasn't loaded in the tiles mode.
+	 * @param mode
+	 *            Parallel mode.
+	 */
+	private static void runThreads(int nproc, final Maze maze,
+			final File mazeFile, final String mode) {
+		try {
+			ThreadCommunicator.run(nproc, new ParallelJob() {
+				public void run(Communicator comm) {
+					// Sons get the maze from the master
+					runParallel(comm, (comm.rank() == 0) ? maze : null,
+							mazeFile, mode);
+				}
+			});
+		} catch (Exception e) {
+			System.out.println("Parallel job failed: " + e);
+		}
+	}
+
+	/**
+	 * Solves the maze on a process of a parallel job. If metrics are
+	 * enabled, the sons send theirs to the master at the end.
+	 * 
+	 * @param comm
+	 *            Communicator of the process.
+	 * @param maze
+	 *            Maze (<i>null</i> on the sons).
+	 * @param mazeFile
+	 *            Maze file, if the maze wasn't loaded in the tiles mode.
+	 * @param mode
+	 *            Parallel mode.
+	 */
+	private static void runParallel(Communicator comm, Maze maze,
+			File mazeFile, String mode) {
+		Metrics metrics = createMetrics(comm.rank());
+		if (metrics.isEnabled()) {
+			comm = new MeteredCommunicator(comm, metrics);
+		}
+		solveParallel(comm, maze, mazeFile, mode, metrics);
+		if (!metrics.isEnabled()) {
+			return;
+		}
+		if (comm.rank() != 0) {
+			ParallelUtils.sendMetrics(comm, metrics);
+			return;
+		}
+		List<Metrics> processes = new ArrayList<Metrics>();
+		processes.add(metrics);
+		for (int son = 1; son < comm.size(); son++) {
+			processes.add(ParallelUtils.receiveMetrics(comm, son));
+		}
+		writeMetrics(processes);
+	}
+
+	/**
+	 * Solves the maze on a process of a parallel job.
+	 * 
+	 * @param comm
+	 *            Communicator of the process.
+	 * @param maze
+	 *            Maze (<i>null</i> on the sons).
+	 * @param mazeFile
+	 *            Maze file, if the maze wasn't loaded in the tiles mode.
+	 * @param mode
+	 *            Parallel mode.
+	 * @param metrics
+	 *            Metrics of the process.
+	 */
+	private static void solveParallel(Communicator comm, Maze maze,
+			File mazeFile, String mode, Metrics metrics) {
+		int me = comm.rank();
+		int nproc = comm.size();
+		long startTime = System.currentTimeMillis();
+		if (nproc > 1 && TILES_MODE.equals(mode)) {
+			if (me == 0) {
+				TileWalkingManager twm;
+				if (maze != null) {
+					twm = new TileWalkingManager(comm, maze);
+				} else {
+					twm = new TileWalkingManager(comm, mazeFile);
+				}
+				try {
+					Path result = twm.doJob();
+					if (maze != null) {
+						printResult(maze, result, startTime);
+					} else {
+						printFileResult(mazeFile, result, startTime);
+					}
+				} catch (IOException e) {
+					System.out.println("Problem reading the maze, abort.");
+					ParallelUtils.tellSonsToStop(comm);
+				}
+			} else {
+				TileWalker tw = new TileWalker(comm);
+				tw.setMetrics(metrics);
+				tw.doJob();
+			}
+			return;
+		}
+		if (nproc > 1) {
+			maze = ParallelUtils.broadcastMaze(comm, maze);
+		} else if (maze == null) {
 			try {
-				maze = MazeUtils.fileToMaze(new File(args[6]));
+				maze = MazeUtils.fileToMaze(mazeFile);
 			} catch (IOException e) {
-				System.out.println("Problem reading de maze, abort.");
+				System.out.println("Problem reading the maze, abort.");
 				return;
 			}
 		}
-		args = MPI.Init(args);
-		final int me = MPI.COMM_WORLD.Rank();
-		int nproc = MPI.COMM_WORLD.Size();
-		long startTime = System.currentTimeMillis();
 		// Sequential
 		if (nproc == 1) {
-			SequentialWalker walker = new SequentialWalker(maze);
+			Walker walker = createWalker(maze, "sequential");
+			walker.setMetrics(metrics);
 			Path result = walker.walk();
-			MazeUtils.printResult(maze, result, startTime);
-			MPI.Finalize();
+			printResult(maze, result, startTime);
 			return;
 		}
 		// Parallel
+		boolean paths = !"junctions".equals(mode);
 		if (me == 0) {
 			ParallelWalkingManager pwm;
-			pwm = new ParallelWalkingManager(nproc, maze);
-			pwm.doJob();
+			pwm = new ParallelWalkingManager(comm, maze, paths);
+			printResult(maze, pwm.doJob(), startTime);
 		} else {
-			ParallelWalker pw = new ParallelWalker(me, maze);
+			ParallelWalker pw = new ParallelWalker(comm, maze, paths);
+			pw.setMetrics(metrics);
 			pw.doJob();
 		}
-		MPI.Finalize();
+	}
+
+	/**
+	 * Solves a maze file without loading it.
+	 * 
+	 * @param file
+	 *            Maze file.
+	 */
+	private static void solveStreaming(File file) {
+		long startTime = System.currentTimeMillis();
+		int windowRows = Integer.valueOf(System.getProperty(
+				WINDOW_ROWS_PROPERTY,
+				String.valueOf(StreamingWalker.DEFAULT_WINDOW_ROWS)));
+		Metrics metrics = createMetrics(0);
+		StreamingWalker walker = new StreamingWalker(file, windowRows);
+		walker.setMetrics(metrics);
+		Path result = walker.walk();
+		printFileResult(file, result, startTime);
+		writeMetrics(Collections.singletonList(metrics));
+	}
+
+	/**
+	 * Creates the metrics of a process.
+	 * 
+	 * @param rank
+	 *            Process ID.
+	 * @return Metrics.DISABLED unless METRICS_PROPERTY is set.
+	 */
+	private static Metrics createMetrics(int rank) {
+		if (System.getProperty(METRICS_PROPERTY) == null) {
+			return Metrics.DISABLED;
+		}
+		return new Metrics(rank);
+	}
+
+	/**
+	 * Writes the metrics to the file set by METRICS_PROPERTY (if they are
+	 * enabled).
+	 * 
+	 * @param processes
+	 *            Metrics of every process.
+	 */
+	private static void writeMetrics(List<Metrics> processes) {
+		if (!processes.get(0).isEnabled()) {
+			return;
+		}
+		File file = new File(System.getProperty(METRICS_PROPERTY));
+		try {
+			Metrics.write(processes, file);
+			System.out.println("Metrics written to " + file + ".");
+		} catch (IOException e) {
+			System.out.println("Problem writing the metrics to " + file);
+		}
+	}
+
+	/**
+	 * Prints the result of a maze which wasn't loaded.
+	 * 
+	 * @param file
+	 *            Maze file.
+	 * @param result
+	 *            Path, <i>null</i> if there isn't any.
+	 * @param startTime
+	 *            Start time (ms).
+	 */
+	private static void printFileResult(File file, Path result,
+			long startTime) {
+		long totalTime = System.currentTimeMillis() - startTime;
+		if (result == null) {
+			System.out.println("Maze " + file + " has no solution.");
+		} else {
+			System.out.println("Maze " + file + " solved!");
+			System.out.println("Start point: " + result.getStart());
+			System.out.println("End point: " + result.getCurrentPoint());
+			System.out.println("Path length: " + result.size());
+		}
+		System.out.println("Time: " + totalTime + " (ms).");
+	}
+
+	/**
+	 * Prints the result of a maze, then draws it (see showResult()).
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param result
+	 *            Path, <i>null</i> if there isn't any.
+	 * @param startTime
+	 *            Start time (ms).
+	 */
+	private static void printResult(Maze maze, Path result, long startTime) {
+		if (result == null) {
+			System.out.println("Maze " + maze.getHeight() + "x"
+					+ maze.getWidth() + " has no solution.");
+			System.out.println("Time: "
+					+ (System.currentTimeMillis() - startTime) + " (ms).");
+		} else {
+			MazeUtils.printResult(maze, result, startTime);
+			showResult(maze, result);
+		}
+	}
+
+	/**
+	 * Draws a solved maze into the image set by IMAGE_PROPERTY, or in a
+	 * window if it isn't set and there is a display. Solving is already
+	 * timed, so this doesn't count.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param result
+	 *            Path from start to the end.
+	 */
+	private static void showResult(Maze maze, Path result) {
+		String image = System.getProperty(IMAGE_PROPERTY);
+		if (image == null) {
+			if (!GraphicsEnvironment.isHeadless()) {
+				MazeUtils.showResult(maze, result);
+			}
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		File file = new File(image);
+		try {
+			MazeRenderer renderer = new MazeRenderer(maze, Integer.getInteger(
+					IMAGE_CELL_SIZE_PROPERTY, MazeRenderer.DEFAULT_CELL_SIZE),
+					Runtime.getRuntime().availableProcessors());
+			renderer.addPath(result, Color.BLACK);
+			String tile = System.getProperty(IMAGE_TILE_PROPERTY);
+			if (tile == null) {
+				renderer.writePng(file);
+				System.out.println("Image written to " + file + " ("
+						+ (System.currentTimeMillis() - startTime) + " ms).");
+			} else {
+				List<File> tiles = renderer.writeTiles(file,
+						Integer.valueOf(tile));
+				System.out.println(tiles.size() + " tiles written next to "
+						+ file + " (" + (System.currentTimeMillis() - startTime)
+						+ " ms).");
+			}
+		} catch (IOException e) {
+			System.out.println("Problem writing the image to " + file);
+		} catch (IllegalArgumentException e) {
+			// Wrong cell or tile size
+			System.out.println("Problem drawing the image: " + e.getMessage());
+		}
+	}
 
+	/**
+	 * Determines if FastMPJ is in the classpath, and MpiCommunicator was
+	 * built with it.
+	 * 
+	 * @return boolean.
+	 */
+	private static boolean isMpiAvailable() {
+		try {
+			Class.forName("mpi.MPI");
+			Class.forName(MPI_COMMUNICATOR);
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the walker selected by the WALKER_PROPERTY system property.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param defaultName
+	 *            Walker used if the property isn't set.
+	 * @return Walker.
+	 */
+	private static Walker createWalker(Maze maze, String defaultName) {
+		String name = System.getProperty(WALKER_PROPERTY, defaultName);
+		if (name.equals("breadth-first")) {
+			return new BreadthFirstWalker(maze);
+		}
+		if (name.equals("bidirectional")) {
+			return new BidirectionalWalker(maze, false);
+		}
+		if (name.equals("bidirectional-threads")) {
+			return new BidirectionalWalker(maze, true);
+		}
+		if (name.equals("junction-graph")) {
+			return new JunctionGraphWalker(maze);
+		}
+		if (name.equals("fork-join")) {
+			return new ForkJoinWalker(maze);
+		}
+		return new SequentialWalker(maze);
 	}
 
 	/**
@@ -73,5 +552,13 @@ public class Main {
 		System.out.println("Wrong number of arguments. Usage:");
 		System.out
 				.println("\tfmpjrun -np <number_of_processes> -class es.udc.santiago.executionEnvironment.ParallelMazeSolver <height> <width>");
+		System.out
+				.println("\tjava es.udc.santiago.executionEnvironment.Main <height> <width> (without FastMPJ)");
+		System.out
+				.println("\tjava -Dmaze.ranks=<number_of_processes> es.udc.santiago.executionEnvironment.Main <height> <width> (a thread per process)");
+		System.out
+				.println("\tAdd -Dmaze.metrics=<file> to write the metrics of the solve (CSV if it ends with .csv, JSON otherwise) and -Dmaze.log=true to print the progress of the parallel walkers.");
+		System.out
+				.println("\tAdd -Dmaze.image=<file.png> to draw the solved maze into an image (-Dmaze.imageCellSize=<pixels>, -Dmaze.imageTile=<pixels> to split it in tiles) instead of showing it.");
 	}
 }
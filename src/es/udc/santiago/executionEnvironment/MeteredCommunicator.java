@@ -0,0 +1,120 @@
+package es.udc.santiago.executionEnvironment;
+
+import es.udc.santiago.maze.walker.Metrics;
+
+/**
+ * Communicator which counts the messages and bytes sent and received by tag,
+ * and the time spent in blocking receives, probes and waits (see Metrics).
+ * Receives are counted when they complete, so probes aren't.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MeteredCommunicator implements Communicator {
+	private static final int BYTES_PER_WORD = 8;
+	private Communicator comm;
+	private Metrics metrics;
+
+	/**
+	 * Creates a communicator.
+	 * 
+	 * @param comm
+	 *            Communicator which sends the messages.
+	 * @param metrics
+	 *            Metrics of the process.
+	 */
+	public MeteredCommunicator(Communicator comm, Metrics metrics) {
+		this.comm = comm;
+		this.metrics = metrics;
+	}
+
+	public int rank() {
+		return comm.rank();
+	}
+
+	public int size() {
+		return comm.size();
+	}
+
+	public void send(long[] buffer, int offset, int count, int destination,
+			int tag) {
+		comm.send(buffer, offset, count, destination, tag);
+		metrics.sent(tag, (long) count * BYTES_PER_WORD);
+	}
+
+	public Request isend(long[] buffer, int offset, int count,
+			int destination, int tag) {
+		Request request = comm.isend(buffer, offset, count, destination, tag);
+		metrics.sent(tag, (long) count * BYTES_PER_WORD);
+		return request;
+	}
+
+	public Status recv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		long start = System.nanoTime();
+		Status status = comm.recv(buffer, offset, count, source, tag);
+		metrics.add(Metrics.BLOCKED_NANOS, System.nanoTime() - start);
+		received(status, tag);
+		return status;
+	}
+
+	public Request irecv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		return new MeteredRequest(comm.irecv(buffer, offset, count, source,
+				tag), tag);
+	}
+
+	public Status probe(int source, int tag) {
+		long start = System.nanoTime();
+		Status status = comm.probe(source, tag);
+		metrics.add(Metrics.BLOCKED_NANOS, System.nanoTime() - start);
+		return status;
+	}
+
+	public Status iprobe(int source, int tag) {
+		return comm.iprobe(source, tag);
+	}
+
+	public void waitAny(Request[] requests, long nanos) {
+		Request[] wrapped = new Request[requests.length];
+		for (int i = 0; i < requests.length; i++) {
+			wrapped[i] = (requests[i] instanceof MeteredRequest)
+					? ((MeteredRequest) requests[i]).request : requests[i];
+		}
+		long start = System.nanoTime();
+		comm.waitAny(wrapped, nanos);
+		metrics.add(Metrics.BLOCKED_NANOS, System.nanoTime() - start);
+	}
+
+	private void received(Status status, int tag) {
+		metrics.received(tag, (long) status.getCount() * BYTES_PER_WORD);
+	}
+
+	/**
+	 * Posted receive, counted the first time it's seen completed.
+	 */
+	private class MeteredRequest implements Request {
+		private Request request;
+		private int tag;
+		private Status status;
+
+		MeteredRequest(Request request, int tag) {
+			this.request = request;
+			this.tag = tag;
+		}
+
+		public Status test() {
+			if (status == null) {
+				status = request.test();
+				if (status != null) {
+					received(status, tag);
+				}
+			}
+			return status;
+		}
+
+		public void cancel() {
+			request.cancel();
+		}
+	}
+}
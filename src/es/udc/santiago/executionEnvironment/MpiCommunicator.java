@@ -0,0 +1,172 @@
+package es.udc.santiago.executionEnvironment;
+
+import java.util.concurrent.locks.LockSupport;
+
+import mpi.Intracomm;
+import mpi.MPI;
+
+/**
+ * Communicator of a FastMPJ process (init() must have been called). This is
+ * the only class which uses FastMPJ, so the rest build without it.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MpiCommunicator implements Communicator {
+	private static final long MIN_POLL_DELAY = 1000;
+	private static final long MAX_POLL_DELAY = 1000000;
+	private Intracomm comm;
+
+	/**
+	 * Creates a communicator over MPI.COMM_WORLD.
+	 */
+	public MpiCommunicator() {
+		this(MPI.COMM_WORLD);
+	}
+
+	/**
+	 * Creates a communicator over the given MPI one.
+	 * 
+	 * @param comm
+	 *            MPI communicator.
+	 */
+	public MpiCommunicator(Intracomm comm) {
+		this.comm = comm;
+	}
+
+	/**
+	 * Starts FastMPJ in this process.
+	 * 
+	 * @param args
+	 *            Program arguments (fmpjrun passes its own first).
+	 * @return Arguments left by FastMPJ.
+	 */
+	public static String[] init(String[] args) {
+		return MPI.Init(args);
+	}
+
+	/**
+	 * Stops FastMPJ in this process.
+	 */
+	public static void finalizeMpi() {
+		MPI.Finalize();
+	}
+
+	/**
+	 * Runs a job on this process over MPI.COMM_WORLD, between init() and
+	 * finalizeMpi() (see ThreadCommunicator.run()).
+	 * 
+	 * @param args
+	 *            Program arguments.
+	 * @param job
+	 *            Job.
+	 * @throws Exception
+	 *             If the job fails.
+	 */
+	public static void run(String[] args, ParallelJob job) throws Exception {
+		init(args);
+		try {
+			job.run(new MpiCommunicator());
+		} finally {
+			finalizeMpi();
+		}
+	}
+
+	public int rank() {
+		return comm.Rank();
+	}
+
+	public int size() {
+		return comm.Size();
+	}
+
+	public void send(long[] buffer, int offset, int count, int destination,
+			int tag) {
+		comm.Send(buffer, offset, count, MPI.LONG, destination, tag);
+	}
+
+	public Request isend(long[] buffer, int offset, int count,
+			int destination, int tag) {
+		return new MpiRequest(comm.Isend(buffer, offset, count, MPI.LONG,
+				destination, tag));
+	}
+
+	public Status recv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		return toStatus(comm.Recv(buffer, offset, count, MPI.LONG,
+				toMpiSource(source), tag));
+	}
+
+	public Request irecv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		return new MpiRequest(comm.Irecv(buffer, offset, count, MPI.LONG,
+				toMpiSource(source), tag));
+	}
+
+	public Status probe(int source, int tag) {
+		return toStatus(comm.Probe(toMpiSource(source), tag));
+	}
+
+	public Status iprobe(int source, int tag) {
+		return toStatus(comm.Iprobe(toMpiSource(source), tag));
+	}
+
+	/**
+	 * MPI can't wait for a request and a probe at once, so they are polled
+	 * with sleeps which grow up to MAX_POLL_DELAY.
+	 */
+	public void waitAny(Request[] requests, long nanos) {
+		long start = System.nanoTime();
+		long delay = MIN_POLL_DELAY;
+		while (true) {
+			for (Request request : requests) {
+				if (request.test() != null) {
+					return;
+				}
+			}
+			long left = nanos - (System.nanoTime() - start);
+			if (comm.Iprobe(MPI.ANY_SOURCE, MPI.ANY_TAG) != null || left <= 0) {
+				return;
+			}
+			LockSupport.parkNanos(Math.min(delay, left));
+			delay = Math.min(delay * 2, MAX_POLL_DELAY);
+		}
+	}
+
+	private static int toMpiSource(int source) {
+		return (source == ANY_SOURCE) ? MPI.ANY_SOURCE : source;
+	}
+
+	private static Status toStatus(mpi.Status status) {
+		if (status == null) {
+			return null;
+		}
+		return new Status(status.source, status.Get_count(MPI.LONG));
+	}
+
+	/**
+	 * Wraps an MPI request. MPI frees a request once it completes, so its
+	 * status is kept for the next tests.
+	 */
+	private static class MpiRequest implements Request {
+		private mpi.Request request;
+		private Status status;
+
+		MpiRequest(mpi.Request request) {
+			this.request = request;
+		}
+
+		public Status test() {
+			if (status == null) {
+				status = toStatus(request.Test());
+			}
+			return status;
+		}
+
+		public void cancel() {
+			if (status == null) {
+				request.Cancel();
+			}
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package es.udc.santiago.executionEnvironment;
+
+/**
+ * Code run by every process of a parallel job (see
+ * ThreadCommunicator.run()).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public interface ParallelJob {
+	/**
+	 * Runs the job on a process.
+	 * 
+	 * @param comm
+	 *            Communicator of the process.
+	 * @throws Exception
+	 *             If the process fails.
+	 */
+	void run(Communicator comm) throws Exception;
+}
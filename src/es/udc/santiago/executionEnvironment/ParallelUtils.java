@@ -1,28 +1,86 @@
 package es.udc.santiago.executionEnvironment;
 
 import java.awt.Point;
+import java.util.ArrayList;
 import java.util.List;
 
-import mpi.MPI;
 import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.walker.Metrics;
 import es.udc.santiago.maze.walker.Path;
-import es.udc.santiago.maze.walker.parallel.ParallelWalkingManager;
+import es.udc.santiago.maze.walker.parallel.Junction;
 
 /**
- * Parallelization methods.
+ * Parallelization methods. Work and results travel as a single message each
+ * (see WorkMessage), and the kill signal as a single word.
+ * 
+ * Every method takes the Communicator of the calling process, so the same
+ * code runs over MPI or with a thread per process.
+ * 
+ * Sons never block on a send: their messages are sent with isend() from
+ * their own arrays and the returned requests must be kept until they
+ * complete (see PendingRequests). Messages of unknown size are only received
+ * once iprobe() says they have arrived, and work requests (which have a fixed
+ * size) and halo batches (which have a maximum size) with a receive posted in
+ * advance.
  * 
  * @author Santiago Munín González
  * 
  */
 public class ParallelUtils {
 	private static final byte TAG_MAZE = 1;
+	/**
+	 * Messages from the master to a son (initial work and trace requests).
+	 */
 	private static final byte TAG_DIRECTION = 2;
-	private static final byte TAG_PATH_SIZE = 3;
-	private static final byte TAG_PATH_CONTENT = 4;
+	/**
+	 * Messages from a son to the master.
+	 */
 	public static final byte TAG_COMMUNICATION = 5;
+	private static final byte TAG_STEAL_REQUEST = 6;
+	private static final byte TAG_STEAL_REPLY = 7;
+	/**
+	 * Cells claimed in the visited set of another son.
+	 */
+	private static final byte TAG_CLAIM = 8;
+	private static final byte TAG_CLAIM_REPLY = 9;
+	/**
+	 * Cells reached across the border of a tile.
+	 */
+	private static final byte TAG_HALO = 10;
+	/**
+	 * Kill signal, broadcast through a binomial tree.
+	 */
+	private static final byte TAG_STOP = 11;
+	/**
+	 * Termination detection token, passed around the ring of sons.
+	 */
+	private static final byte TAG_TOKEN = 12;
+	/**
+	 * Metrics of a son, sent to the master at the end of the job.
+	 */
+	private static final byte TAG_METRICS = 13;
+	/**
+	 * Progress messages are printed only with -Dmaze.log=true. It's a
+	 * constant, so callers which build a message should check it first and
+	 * nothing is left of them when it's disabled.
+	 */
+	public static final boolean LOG = Boolean.getBoolean("maze.log");
+	/**
+	 * Returned when there isn't any process.
+	 */
+	public static final int NO_PROCESS = -1;
+	/**
+	 * Width, height, start (x, y), end (x, y), seed flag and seed.
+	 */
+	private static final int MAZE_HEADER_SIZE = 8;
+	/**
+	 * Size of the header of a tile (see {@link #sendTile}).
+	 */
+	public static final int TILE_HEADER_SIZE = 8;
 
 	/**
-	 * Prints information.
+	 * Prints information (only if LOG is enabled).
 	 * 
 	 * @param me
 	 *            Process ID.
@@ -30,6 +88,9 @@ public class ParallelUtils {
 	 *            Message.
 	 */
 	public static void log(int me, String message) {
+		if (!LOG) {
+			return;
+		}
 		if (me == 0) {
 			System.out.println("#" + "MASTER" + ": " + message);
 		} else {
@@ -38,190 +99,663 @@ public class ParallelUtils {
 	}
 
 	/**
-	 * Sends maze to all sons.
+	 * Broadcasts the maze from the master through a binomial tree: every
+	 * process receives it from its parent and forwards it to its children, so
+	 * it takes <i>log2(nproc)</i> steps. Only the packed walls and a small
+	 * header are sent (as longs), so nothing is serialized.
 	 * 
-	 * @param nproc
-	 *            Number of process
+	 * @param comm
+	 *            Communicator.
 	 * @param maze
-	 *            Maze (an array of one).
-	 */
-	public static void sendMaze(int nproc, Maze maze) {
-		Maze[] mazeArr = new Maze[1];
-		mazeArr[0] = maze;
-		log(0, "Sending maze to sons.");
-		for (int i = 1; i < nproc; i++) {
-			MPI.COMM_WORLD.Send(mazeArr, 0, 1, MPI.OBJECT, i, TAG_MAZE);
+	 *            Maze (only used by the master).
+	 * @return The maze (rebuilt from the received words on the sons).
+	 */
+	public static Maze broadcastMaze(Communicator comm, Maze maze) {
+		int me = comm.rank();
+		int nproc = comm.size();
+		long[] header = new long[MAZE_HEADER_SIZE];
+		long[] bits = null;
+		int mask = treeMask(me, nproc);
+		if (me == 0) {
+			header[0] = maze.getWidth();
+			header[1] = maze.getHeight();
+			header[2] = maze.getStart().x;
+			header[3] = maze.getStart().y;
+			header[4] = maze.getEnd().x;
+			header[5] = maze.getEnd().y;
+			header[6] = (maze.getSeed() != null) ? 1 : 0;
+			header[7] = (maze.getSeed() != null) ? maze.getSeed() : 0;
+			bits = maze.getWalls().getBits();
+		} else {
+			// The parent is this process without its lowest set bit
+			int parent = me - mask;
+			comm.recv(header, 0, MAZE_HEADER_SIZE, parent, TAG_MAZE);
+			bits = new long[PackedWalls.wordsFor((int) header[0],
+					(int) header[1])];
+			comm.recv(bits, 0, bits.length, parent, TAG_MAZE);
+		}
+		int words = PackedWalls.wordsFor((int) header[0], (int) header[1]);
+		// Children are this process plus every lower power of two
+		for (mask >>= 1; mask > 0; mask >>= 1) {
+			if (me + mask < nproc) {
+				comm.send(header, 0, MAZE_HEADER_SIZE, me + mask, TAG_MAZE);
+				comm.send(bits, 0, words, me + mask, TAG_MAZE);
+			}
 		}
-		log(0, "Maze sent to all sons.");
-		mazeArr = null;
+		if (me == 0) {
+			return maze;
+		}
+		return new Maze(new PackedWalls((int) header[0], (int) header[1],
+				bits), new Point((int) header[2], (int) header[3]), new Point(
+				(int) header[4], (int) header[5]),
+				(header[6] != 0) ? Long.valueOf(header[7]) : null);
 	}
 
 	/**
-	 * Sends directions to sons. <b>NOTE:</b> It'll use the first processes, no
-	 * matter whether they are busy or not.
+	 * Gets the bit of a process in the binomial tree rooted at the master: its
+	 * children are <i>me + m</i> for every power of two <i>m</i> below it.
 	 * 
+	 * @param me
+	 *            Process ID.
 	 * @param nproc
-	 *            Number of process.
-	 * @param directions
-	 *            List of directions byte (not single directions).
+	 *            Number of processes.
+	 * @return Lowest set bit of <i>me</i>, or the first power of two not
+	 *         below <i>nproc</i> for the master.
 	 */
-	public static void distributeDirections(int nproc, List<Byte> directions,
-			Point start) {
-		byte[] temp = new byte[1];
-		Path p = new Path(start);
-		for (int i = 0; i < directions.size() && i < nproc - 1; i++) {
-			temp[0] = directions.get(i);
-			MPI.COMM_WORLD.Send(temp, 0, 1, MPI.BYTE, i + 1, TAG_DIRECTION);
-			sendPath(i + 1, p);
+	private static int treeMask(int me, int nproc) {
+		int mask = 1;
+		if (me == 0) {
+			while (mask < nproc) {
+				mask <<= 1;
+			}
+		} else {
+			while ((me & mask) == 0) {
+				mask <<= 1;
+			}
 		}
+		return mask;
 	}
 
 	/**
-	 * Sends a direction to a process.
+	 * Sends a message.
 	 * 
+	 * @param comm
+	 *            Communicator.
 	 * @param process
-	 *            Process ID.
-	 * @param direction
-	 *            Direction.
+	 *            Destination.
+	 * @param tag
+	 *            Tag.
+	 * @param message
+	 *            Message.
 	 */
-	public static void sendDirection(int process, byte direction, Path path) {
-		byte[] temp = new byte[1];
-		temp[0] = direction;
-		MPI.COMM_WORLD.Send(temp, 0, 1, MPI.BYTE, process, TAG_DIRECTION);
+	private static void send(Communicator comm, int process, int tag,
+			WorkMessage message) {
+		long[] words = message.encode();
+		comm.send(words, 0, words.length, process, tag);
 	}
 
 	/**
-	 * Sends a NO_DIRECTION byte to all sons (works as a kill signal).
+	 * Starts sending a message (it doesn't block).
 	 * 
-	 * @param nproc
-	 *            Number of process
+	 * @param comm
+	 *            Communicator.
+	 * @param process
+	 *            Destination.
+	 * @param tag
+	 *            Tag.
+	 * @param message
+	 *            Message.
+	 * @return Request of the send.
 	 */
-	public static void tellSonsToStop(int nproc) {
-		log(0, "Asking all sons to stop working.");
-		byte[] temp = new byte[1];
-		for (int i = 1; i < nproc; i++) {
-			temp[0] = Path.NO_DIRECTION;
-			MPI.COMM_WORLD.Send(temp, 0, 1, MPI.BYTE, i, TAG_DIRECTION);
+	private static Request isend(Communicator comm, int process, int tag,
+			WorkMessage message) {
+		long[] words = message.encode();
+		return comm.isend(words, 0, words.length, process, tag);
+	}
+
+	/**
+	 * Receives a message (it blocks until it arrives).
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @param source
+	 *            Source ID, Communicator.ANY_SOURCE if it doesn't matter.
+	 * @param tag
+	 *            Tag.
+	 * @return Message.
+	 */
+	private static WorkMessage receive(Communicator comm, int source, int tag) {
+		Status status = comm.probe(source, tag);
+		long[] words = new long[status.getCount()];
+		comm.recv(words, 0, words.length, status.getSource(), tag);
+		return WorkMessage.decode(words);
+	}
+
+	/**
+	 * Receives a message of longs from any source, if any (it doesn't block).
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @param tag
+	 *            Tag.
+	 * @return Words, <i>null</i> if there isn't any message.
+	 */
+	private static long[] receiveLongs(Communicator comm, int tag) {
+		Status status = comm.iprobe(Communicator.ANY_SOURCE, tag);
+		if (status == null) {
+			return null;
 		}
+		long[] words = new long[status.getCount()];
+		comm.recv(words, 0, words.length, status.getSource(), tag);
+		return words;
 	}
 
 	/**
-	 * Sends a path.
+	 * Starts sending some longs after the sender ID (it doesn't block).
 	 * 
+	 * @param comm
+	 *            Communicator of the source.
 	 * @param process
 	 *            Destination.
-	 * @param path
-	 *            Path.
+	 * @param tag
+	 *            Tag.
+	 * @param values
+	 *            Values.
+	 * @param count
+	 *            Number of values.
+	 * @return Request of the send.
 	 */
-	public static void sendPath(int process, Path path) {
-		int[] array = path.getAsIntArray();
-		int[] data = new int[1];
-		data[0] = array.length;
-		MPI.COMM_WORLD.Send(data, 0, 1, MPI.INT, process, TAG_PATH_SIZE);
-		MPI.COMM_WORLD.Send(array, 0, array.length, MPI.INT, process,
-				TAG_PATH_CONTENT);
+	private static Request sendLongs(Communicator comm, int process, int tag,
+			long[] values, int count) {
+		long[] words = new long[count + 1];
+		words[0] = comm.rank();
+		System.arraycopy(values, 0, words, 1, count);
+		return comm.isend(words, 0, words.length, process, tag);
+	}
+
+	private static List<Junction> singleTask(Junction junction) {
+		List<Junction> tasks = new ArrayList<Junction>(1);
+		tasks.add(junction);
+		return tasks;
 	}
 
 	/**
-	 * Receives the correct path.
+	 * Sends the starting directions to the sons. Directions are dealt round
+	 * robin, so the first <i>min(directions, nproc - 1)</i> sons get some work
+	 * and the rest of them have to steal it.
 	 * 
-	 * @param me
-	 *            Process ID.
-	 * @param source
-	 *            Source ID, MPI.ANY_SOURCE if it doesn't matters.
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param directions
+	 *            List of single directions.
+	 * @param start
+	 *            Starting point.
+	 */
+	public static void distributeDirections(Communicator comm,
+			List<Byte> directions, Point start) {
+		int nproc = comm.size();
+		byte[] temp = new byte[nproc];
+		for (int i = 0; i < directions.size(); i++) {
+			temp[1 + i % (nproc - 1)] |= directions.get(i);
+		}
+		Path p = new Path(start);
+		for (int i = 1; i < nproc && temp[i] != Path.NO_DIRECTION; i++) {
+			send(comm, i, TAG_DIRECTION, new WorkMessage(WorkMessage.WORK, 0,
+					singleTask(new Junction(p, temp[i], Junction.NO_ID)), true));
+		}
+	}
+
+	/**
+	 * Sends the kill signal to all sons. It goes through a binomial tree (see
+	 * {@link #forwardStop(Communicator)}), so the last son gets it after
+	 * <i>log2(nproc)</i> steps.
 	 * 
-	 * @return Correct path.
+	 * @param comm
+	 *            Communicator of the master.
 	 */
-	public static Path receivePath(int me, int source) {
-		log(me, "Receiving path");
-		int[] data = new int[1];
-		MPI.COMM_WORLD.Recv(data, 0, 1, MPI.INT, source, TAG_PATH_SIZE);
-		data = new int[data[0]];
-		MPI.COMM_WORLD
-				.Recv(data, 0, data[0], MPI.INT, source, TAG_PATH_CONTENT);
-		log(me, "Received path");
-		return new Path(data);
+	public static void tellSonsToStop(Communicator comm) {
+		log(0, "Asking all sons to stop working.");
+		forwardStop(comm);
 	}
 
 	/**
-	 * Receives the maze.
+	 * Posts the receive of the kill signal. Sons post it when they start and
+	 * poll it with Request.test().
 	 * 
-	 * @param me
-	 *            Process ID.
-	 * @return Maze
+	 * @param comm
+	 *            Communicator.
+	 * @return Request of the receive.
 	 */
-	public static Maze receiveMaze(int me) {
-		Maze[] m = new Maze[1];
-		MPI.COMM_WORLD.Recv(m, 0, 1, MPI.OBJECT, 0, TAG_MAZE);
-		return m[0];
+	public static Request postStop(Communicator comm) {
+		long[] temp = new long[1];
+		return comm.irecv(temp, 0, 1, Communicator.ANY_SOURCE, TAG_STOP);
 	}
 
 	/**
-	 * Receives a direction.
+	 * Sends the kill signal to the children of a process in the binomial
+	 * tree. Their receives are already posted, so it doesn't wait for them to
+	 * poll it.
 	 * 
-	 * @param me
-	 *            Process ID.
-	 * @param from
-	 *            Sender process ID.
-	 * @return Direction
+	 * @param comm
+	 *            Communicator.
 	 */
-	public static byte receiveDirection(int me, int from) {
-		log(me, "Receiving direction");
-		byte[] direction = new byte[1];
-		MPI.COMM_WORLD.Recv(direction, 0, 1, MPI.BYTE, 0, TAG_DIRECTION);
-		log(me, "Received direction");
-		return direction[0];
+	public static void forwardStop(Communicator comm) {
+		int me = comm.rank();
+		int nproc = comm.size();
+		long[] temp = new long[1];
+		for (int mask = treeMask(me, nproc) >> 1; mask > 0; mask >>= 1) {
+			if (me + mask < nproc) {
+				comm.send(temp, 0, 1, me + mask, TAG_STOP);
+			}
+		}
 	}
 
 	/**
-	 * Sends a wall found event to the master process.
+	 * Passes the termination token to the next son of the ring.
 	 * 
-	 * @param me
-	 *            Source process ID.
+	 * @param comm
+	 *            Communicator.
+	 * @param count
+	 *            Messages sent minus messages received so far.
+	 * @param black
+	 *            <i>true</i> if some son received a message since the token
+	 *            left the first son.
+	 * @return Request of the send.
 	 */
-	public static void sendWall(int me) {
-		Byte[] byteArr = new Byte[3];
-		byteArr[0] = ParallelWalkingManager.WALL_FOUND;
-		byteArr[1] = (byte) me;
-		byteArr[2] = null;
-		MPI.COMM_WORLD.Send(byteArr, 0, 3, MPI.BYTE, 0, TAG_COMMUNICATION);
+	public static Request sendToken(Communicator comm, long count,
+			boolean black) {
+		long[] token = { count, black ? 1 : 0 };
+		return sendLongs(comm, comm.rank() % (comm.size() - 1) + 1, TAG_TOKEN,
+				token, token.length);
 	}
 
 	/**
-	 * Sends new directions to the master process.
+	 * Receives the termination token, if it arrived (it doesn't block).
 	 * 
-	 * @param me
-	 *            Source process ID.
-	 * @param path
-	 *            Walked path.
-	 * @param directions
-	 *            New directions.
+	 * @param comm
+	 *            Communicator.
+	 * @return Sender, count and color (1 if black), <i>null</i> if it didn't
+	 *         arrive.
+	 */
+	public static long[] receiveToken(Communicator comm) {
+		return receiveLongs(comm, TAG_TOKEN);
+	}
+
+	/**
+	 * Tells the master that the sons finished without finding the end.
 	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @return Request of the send.
 	 */
-	public static void sendNewDirections(int me, Path path, byte directions) {
-		Byte[] byteArr = new Byte[3];
-		byteArr[0] = ParallelWalkingManager.NEW_DIRECTIONS;
-		byteArr[1] = (byte) me;
-		byteArr[2] = directions;
-		MPI.COMM_WORLD.Send(byteArr, 0, 3, MPI.BYTE, 0, TAG_COMMUNICATION);
-		sendPath(0, path);
+	public static Request sendNoPath(Communicator comm) {
+		log(comm.rank(), "No path to the end.");
+		return isend(comm, 0, TAG_COMMUNICATION, new WorkMessage(
+				WorkMessage.NO_PATH, comm.rank()));
+	}
+
+	/**
+	 * Receives a message from the master (initial work or trace request), if
+	 * any (it doesn't block).
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @return Message, <i>null</i> if there isn't any.
+	 */
+	public static WorkMessage receiveFromMaster(Communicator comm) {
+		if (comm.iprobe(0, TAG_DIRECTION) == null) {
+			return null;
+		}
+		return receive(comm, 0, TAG_DIRECTION);
+	}
+
+	/**
+	 * Asks another son for work.
+	 * 
+	 * @param comm
+	 *            Communicator of the thief.
+	 * @param victim
+	 *            Victim process ID.
+	 * @return Request of the send.
+	 */
+	public static Request requestWork(Communicator comm, int victim) {
+		long[] temp = new long[1];
+		return comm.isend(temp, 0, 1, victim, TAG_STEAL_REQUEST);
+	}
+
+	/**
+	 * Posts the receive of the next work request from any son. Its status
+	 * (see Request.test()) gives the thief.
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @return Request of the receive.
+	 */
+	public static Request postWorkRequest(Communicator comm) {
+		long[] temp = new long[1];
+		return comm.irecv(temp, 0, 1, Communicator.ANY_SOURCE,
+				TAG_STEAL_REQUEST);
+	}
+
+	/**
+	 * Answers a work request with a batch of junctions.
+	 * 
+	 * @param comm
+	 *            Communicator of the victim.
+	 * @param thief
+	 *            Thief process ID.
+	 * @param tasks
+	 *            Junctions (empty if there's no work).
+	 * @param paths
+	 *            <i>true</i> to send the whole paths, <i>false</i> to send
+	 *            only the junctions.
+	 * @return Request of the send.
+	 */
+	public static Request sendWork(Communicator comm, int thief,
+			List<Junction> tasks, boolean paths) {
+		byte opcode = tasks.isEmpty() ? WorkMessage.NO_WORK : WorkMessage.WORK;
+		return isend(comm, thief, TAG_STEAL_REPLY, new WorkMessage(opcode,
+				comm.rank(), tasks, paths));
+	}
+
+	/**
+	 * Checks (without blocking) if the victim answered.
+	 * 
+	 * @param comm
+	 *            Communicator of the thief.
+	 * @param victim
+	 *            Victim process ID.
+	 * @return boolean.
+	 */
+	public static boolean workReplyArrived(Communicator comm, int victim) {
+		return comm.iprobe(victim, TAG_STEAL_REPLY) != null;
+	}
+
+	/**
+	 * Receives the answer to a work request (once it has arrived).
+	 * 
+	 * @param comm
+	 *            Communicator of the thief.
+	 * @param victim
+	 *            Victim process ID.
+	 * @return Junctions (empty if the victim had no work).
+	 */
+	public static List<Junction> receiveWork(Communicator comm, int victim) {
+		return receive(comm, victim, TAG_STEAL_REPLY).getTasks();
 	}
 
 	/**
 	 * Sends the correct path to master.
 	 * 
-	 * @param me
-	 *            Source process ID.
+	 * @param comm
+	 *            Communicator of the source.
 	 * @param path
 	 *            Correct path.
+	 * @return Request of the send.
+	 */
+	public static Request sendResult(Communicator comm, Path path) {
+		log(comm.rank(), "RESULT SENT!");
+		return isend(comm, 0, TAG_COMMUNICATION, new WorkMessage(
+				WorkMessage.PATH_FOUND, comm.rank(), singleTask(new Junction(
+						path, Path.NO_DIRECTION, Junction.NO_ID)), true));
+	}
+
+	/**
+	 * Tells the master that the end was found, sending only the last
+	 * junctions of the path (the master asks for the rest).
+	 * 
+	 * @param comm
+	 *            Communicator of the source.
+	 * @param steps
+	 *            Junctions and directions taken from them, newest first.
+	 * @param paths
+	 *            <i>true</i> to send the paths of the steps too.
+	 * @return Request of the send.
+	 */
+	public static Request sendResultTrace(Communicator comm,
+			List<Junction> steps, boolean paths) {
+		log(comm.rank(), "RESULT SENT!");
+		return isend(comm, 0, TAG_COMMUNICATION, new WorkMessage(
+				WorkMessage.PATH_FOUND, comm.rank(), steps, paths));
+	}
+
+	/**
+	 * Asks the process which keeps a junction for its predecessors.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param junction
+	 *            Junction (not the start).
+	 */
+	public static void requestTrace(Communicator comm, Junction junction) {
+		send(comm, Junction.owner(junction.getId()), TAG_DIRECTION,
+				new WorkMessage(WorkMessage.TRACE, 0, singleTask(junction),
+						false));
+	}
+
+	/**
+	 * Asks a son how it reached a cell.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param process
+	 *            Son which owns the cell.
+	 * @param cell
+	 *            Cell.
+	 */
+	public static void requestTrace(Communicator comm, int process,
+			Point cell) {
+		send(comm, process, TAG_DIRECTION, new WorkMessage(WorkMessage.TRACE, 0,
+				singleTask(new Junction(new Path(cell), Path.NO_DIRECTION,
+						Junction.NO_ID)), true));
+	}
+
+	/**
+	 * Answers a trace request.
+	 * 
+	 * @param comm
+	 *            Communicator of the source.
+	 * @param steps
+	 *            Junctions and directions taken from them, newest first.
+	 * @param paths
+	 *            <i>true</i> to send the paths of the steps too.
+	 * @return Request of the send.
+	 */
+	public static Request sendTrace(Communicator comm, List<Junction> steps,
+			boolean paths) {
+		return isend(comm, 0, TAG_COMMUNICATION, new WorkMessage(
+				WorkMessage.TRACE, comm.rank(), steps, paths));
+	}
+
+	/**
+	 * Receives a message from any son (it blocks until it arrives).
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @return Message.
+	 */
+	public static WorkMessage receiveFromSons(Communicator comm) {
+		return receive(comm, Communicator.ANY_SOURCE, TAG_COMMUNICATION);
+	}
+
+	/**
+	 * Claims a batch of cells in the visited set of the son which owns them.
+	 * 
+	 * @param comm
+	 *            Communicator of the claimer.
+	 * @param owner
+	 *            Owner process ID.
+	 * @param cells
+	 *            Cells, x (bits 32-63) and y (bits 0-31).
+	 * @param count
+	 *            Number of cells.
+	 * @return Request of the send.
+	 */
+	public static Request sendClaims(Communicator comm, int owner,
+			long[] cells, int count) {
+		return sendLongs(comm, owner, TAG_CLAIM, cells, count);
+	}
+
+	/**
+	 * Receives a batch of claims, if any (it doesn't block).
+	 * 
+	 * @param comm
+	 *            Communicator of the owner.
+	 * @return Claimer process ID followed by the cells, <i>null</i> if there
+	 *         isn't any batch.
+	 */
+	public static long[] receiveClaims(Communicator comm) {
+		return receiveLongs(comm, TAG_CLAIM);
+	}
+
+	/**
+	 * Answers a batch of claims.
+	 * 
+	 * @param comm
+	 *            Communicator of the owner.
+	 * @param claimer
+	 *            Claimer process ID.
+	 * @param granted
+	 *            One bit per claim, set if the cell wasn't visited.
+	 * @return Request of the send.
+	 */
+	public static Request sendClaimReply(Communicator comm, int claimer,
+			long[] granted) {
+		return sendLongs(comm, claimer, TAG_CLAIM_REPLY, granted,
+				granted.length);
+	}
+
+	/**
+	 * Receives the answer to a batch of claims, if any (it doesn't block).
+	 * Batches sent to the same son are answered in order.
+	 * 
+	 * @param comm
+	 *            Communicator of the claimer.
+	 * @return Owner process ID followed by the granted bits, <i>null</i> if
+	 *         there isn't any answer.
+	 */
+	public static long[] receiveClaimReply(Communicator comm) {
+		return receiveLongs(comm, TAG_CLAIM_REPLY);
+	}
+
+	/**
+	 * Sends a tile of the maze to a son.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param son
+	 *            Son process ID.
+	 * @param header
+	 *            Width and height of the maze, start (x, y), end (x, y) and
+	 *            width and height of the tile.
+	 * @param walls
+	 *            Walls of the tile.
+	 */
+	public static void sendTile(Communicator comm, int son, long[] header,
+			PackedWalls walls) {
+		comm.send(header, 0, TILE_HEADER_SIZE, son, TAG_MAZE);
+		long[] bits = walls.getBits();
+		comm.send(bits, 0, PackedWalls.wordsFor(walls.getWidth(),
+				walls.getHeight()), son, TAG_MAZE);
+	}
+
+	/**
+	 * Tells a son which is waiting for its tile that the master couldn't read
+	 * the maze (it sends an empty tile).
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param son
+	 *            Son process ID.
+	 */
+	public static void sendTileFailure(Communicator comm, int son) {
+		long[] header = new long[TILE_HEADER_SIZE];
+		comm.send(header, 0, TILE_HEADER_SIZE, son, TAG_MAZE);
+	}
+
+	/**
+	 * Receives the tile of this son (it blocks until it arrives).
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @param header
+	 *            Array where the header is received (see
+	 *            {@link #sendTile(Communicator, int, long[], PackedWalls)}).
+	 * @return Walls of the tile, <i>null</i> if the master couldn't read the
+	 *         maze (see {@link #sendTileFailure(Communicator, int)}).
+	 */
+	public static PackedWalls receiveTile(Communicator comm, long[] header) {
+		comm.recv(header, 0, TILE_HEADER_SIZE, 0, TAG_MAZE);
+		int width = (int) header[6];
+		int height = (int) header[7];
+		if (width == 0 || height == 0) {
+			return null;
+		}
+		long[] bits = new long[PackedWalls.wordsFor(width, height)];
+		comm.recv(bits, 0, bits.length, 0, TAG_MAZE);
+		return new PackedWalls(width, height, bits);
+	}
+
+	/**
+	 * Sends a batch of cells reached across the border of a tile to the son
+	 * which owns them.
+	 * 
+	 * @param comm
+	 *            Communicator of the source.
+	 * @param neighbor
+	 *            Owner process ID.
+	 * @param cells
+	 *            Encoded cells.
+	 * @param count
+	 *            Number of cells.
+	 * @return Request of the send.
+	 */
+	public static Request sendHalo(Communicator comm, int neighbor,
+			long[] cells, int count) {
+		return sendLongs(comm, neighbor, TAG_HALO, cells, count);
+	}
+
+	/**
+	 * Posts the receive of the next batch of cells from a neighbor. Sons keep
+	 * it posted while they flood and poll it with Request.test().
+	 * 
+	 * @param comm
+	 *            Communicator.
+	 * @param buffer
+	 *            Array where the source process ID and the cells are
+	 *            received (as many words as the biggest batch plus one).
+	 * @return Request of the receive (its count is the number of words).
+	 */
+	public static Request postHalo(Communicator comm, long[] buffer) {
+		return comm.irecv(buffer, 0, buffer.length, Communicator.ANY_SOURCE,
+				TAG_HALO);
+	}
+
+	/**
+	 * Sends the metrics of a son to the master, once the son stopped.
+	 * 
+	 * @param comm
+	 *            Communicator of the son.
+	 * @param metrics
+	 *            Metrics of the son.
+	 */
+	public static void sendMetrics(Communicator comm, Metrics metrics) {
+		long[] values = metrics.toArray();
+		comm.send(values, 0, values.length, 0, TAG_METRICS);
+	}
+
+	/**
+	 * Receives the metrics of a son (it blocks until they arrive).
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param son
+	 *            Son process ID.
+	 * @return Metrics of the son.
 	 */
-	public static void sendResult(int me, Path path) {
-		Byte[] byteArr = new Byte[3];
-		byteArr[0] = ParallelWalkingManager.PATH_FOUND;
-		byteArr[1] = (byte) me;
-		byteArr[2] = null;
-		MPI.COMM_WORLD.Send(byteArr, 0, 3, MPI.BYTE, 0, TAG_COMMUNICATION);
-		sendPath(0, path);
-		log(me, "RESULT SENT!");
+	public static Metrics receiveMetrics(Communicator comm, int son) {
+		long[] values = new long[Metrics.SIZE];
+		comm.recv(values, 0, values.length, son, TAG_METRICS);
+		return Metrics.fromArray(son, values);
 	}
-}
\ No newline at end of file
+}
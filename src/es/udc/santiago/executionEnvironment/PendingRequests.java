@@ -0,0 +1,58 @@
+package es.udc.santiago.executionEnvironment;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Non-blocking operations of a process which haven't completed yet. Their
+ * buffers mustn't be touched until then, so every message is sent from its
+ * own array and kept here.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class PendingRequests {
+	private List<Request> requests = new LinkedList<Request>();
+
+	/**
+	 * Adds an operation.
+	 * 
+	 * @param request
+	 *            Request returned by isend() or irecv().
+	 */
+	public void add(Request request) {
+		requests.add(request);
+	}
+
+	/**
+	 * Forgets the operations which have completed (it doesn't block).
+	 * 
+	 * @return Number of operations still pending.
+	 */
+	public int progress() {
+		Iterator<Request> iterator = requests.iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().test() != null) {
+				iterator.remove();
+			}
+		}
+		return requests.size();
+	}
+
+	/**
+	 * Cancels the operations which haven't completed (when the job is over,
+	 * their destinations may not receive them).
+	 */
+	public void cancel() {
+		progress();
+		for (Request request : requests) {
+			request.cancel();
+		}
+		requests.clear();
+	}
+
+	public int size() {
+		return requests.size();
+	}
+}
@@ -0,0 +1,21 @@
+package es.udc.santiago.executionEnvironment;
+
+/**
+ * Non-blocking operation started by a Communicator.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public interface Request {
+	/**
+	 * Checks if the operation completed (it doesn't block).
+	 * 
+	 * @return Status of the message, <i>null</i> if it didn't complete.
+	 */
+	Status test();
+
+	/**
+	 * Cancels the operation, if it didn't complete.
+	 */
+	void cancel();
+}
@@ -0,0 +1,33 @@
+package es.udc.santiago.executionEnvironment;
+
+/**
+ * Source and size of a message.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class Status {
+	private int source;
+	private int count;
+
+	/**
+	 * Creates a status.
+	 * 
+	 * @param source
+	 *            Source rank.
+	 * @param count
+	 *            Number of words.
+	 */
+	public Status(int source, int count) {
+		this.source = source;
+		this.count = count;
+	}
+
+	public int getSource() {
+		return source;
+	}
+
+	public int getCount() {
+		return count;
+	}
+}
@@ -0,0 +1,346 @@
+package es.udc.santiago.executionEnvironment;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Communicator of a rank run as a thread, so a parallel job can run in a
+ * single JVM without FastMPJ (see {@link #run(int, ParallelJob)}).
+ * 
+ * Every rank has a mailbox: senders copy the message and push it to a
+ * lock-free queue, then wake the owner up if it was waiting. Only the owner
+ * takes messages out of it, so matching them against receives (posted ones
+ * first, then in arrival order) needs no locks. Sends never wait for the
+ * receiver, so isend() returns an already completed request.
+ * 
+ * A communicator must only be used by the thread of its rank.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class ThreadCommunicator implements Communicator {
+	private World world;
+	private int rank;
+	private Mailbox mailbox;
+
+	private ThreadCommunicator(World world, int rank) {
+		this.world = world;
+		this.rank = rank;
+		this.mailbox = world.mailboxes[rank];
+	}
+
+	/**
+	 * Runs a job with a thread per rank and waits until all of them finish.
+	 * If a rank fails, the rest of them are aborted (their next communication
+	 * throws an exception).
+	 * 
+	 * @param size
+	 *            Number of ranks.
+	 * @param job
+	 *            Job.
+	 * @throws Exception
+	 *             The first failure of a rank.
+	 */
+	public static void run(int size, final ParallelJob job) throws Exception {
+		final World world = new World(size);
+		Thread[] threads = new Thread[size];
+		for (int i = 0; i < size; i++) {
+			final ThreadCommunicator comm = new ThreadCommunicator(world, i);
+			threads[i] = new Thread("rank-" + i) {
+				public void run() {
+					try {
+						job.run(comm);
+					} catch (Throwable t) {
+						world.abort(t);
+					}
+				}
+			};
+			world.mailboxes[i].owner = threads[i];
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (world.failure instanceof Exception) {
+			throw (Exception) world.failure;
+		}
+		if (world.failure != null) {
+			throw (Error) world.failure;
+		}
+	}
+
+	public int rank() {
+		return rank;
+	}
+
+	public int size() {
+		return world.mailboxes.length;
+	}
+
+	public void send(long[] buffer, int offset, int count, int destination,
+			int tag) {
+		world.checkAborted();
+		if (destination < 0 || destination >= size()) {
+			throw new IllegalArgumentException("Wrong destination: "
+					+ destination);
+		}
+		Mailbox target = world.mailboxes[destination];
+		target.incoming.offer(new Message(rank, tag, Arrays.copyOfRange(
+				buffer, offset, offset + count)));
+		LockSupport.unpark(target.owner);
+	}
+
+	public Request isend(long[] buffer, int offset, int count,
+			int destination, int tag) {
+		send(buffer, offset, count, destination, tag);
+		ThreadRequest request = new ThreadRequest(null, 0, 0, destination, tag);
+		request.status = new Status(rank, count);
+		return request;
+	}
+
+	public Status recv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		while (true) {
+			Message message = mailbox.take(source, tag);
+			if (message != null) {
+				return message.copyTo(buffer, offset, count);
+			}
+			waitForMessages();
+		}
+	}
+
+	public Request irecv(long[] buffer, int offset, int count, int source,
+			int tag) {
+		ThreadRequest request = new ThreadRequest(buffer, offset, count,
+				source, tag);
+		Message message = mailbox.take(source, tag);
+		if (message != null) {
+			request.status = message.copyTo(buffer, offset, count);
+		} else {
+			mailbox.posted.add(request);
+		}
+		return request;
+	}
+
+	public Status probe(int source, int tag) {
+		while (true) {
+			Status status = iprobe(source, tag);
+			if (status != null) {
+				return status;
+			}
+			waitForMessages();
+		}
+	}
+
+	public Status iprobe(int source, int tag) {
+		world.checkAborted();
+		mailbox.drain();
+		for (Message message : mailbox.unexpected) {
+			if (message.matches(source, tag)) {
+				return new Status(message.source, message.words.length);
+			}
+		}
+		return null;
+	}
+
+	public void waitAny(Request[] requests, long nanos) {
+		long start = System.nanoTime();
+		while (true) {
+			world.checkAborted();
+			mailbox.drain();
+			for (Request request : requests) {
+				if (request.test() != null) {
+					return;
+				}
+			}
+			long left = nanos - (System.nanoTime() - start);
+			if (!mailbox.unexpected.isEmpty() || left <= 0) {
+				return;
+			}
+			if (mailbox.incoming.isEmpty()) {
+				LockSupport.parkNanos(this, left);
+			}
+		}
+	}
+
+	/**
+	 * Parks the thread until a message arrives (or the job is aborted).
+	 */
+	private void waitForMessages() {
+		world.checkAborted();
+		if (mailbox.incoming.isEmpty()) {
+			LockSupport.park(this);
+		}
+	}
+
+	/**
+	 * Ranks of a job.
+	 */
+	private static class World {
+		private Mailbox[] mailboxes;
+		private volatile boolean aborted = false;
+		private volatile Throwable failure;
+
+		World(int size) {
+			mailboxes = new Mailbox[size];
+			for (int i = 0; i < size; i++) {
+				mailboxes[i] = new Mailbox();
+			}
+		}
+
+		synchronized void abort(Throwable t) {
+			if (failure == null) {
+				failure = t;
+			}
+			aborted = true;
+			for (Mailbox mailbox : mailboxes) {
+				LockSupport.unpark(mailbox.owner);
+			}
+		}
+
+		void checkAborted() {
+			if (aborted) {
+				throw new IllegalStateException("Another rank failed", failure);
+			}
+		}
+	}
+
+	/**
+	 * Messages sent to a rank.
+	 */
+	private static class Mailbox {
+		/**
+		 * Messages pushed by the senders (lock-free).
+		 */
+		private Queue<Message> incoming = new ConcurrentLinkedQueue<Message>();
+		private volatile Thread owner;
+		/**
+		 * Arrived messages which didn't match any posted receive, oldest
+		 * first (only used by the owner).
+		 */
+		private LinkedList<Message> unexpected = new LinkedList<Message>();
+		/**
+		 * Posted receives, oldest first (only used by the owner).
+		 */
+		private LinkedList<ThreadRequest> posted =
+				new LinkedList<ThreadRequest>();
+
+		/**
+		 * Moves the arrived messages to the posted receives they match or to
+		 * the unexpected ones.
+		 */
+		void drain() {
+			Message message = incoming.poll();
+			while (message != null) {
+				if (!complete(message)) {
+					unexpected.add(message);
+				}
+				message = incoming.poll();
+			}
+		}
+
+		private boolean complete(Message message) {
+			Iterator<ThreadRequest> iterator = posted.iterator();
+			while (iterator.hasNext()) {
+				ThreadRequest request = iterator.next();
+				if (message.matches(request.source, request.tag)) {
+					request.status = message.copyTo(request.buffer,
+							request.offset, request.count);
+					iterator.remove();
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Takes the oldest unexpected message which matches.
+		 * 
+		 * @return Message, <i>null</i> if there isn't any.
+		 */
+		Message take(int source, int tag) {
+			drain();
+			Iterator<Message> iterator = unexpected.iterator();
+			while (iterator.hasNext()) {
+				Message message = iterator.next();
+				if (message.matches(source, tag)) {
+					iterator.remove();
+					return message;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class Message {
+		private int source;
+		private int tag;
+		private long[] words;
+
+		Message(int source, int tag, long[] words) {
+			this.source = source;
+			this.tag = tag;
+			this.words = words;
+		}
+
+		boolean matches(int source, int tag) {
+			return this.tag == tag
+					&& (source == ANY_SOURCE || this.source == source);
+		}
+
+		/**
+		 * Copies the words to a receive buffer.
+		 * 
+		 * @return Status of the message.
+		 */
+		Status copyTo(long[] buffer, int offset, int count) {
+			if (words.length > count) {
+				throw new IllegalStateException("Message of " + words.length
+						+ " words received in a buffer of " + count);
+			}
+			System.arraycopy(words, 0, buffer, offset, words.length);
+			return new Status(source, words.length);
+		}
+	}
+
+	/**
+	 * Send (completed when it's created) or posted receive.
+	 */
+	private class ThreadRequest implements Request {
+		private long[] buffer;
+		private int offset;
+		private int count;
+		private int source;
+		private int tag;
+		private Status status;
+
+		ThreadRequest(long[] buffer, int offset, int count, int source,
+				int tag) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.count = count;
+			this.source = source;
+			this.tag = tag;
+		}
+
+		public Status test() {
+			if (status == null) {
+				world.checkAborted();
+				mailbox.drain();
+			}
+			return status;
+		}
+
+		public void cancel() {
+			if (status == null) {
+				mailbox.posted.remove(this);
+			}
+		}
+	}
+}
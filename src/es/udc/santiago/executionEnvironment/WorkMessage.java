@@ -0,0 +1,259 @@
+package es.udc.santiago.executionEnvironment;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.parallel.Junction;
+
+/**
+ * Message of the parallel protocol. Every transfer (work, results, stop
+ * signal) is a single array of longs. The first word has the opcode (bits
+ * 0-6), the kind of tasks (bit 7), the worker ID (bits 8-31) and the number
+ * of tasks (bits 32-63). When tasks carry whole paths, it continues with:
+ * 
+ * <pre>
+ * word 1: start point, x (bits 32-63) and y (bits 0-31)
+ * word 2: length of the prefix shared by all tasks
+ * prefix movements (2 bits each, 32 per word)
+ * for every task: length of the rest of its path (bits 32-63) and its
+ *                 directions mask (bits 0-7), then those movements
+ * </pre>
+ * 
+ * Tasks come from the same walk, so they usually share most of their paths
+ * and only the part after the common prefix is sent for each one.
+ * 
+ * Otherwise every task is just two words, so the size doesn't depend on how
+ * deep the junctions are:
+ * 
+ * <pre>
+ * coordinates of the junction, x (bits 32-63) and y (bits 0-31)
+ * identifier of the junction (bits 8-63) and directions mask (bits 0-7)
+ * </pre>
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class WorkMessage {
+	/**
+	 * Tasks to walk.
+	 */
+	public static final byte WORK = 1;
+	/**
+	 * Answer to a work request when there's nothing to give.
+	 */
+	public static final byte NO_WORK = 2;
+	/**
+	 * The only task is the path to the end.
+	 */
+	public static final byte PATH_FOUND = 3;
+	/**
+	 * Request (from the master) or answer (from a son) to walk back the
+	 * predecessors of a junction.
+	 */
+	public static final byte TRACE = 5;
+	/**
+	 * The sons finished without reaching the end.
+	 */
+	public static final byte NO_PATH = 6;
+	private static final long JUNCTIONS_FLAG = 0x80;
+	private static final int HEADER_WORDS = 3;
+	private static final int MOVEMENTS_PER_WORD = 32;
+	private byte opcode;
+	private int worker;
+	private List<Junction> tasks;
+	private boolean paths;
+
+	/**
+	 * Creates a message without tasks.
+	 * 
+	 * @param opcode
+	 *            Operation.
+	 * @param worker
+	 *            Sender process ID.
+	 */
+	public WorkMessage(byte opcode, int worker) {
+		this(opcode, worker, Collections.<Junction> emptyList(), true);
+	}
+
+	/**
+	 * Creates a message.
+	 * 
+	 * @param opcode
+	 *            Operation.
+	 * @param worker
+	 *            Sender process ID.
+	 * @param tasks
+	 *            Junctions and the directions to walk from them.
+	 * @param paths
+	 *            <i>true</i> to send the whole paths (all of them from the
+	 *            same start), <i>false</i> to send only the coordinates and
+	 *            identifiers of the junctions.
+	 */
+	public WorkMessage(byte opcode, int worker, List<Junction> tasks,
+			boolean paths) {
+		this.opcode = opcode;
+		this.worker = worker;
+		this.tasks = tasks;
+		this.paths = paths;
+	}
+
+	public byte getOpcode() {
+		return opcode;
+	}
+
+	public int getWorker() {
+		return worker;
+	}
+
+	public List<Junction> getTasks() {
+		return tasks;
+	}
+
+	/**
+	 * Determines if tasks carry whole paths.
+	 * 
+	 * @return boolean.
+	 */
+	public boolean isPaths() {
+		return paths;
+	}
+
+	/**
+	 * Encodes the message.
+	 * 
+	 * @return Words to send.
+	 */
+	public long[] encode() {
+		long header = (opcode & 0x7FL) | ((worker & 0xFFFFFFL) << 8)
+				| (((long) tasks.size()) << 32);
+		if (!paths) {
+			long[] words = new long[1 + 2 * tasks.size()];
+			words[0] = header | JUNCTIONS_FLAG;
+			for (int i = 0; i < tasks.size(); i++) {
+				Junction task = tasks.get(i);
+				words[1 + 2 * i] = (((long) task.getX()) << 32)
+						| (task.getY() & 0xFFFFFFFFL);
+				words[2 + 2 * i] = (task.getId() << 8)
+						| (task.getDirections() & 0xFFL);
+			}
+			return words;
+		}
+		byte[][] movements = new byte[tasks.size()][];
+		for (int i = 0; i < movements.length; i++) {
+			movements[i] = tasks.get(i).getPath().toArray();
+		}
+		int prefix = commonPrefix(movements);
+		int size = HEADER_WORDS + wordsFor(prefix);
+		for (byte[] task : movements) {
+			size += 1 + wordsFor(task.length - prefix);
+		}
+		long[] words = new long[size];
+		words[0] = header;
+		if (!tasks.isEmpty()) {
+			Point start = tasks.get(0).getPath().getStart();
+			words[1] = (((long) start.x) << 32) | (start.y & 0xFFFFFFFFL);
+		}
+		words[2] = prefix;
+		int position = HEADER_WORDS;
+		if (movements.length > 0) {
+			position = pack(movements[0], 0, prefix, words, position);
+		}
+		for (int i = 0; i < movements.length; i++) {
+			int length = movements[i].length - prefix;
+			words[position++] = (((long) length) << 32)
+					| (tasks.get(i).getDirections() & 0xFFL);
+			position = pack(movements[i], prefix, length, words, position);
+		}
+		return words;
+	}
+
+	/**
+	 * Decodes a message. Decoded paths are clones of the same prefix, so they
+	 * share its movements. Junctions sent without their paths get an empty
+	 * path which starts at them.
+	 * 
+	 * @param words
+	 *            Received words.
+	 * @return Message.
+	 */
+	public static WorkMessage decode(long[] words) {
+		byte opcode = (byte) (words[0] & 0x7F);
+		int worker = (int) ((words[0] >>> 8) & 0xFFFFFF);
+		int count = (int) (words[0] >>> 32);
+		List<Junction> tasks = new ArrayList<Junction>(count);
+		if ((words[0] & JUNCTIONS_FLAG) != 0) {
+			for (int i = 0; i < count; i++) {
+				long point = words[1 + 2 * i];
+				long rest = words[2 + 2 * i];
+				tasks.add(new Junction(new Path(new Point((int) (point >>> 32),
+						(int) point)), (byte) rest, rest >> 8));
+			}
+			return new WorkMessage(opcode, worker, tasks, false);
+		}
+		Point start = new Point((int) (words[1] >>> 32), (int) words[1]);
+		int prefixLength = (int) words[2];
+		Path prefix = new Path(start);
+		int position = unpack(words, HEADER_WORDS, prefixLength, prefix);
+		for (int i = 0; i < count; i++) {
+			int length = (int) (words[position] >>> 32);
+			byte directions = (byte) words[position];
+			Path path = prefix.clone();
+			position = unpack(words, position + 1, length, path);
+			tasks.add(new Junction(path, directions, Junction.NO_ID));
+		}
+		return new WorkMessage(opcode, worker, tasks, true);
+	}
+
+	private static int wordsFor(int movements) {
+		return (movements + MOVEMENTS_PER_WORD - 1) / MOVEMENTS_PER_WORD;
+	}
+
+	private static int commonPrefix(byte[][] movements) {
+		if (movements.length == 0) {
+			return 0;
+		}
+		int prefix = movements[0].length;
+		for (int i = 1; i < movements.length; i++) {
+			int j = 0;
+			while (j < prefix && j < movements[i].length
+					&& movements[i][j] == movements[0][j]) {
+				j++;
+			}
+			prefix = j;
+		}
+		return prefix;
+	}
+
+	/**
+	 * Packs some movements, 2 bits each.
+	 * 
+	 * @return Position after the written words.
+	 */
+	private static int pack(byte[] movements, int from, int length,
+			long[] words, int position) {
+		for (int i = 0; i < length; i++) {
+			long code = Integer.numberOfTrailingZeros(movements[from + i]);
+			int shift = (i % MOVEMENTS_PER_WORD) * 2;
+			words[position + i / MOVEMENTS_PER_WORD] |= code << shift;
+		}
+		return position + wordsFor(length);
+	}
+
+	/**
+	 * Adds packed movements to a path.
+	 * 
+	 * @return Position after the read words.
+	 */
+	private static int unpack(long[] words, int position, int length,
+			Path path) {
+		for (int i = 0; i < length; i++) {
+			long word = words[position + i / MOVEMENTS_PER_WORD];
+			int code = (int) (word >>> ((i % MOVEMENTS_PER_WORD) * 2)) & 0x3;
+			path.addMovement((byte) (1 << code));
+		}
+		return position + wordsFor(length);
+	}
+}
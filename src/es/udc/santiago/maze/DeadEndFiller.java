@@ -0,0 +1,189 @@
+package es.udc.santiago.maze;
+
+import es.udc.santiago.maze.utils.IntRingBuffer;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Fills dead ends: every cell with only one opening (except start and end)
+ * gets it closed, which may turn its neighbor into a new dead end. In a
+ * perfect maze only the route from start to end remains open.
+ * 
+ * The fill can be split in row bands, one per thread. Bands start at a word
+ * boundary of the packed walls, so threads never write the same word; a
+ * thread skips the walls stored in the previous band and a final sequential
+ * pass finishes whatever was left.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class DeadEndFiller {
+	private static final int BITS_PER_WORD = 64;
+	private Maze maze;
+	private PackedWalls walls;
+	private int width;
+	private int height;
+	private int start;
+	private int end;
+
+	DeadEndFiller(Maze maze) {
+		this.maze = maze;
+		this.walls = maze.getWalls();
+		this.width = maze.getWidth();
+		this.height = maze.getHeight();
+		this.start = cellOf(maze.getStart().x, maze.getStart().y);
+		this.end = cellOf(maze.getEnd().x, maze.getEnd().y);
+	}
+
+	private int cellOf(int x, int y) {
+		return y * width + x;
+	}
+
+	/**
+	 * Fills all dead ends.
+	 * 
+	 * @param threads
+	 *            Number of threads.
+	 * @return Number of filled cells.
+	 */
+	int fill(int threads) {
+		int filled = 0;
+		if (threads > 1 && height > 1) {
+			// Before the threads share it
+			walls.makeWritable();
+			filled += fillBands(threads);
+		}
+		return filled + fillRows(0, height, false);
+	}
+
+	/**
+	 * Fills each band on its own thread.
+	 * 
+	 * @param threads
+	 *            Number of threads.
+	 * @return Number of filled cells.
+	 */
+	private int fillBands(int threads) {
+		// Rows multiple of step start at a word boundary
+		int step = (BITS_PER_WORD / PackedWalls.BITS_PER_CELL)
+				/ gcd(width, BITS_PER_WORD / PackedWalls.BITS_PER_CELL);
+		int rowsPerBand = (height + threads - 1) / threads;
+		rowsPerBand = ((rowsPerBand + step - 1) / step) * step;
+		int bands = (height + rowsPerBand - 1) / rowsPerBand;
+		final int[] filled = new int[bands];
+		Thread[] workers = new Thread[bands];
+		for (int i = 0; i < bands; i++) {
+			final int band = i;
+			final int firstRow = i * rowsPerBand;
+			final int lastRow = Math.min(height, firstRow + rowsPerBand);
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					filled[band] = fillRows(firstRow, lastRow, true);
+				}
+			}, "dead-end-filler-" + i);
+			workers[i].start();
+		}
+		int result = 0;
+		for (int i = 0; i < bands; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while filling", e);
+			}
+			result += filled[i];
+		}
+		return result;
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Fills the dead ends of some rows with a worklist.
+	 * 
+	 * @param firstRow
+	 *            First row (inclusive).
+	 * @param lastRow
+	 *            Last row (exclusive).
+	 * @param band
+	 *            If <i>true</i>, walls stored above firstRow aren't touched.
+	 * @return Number of filled cells.
+	 */
+	private int fillRows(int firstRow, int lastRow, boolean band) {
+		IntRingBuffer worklist = new IntRingBuffer(width);
+		for (int y = firstRow; y < lastRow; y++) {
+			for (int x = 0; x < width; x++) {
+				if (isDeadEnd(x, y)) {
+					worklist.add(cellOf(x, y));
+				}
+			}
+		}
+		int filled = 0;
+		while (!worklist.isEmpty()) {
+			int cell = worklist.poll();
+			int x = cell % width;
+			int y = cell / width;
+			if (!isDeadEnd(x, y)) {
+				continue;
+			}
+			int direction = maze.openDirections(x, y, Path.NO_DIRECTION);
+			if (band && direction == Path.UP && y == firstRow) {
+				continue;
+			}
+			close(x, y, direction);
+			filled++;
+			int nextX = x;
+			int nextY = y;
+			switch (direction) {
+			case Path.UP:
+				nextY--;
+				break;
+			case Path.RIGHT:
+				nextX++;
+				break;
+			case Path.DOWN:
+				nextY++;
+				break;
+			case Path.LEFT:
+				nextX--;
+				break;
+			}
+			if (nextY >= firstRow && nextY < lastRow
+					&& isDeadEnd(nextX, nextY)) {
+				worklist.add(cellOf(nextX, nextY));
+			}
+		}
+		return filled;
+	}
+
+	private boolean isDeadEnd(int x, int y) {
+		int cell = cellOf(x, y);
+		return cell != start
+				&& cell != end
+				&& Integer.bitCount(maze.openDirections(x, y,
+						Path.NO_DIRECTION)) == 1;
+	}
+
+	private void close(int x, int y, int direction) {
+		switch (direction) {
+		case Path.UP:
+			walls.setTopWall(x, y, true);
+			break;
+		case Path.RIGHT:
+			walls.setRightWall(x, y, true);
+			break;
+		case Path.DOWN:
+			walls.setBottomWall(x, y, true);
+			break;
+		case Path.LEFT:
+			walls.setLeftWall(x, y, true);
+			break;
+		}
+	}
+}
@@ -2,10 +2,6 @@ package es.udc.santiago.maze;
 
 import java.awt.Point;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
 import java.util.Random;
 
 import es.udc.santiago.maze.walker.Path;
@@ -18,13 +14,16 @@ import es.udc.santiago.maze.walker.Path;
  * 
  */
 public class Maze implements Serializable {
-	private static final long serialVersionUID = -3629143399901626658L;
-	private static float MINIMUM_DISTANCE_DIVISOR = 3f;
-	private Cell[][] data;
+	private static final long serialVersionUID = 5811470930519334208L;
+	private PackedWalls walls;
 	private int width;
 	private int height;
 	private Point start;
 	private Point end;
+	/**
+	 * Seed it was generated from, <i>null</i> if unknown.
+	 */
+	private Long seed;
 
 	/**
 	 * Generates a random maze
@@ -37,13 +36,34 @@ public class Maze implements Serializable {
 	 *            points are generated randomly if <i>true</i>.
 	 */
 	public Maze(int height, int width, boolean randomStartEnd) {
+		this(height, width, new Random().nextLong());
+	}
+
+	/**
+	 * Generates a random maze which only depends on the seed.
+	 * 
+	 * @param height
+	 *            Height
+	 * @param width
+	 *            Width
+	 * @param seed
+	 *            Seed of the random numbers.
+	 * @see MazeGenerator
+	 */
+	public Maze(int height, int width, long seed) {
+		Maze generated = new MazeGenerator(seed).generate(height, width);
+		this.walls = generated.walls;
 		this.width = width;
 		this.height = height;
-		this.generate();
+		this.start = generated.start;
+		this.end = generated.end;
+		this.seed = generated.seed;
 	}
 
 	/**
-	 * Creates a maze from a table of cells.
+	 * Creates a maze from a table of cells. Two neighbors are connected only
+	 * if both of them have the shared wall down; <i>null</i> cells have all
+	 * walls up.
 	 * 
 	 * @param cells
 	 *            Maze data.
@@ -51,171 +71,58 @@ public class Maze implements Serializable {
 	public Maze(Cell[][] cells, Point start, Point end) {
 		this.height = cells.length;
 		this.width = cells[0].length;
-		this.data = cells;
-		this.start = start;
-		this.end = end;
-	}
-
-	/**
-	 * Generates a perfect maze (one without any loops or closed circuits, and
-	 * without any inaccessible areas.)
-	 */
-	private void generate() {
-		// Initializes all cells
-		data = new Cell[height][width];
+		this.walls = new PackedWalls(width, height);
 		for (int i = 0; i < height; i++) {
 			for (int j = 0; j < width; j++) {
-				// data[height..0][0..width]
-				data[i][j] = new Cell(i, j);
-			}
-		}
-
-		// Picks start and end
-		Random randomGenerator = new Random();
-		this.start = new Point(randomGenerator.nextInt(width),
-				randomGenerator.nextInt(height));
-		this.end = new Point(randomGenerator.nextInt(width),
-				randomGenerator.nextInt(height));
-		double distanceTopLeft_RightDown = Math.sqrt(Math.pow(width, 2)
-				+ Math.pow(height, 2));
-		while (start.distance(end) < (distanceTopLeft_RightDown / MINIMUM_DISTANCE_DIVISOR)) {
-			this.start = new Point(randomGenerator.nextInt(width),
-					randomGenerator.nextInt(height));
-			this.end = new Point(randomGenerator.nextInt(width),
-					randomGenerator.nextInt(height));
-		}
-		// Picks a random cell
-		int x = randomGenerator.nextInt(height);
-		int y = randomGenerator.nextInt(width);
-		Cell currentCell = data[x][y];
-
-		// Starts generation
-		int visitedCells = 1;
-		int totalCells = height * width;
-		Queue<Cell> cellStack = new LinkedList<Cell>();
-		while (visitedCells < totalCells) {
-			cellStack.add(currentCell);
-			Cell[] neighbors = getNeighbors(currentCell, true);
-			List<Cell> neighborsNotNull = new ArrayList<Cell>();
-			for (int i = 0; i < neighbors.length; i++) {
-				if (neighbors[i] != null) {
-					neighborsNotNull.add(neighbors[i]);
+				Cell cell = cells[i][j];
+				if (cell == null) {
+					continue;
+				}
+				if (j < width - 1) {
+					walls.setRightWall(j, i, cell.hasRightWall()
+							|| cells[i][j + 1] == null
+							|| cells[i][j + 1].hasLeftWall());
+				} else {
+					walls.setRightWall(j, i, cell.hasRightWall());
+				}
+				if (i < height - 1) {
+					walls.setBottomWall(j, i, cell.hasBottomWall()
+							|| cells[i + 1][j] == null
+							|| cells[i + 1][j].hasTopWall());
+				} else {
+					walls.setBottomWall(j, i, cell.hasBottomWall());
 				}
-			}
-			int numberOfNeighbors = neighborsNotNull.size();
-			if (numberOfNeighbors > 0) {
-				// Choose one at random
-				Cell random = neighborsNotNull.get(randomGenerator
-						.nextInt(numberOfNeighbors));
-				// Knocks down the wall between it and CurrentCell
-				openPath(currentCell, random);
-				// Writes changes
-				data[random.getX()][random.getY()] = random;
-				data[currentCell.getX()][currentCell.getY()] = currentCell;
-				// Raises the number of visitedCells and continues the path with
-				// the new cell chosen.
-				visitedCells++;
-				currentCell = random;
-			} else {
-				currentCell = cellStack.poll();
 			}
 		}
+		this.start = start;
+		this.end = end;
 	}
 
 	/**
-	 * Gets all neighbors of the given cell.
+	 * Creates a maze from packed walls.
 	 * 
-	 * @param cell
-	 *            Origin cell.
-	 * @param allWallsUp
-	 *            Only gets neighbors with all walls up.
-	 * @return An array of cells in this order: TOP, RIGHT, BOTTOM, LEFT.
+	 * @param walls
+	 *            Maze data.
 	 */
-	private Cell[] getNeighbors(Cell cell, boolean allWallsUp) {
-		Cell[] result = new Cell[4];
-		for (int i = 0; i < 4; i++) {
-			result[i] = null;
-		}
-		int x = cell.getX();
-		int y = cell.getY();
-		if (allWallsUp) {
-			// Top neighbor
-			if (x > 0) {
-				result[0] = data[x - 1][y].hasAllWallsUp() ? data[x - 1][y]
-						: null;
-			}
-			// Right neighbor
-			if (y < width - 1) {
-				result[1] = data[x][y + 1].hasAllWallsUp() ? data[x][y + 1]
-						: null;
-			}
-			// Bottom neighbor
-			if (x < height - 1) {
-				result[2] = data[x + 1][y].hasAllWallsUp() ? data[x + 1][y]
-						: null;
-			}
-			// Left neighbor
-			if (y > 0) {
-				result[3] = data[x][y - 1].hasAllWallsUp() ? data[x][y - 1]
-						: null;
-			}
-		} else {
-			// Top neighbor
-			if (x > 0) {
-				result[0] = data[x - 1][y];
-			}
-			// Right neighbor
-			if (y < width - 1) {
-				result[1] = data[x][y + 1];
-			}
-			// Bottom neighbor
-			if (x < height - 1) {
-				result[2] = data[x + 1][y];
-			}
-			// Left neighbor
-			if (y > 0) {
-				result[3] = data[x][y - 1];
-			}
-		}
-		return result;
+	public Maze(PackedWalls walls, Point start, Point end) {
+		this(walls, start, end, null);
 	}
 
 	/**
-	 * Knocks out the walls between two cells.
+	 * Creates a maze from packed walls.
 	 * 
-	 * @param from
-	 *            First cell.
-	 * @param to
-	 *            Neighbor of the first cell.
+	 * @param walls
+	 *            Maze data.
+	 * @param seed
+	 *            Seed it was generated from (<i>null</i> if unknown).
 	 */
-	private void openPath(Cell from, Cell to) {
-		if (from.getX() == to.getX()) {
-			// Same row
-			if (from.getY() + 1 == to.getY()) {
-				// From -> To
-				from.setRightWall(false);
-				to.setLeftWall(false);
-			} else {
-				if (from.getY() - 1 == to.getY()) {
-					// To <- From
-					from.setLeftWall(false);
-					to.setRightWall(false);
-				}
-			}
-		} else {
-			// Same column
-			if (from.getX() + 1 == to.getX()) {
-				// From above to
-				from.setBottomWall(false);
-				to.setTopWall(false);
-			} else {
-				if (from.getX() - 1 == to.getX()) {
-					// To above from
-					from.setTopWall(false);
-					to.setBottomWall(false);
-				}
-			}
-		}
+	public Maze(PackedWalls walls, Point start, Point end, Long seed) {
+		this.height = walls.getHeight();
+		this.width = walls.getWidth();
+		this.walls = walls;
+		this.start = start;
+		this.end = end;
+		this.seed = seed;
 	}
 
 	public Point getStart() {
@@ -234,24 +141,47 @@ public class Maze implements Serializable {
 		this.end = end;
 	}
 
-	public int getWidth() {
-		return width;
+	/**
+	 * Gets the seed the maze was generated from.
+	 * 
+	 * @return Seed, <i>null</i> if unknown.
+	 */
+	public Long getSeed() {
+		return seed;
 	}
 
-	public void setWidth(int width) {
-		this.width = width;
+	public int getWidth() {
+		return width;
 	}
 
 	public int getHeight() {
 		return height;
 	}
 
-	public void setHeight(int height) {
-		this.height = height;
+	/**
+	 * Gets the packed walls of the maze.
+	 * 
+	 * @return Backing grid (not a copy).
+	 */
+	public PackedWalls getWalls() {
+		return walls;
 	}
 
+	/**
+	 * Gets a view of a cell. Changing its walls changes the maze.
+	 * 
+	 * @param row
+	 *            Row.
+	 * @param column
+	 *            Column.
+	 * @return Cell view.
+	 */
 	public Cell getCell(int row, int column) {
-		return data[row][column];
+		if (row < 0 || row >= height || column < 0 || column >= width) {
+			throw new ArrayIndexOutOfBoundsException("Cell (" + row + ", "
+					+ column + ") is out of the maze.");
+		}
+		return new PackedCell(walls, row, column);
 	}
 
 	/**
@@ -272,28 +202,26 @@ public class Maze implements Serializable {
 				|| (toy < 0 || toy >= height) || (tox < 0 || tox >= width)) {
 			return false;
 		}
-		Cell fromCell = data[fromy][fromx];
-		Cell toCell = data[toy][tox];
 		if (fromy == toy) {
 			// Same row
 			if (fromx + 1 == tox) {
 				// From -> To
-				return (!fromCell.hasRightWall() && !toCell.hasLeftWall());
+				return !walls.hasRightWall(fromx, fromy);
 			} else {
 				if (fromx - 1 == tox) {
 					// To <- From
-					return (!fromCell.hasLeftWall() && !toCell.hasRightWall());
+					return !walls.hasRightWall(tox, toy);
 				}
 			}
 		} else {
 			// Same column
 			if (fromy + 1 == toy) {
 				// From above to
-				return (!fromCell.hasBottomWall() && !toCell.hasTopWall());
+				return !walls.hasBottomWall(fromx, fromy);
 			} else {
 				if (fromy - 1 == toy) {
 					// To above from
-					return (!fromCell.hasTopWall() && !toCell.hasBottomWall());
+					return !walls.hasBottomWall(tox, toy);
 				}
 			}
 		}
@@ -310,24 +238,44 @@ public class Maze implements Serializable {
 	 * @return A byte which contains information of all directions.
 	 */
 	public byte findPossibleDirections(Point point, byte incomingDirection) {
-		int result = 15;
-		if (!(this.canWalk(point, new Point(point.x, point.y - 1))
-				&& incomingDirection != Path.DOWN)) {
-			result = result & ~Path.UP;
+		return (byte) this.openDirections(point.x, point.y, incomingDirection);
+	}
+
+	/**
+	 * Finds out possible directions from a cell without creating any object.
+	 * It reads the packed walls directly, so it's the one walkers should use
+	 * on every step.
+	 * 
+	 * @param x
+	 *            X coord of the cell.
+	 * @param y
+	 *            Y coord of the cell.
+	 * @param incomingDirection
+	 *            Incoming direction (the way back will be excluded)
+	 * @return Directions mask (see Path's constants).
+	 */
+	public int openDirections(int x, int y, int incomingDirection) {
+		if (x < 0 || x >= width || y < 0 || y >= height) {
+			return Path.NO_DIRECTION;
+		}
+		int result = Path.NO_DIRECTION;
+		if (y > 0 && incomingDirection != Path.DOWN
+				&& !walls.hasBottomWall(x, y - 1)) {
+			result |= Path.UP;
 		}
-		if (!(this.canWalk(point, new Point(point.x + 1, point.y))
-				&& incomingDirection != Path.LEFT)) {
-			result = result & ~Path.RIGHT;
+		if (x < width - 1 && incomingDirection != Path.LEFT
+				&& !walls.hasRightWall(x, y)) {
+			result |= Path.RIGHT;
 		}
-		if (!(this.canWalk(point, new Point(point.x, point.y + 1))
-				&& incomingDirection != Path.UP)) {
-			result = result & ~Path.DOWN;
+		if (y < height - 1 && incomingDirection != Path.UP
+				&& !walls.hasBottomWall(x, y)) {
+			result |= Path.DOWN;
 		}
-		if (!(this.canWalk(point, new Point(point.x - 1, point.y))
-				&& incomingDirection != Path.RIGHT)) {
-			result = result & ~Path.LEFT;
+		if (x > 0 && incomingDirection != Path.RIGHT
+				&& !walls.hasRightWall(x - 1, y)) {
+			result |= Path.LEFT;
 		}
-		return (byte) result;
+		return result;
 	}
 
 	/**
@@ -340,4 +288,28 @@ public class Maze implements Serializable {
 	public byte findPossibleDirections(Point point) {
  		return this.findPossibleDirections(point, Path.NO_DIRECTION);
 	}
+
+	/**
+	 * Fills the dead ends of the maze (a cell with only one opening, except
+	 * start and end, gets it closed) until none is left. In a perfect maze
+	 * only the route from start to end remains, so walkers don't explore
+	 * anything else. It changes this maze.
+	 * 
+	 * @return Number of filled cells.
+	 */
+	public int fillDeadEnds() {
+		return this.fillDeadEnds(1);
+	}
+
+	/**
+	 * Fills the dead ends of the maze splitting it in row bands.
+	 * 
+	 * @param threads
+	 *            Number of threads (one per band).
+	 * @return Number of filled cells.
+	 * @see #fillDeadEnds()
+	 */
+	public int fillDeadEnds(int threads) {
+		return new DeadEndFiller(this).fill(threads);
+	}
 }
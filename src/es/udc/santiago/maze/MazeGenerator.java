@@ -0,0 +1,252 @@
+package es.udc.santiago.maze;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Generates perfect mazes (one without any loops or closed circuits, and
+ * without any inaccessible areas) with a recursive backtracker.
+ * 
+ * The stack is a growable int array of cells (<i>y * width + x</i>), visited
+ * cells are kept in a bitmap and walls are knocked down straight in the
+ * packed grid, so generating doesn't create any object per cell. The same
+ * seed always gives the same maze.
+ * 
+ * Big mazes can be carved on several threads. The grid is split in bands of
+ * rows, each one is carved on its own and then every band is joined to the
+ * next one through a single opening, so the maze is still perfect. Bands
+ * start at a word boundary of the packed walls, so threads never write the
+ * same word. The maze depends on the seed and the number of threads.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeGenerator {
+	private static final float MINIMUM_DISTANCE_DIVISOR = 3f;
+	private static final int INITIAL_STACK_SIZE = 1024;
+	private static final int CELLS_PER_WORD = 64 / PackedWalls.BITS_PER_CELL;
+	private long seed;
+
+	/**
+	 * Creates a generator.
+	 * 
+	 * @param seed
+	 *            Seed of the random numbers.
+	 */
+	public MazeGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Generates a maze with random start and end points.
+	 * 
+	 * @param height
+	 *            Height.
+	 * @param width
+	 *            Width.
+	 * @return Perfect maze.
+	 */
+	public Maze generate(int height, int width) {
+		return this.generate(height, width, 1);
+	}
+
+	/**
+	 * Generates a maze with random start and end points on several threads.
+	 * 
+	 * @param height
+	 *            Height.
+	 * @param width
+	 *            Width.
+	 * @param threads
+	 *            Number of threads (one per band, at least 1).
+	 * @return Perfect maze.
+	 */
+	public Maze generate(int height, int width, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("At least 1 thread is needed: "
+					+ threads);
+		}
+		SplittableRandom random = new SplittableRandom(seed);
+		Point[] startEnd = pickStartEnd(width, height, random);
+		PackedWalls walls = new PackedWalls(width, height);
+		// Rows multiple of step start at a word boundary
+		int step = CELLS_PER_WORD / gcd(width, CELLS_PER_WORD);
+		int rowsPerBand = (height + threads - 1) / threads;
+		rowsPerBand = ((rowsPerBand + step - 1) / step) * step;
+		int bands = (height + rowsPerBand - 1) / rowsPerBand;
+		if (bands <= 1) {
+			carve(walls, 0, 0, width, height, random);
+		} else {
+			carveBands(walls, rowsPerBand, bands, random);
+		}
+		return new Maze(walls, startEnd[0], startEnd[1], seed);
+	}
+
+	/**
+	 * Carves every band on its own thread and joins them.
+	 * 
+	 * @param walls
+	 *            Grid with all walls up.
+	 * @param rowsPerBand
+	 *            Rows of every band (but the last one).
+	 * @param bands
+	 *            Number of bands.
+	 * @param random
+	 *            Random numbers.
+	 */
+	private static void carveBands(final PackedWalls walls,
+			int rowsPerBand, int bands, SplittableRandom random) {
+		final int width = walls.getWidth();
+		int height = walls.getHeight();
+		// Splits are taken in order, so they don't depend on scheduling
+		Thread[] workers = new Thread[bands];
+		for (int i = 0; i < bands; i++) {
+			final int top = i * rowsPerBand;
+			final int rows = Math.min(height, top + rowsPerBand) - top;
+			final SplittableRandom bandRandom = random.split();
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					carve(walls, 0, top, width, rows, bandRandom);
+				}
+			}, "maze-generator-" + i);
+			workers[i].start();
+		}
+		for (int i = 0; i < bands; i++) {
+			try {
+				workers[i].join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(
+						"Interrupted while generating", e);
+			}
+		}
+		// One opening between every band and the next one
+		for (int i = 1; i < bands; i++) {
+			walls.setBottomWall(random.nextInt(width), i * rowsPerBand - 1,
+					false);
+		}
+	}
+
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+	/**
+	 * Picks start and end far enough from each other.
+	 * 
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 * @param random
+	 *            Random numbers.
+	 * @return Start and end.
+	 */
+	static Point[] pickStartEnd(int width, int height,
+			SplittableRandom random) {
+		double diagonal = Math.sqrt(Math.pow(width, 2) + Math.pow(height, 2));
+		Point start;
+		Point end;
+		do {
+			start = new Point(random.nextInt(width), random.nextInt(height));
+			end = new Point(random.nextInt(width), random.nextInt(height));
+		} while (start.distance(end) < (diagonal / MINIMUM_DISTANCE_DIVISOR));
+		return new Point[] { start, end };
+	}
+
+	/**
+	 * Carves a perfect maze inside a rectangle of the grid. Walls outside the
+	 * rectangle (and the ones on its border) aren't touched.
+	 * 
+	 * @param walls
+	 *            Grid (the rectangle must have all walls up).
+	 * @param left
+	 *            X coord of the top left corner.
+	 * @param top
+	 *            Y coord of the top left corner.
+	 * @param width
+	 *            Width of the rectangle.
+	 * @param height
+	 *            Height of the rectangle.
+	 * @param random
+	 *            Random numbers.
+	 */
+	static void carve(PackedWalls walls, int left, int top, int width,
+			int height, SplittableRandom random) {
+		long[] visited = new long[(int) (((long) width * height + 63) >>> 6)];
+		int[] stack = new int[INITIAL_STACK_SIZE];
+		int size = 0;
+		int first = random.nextInt(height) * width + random.nextInt(width);
+		visited[first >>> 6] |= 1L << first;
+		stack[size++] = first;
+		while (size > 0) {
+			int cell = stack[size - 1];
+			int x = cell % width;
+			int y = cell / width;
+			// Neighbors with all walls up
+			int candidates = Path.NO_DIRECTION;
+			if (y > 0 && !isVisited(visited, cell - width)) {
+				candidates |= Path.UP;
+			}
+			if (x < width - 1 && !isVisited(visited, cell + 1)) {
+				candidates |= Path.RIGHT;
+			}
+			if (y < height - 1 && !isVisited(visited, cell + width)) {
+				candidates |= Path.DOWN;
+			}
+			if (x > 0 && !isVisited(visited, cell - 1)) {
+				candidates |= Path.LEFT;
+			}
+			if (candidates == Path.NO_DIRECTION) {
+				// Backtracks
+				size--;
+				continue;
+			}
+			// Chooses one at random
+			int skip = random.nextInt(Integer.bitCount(candidates));
+			for (int i = 0; i < skip; i++) {
+				candidates &= candidates - 1;
+			}
+			int next;
+			switch (Integer.lowestOneBit(candidates)) {
+			case Path.UP:
+				walls.setBottomWall(left + x, top + y - 1, false);
+				next = cell - width;
+				break;
+			case Path.RIGHT:
+				walls.setRightWall(left + x, top + y, false);
+				next = cell + 1;
+				break;
+			case Path.DOWN:
+				walls.setBottomWall(left + x, top + y, false);
+				next = cell + width;
+				break;
+			default:
+				walls.setRightWall(left + x - 1, top + y, false);
+				next = cell - 1;
+				break;
+			}
+			visited[next >>> 6] |= 1L << next;
+			if (size == stack.length) {
+				stack = Arrays.copyOf(stack, size * 2);
+			}
+			stack[size++] = next;
+		}
+	}
+
+	private static boolean isVisited(long[] visited, int cell) {
+		return (visited[cell >>> 6] & (1L << cell)) != 0;
+	}
+}
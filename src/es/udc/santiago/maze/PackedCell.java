@@ -0,0 +1,69 @@
+package es.udc.santiago.maze;
+
+/**
+ * Cell view over a {@link PackedWalls} grid. Reading or writing a wall goes
+ * straight to the packed bits, so neighbor cells always agree.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class PackedCell extends Cell {
+	private static final long serialVersionUID = 2268395310372453947L;
+	private final PackedWalls walls;
+
+	/**
+	 * Instances a view of the cell in the given row and column.
+	 * 
+	 * @param walls
+	 *            Packed grid.
+	 * @param row
+	 *            Row (Cell's X coord).
+	 * @param column
+	 *            Column (Cell's Y coord).
+	 */
+	PackedCell(PackedWalls walls, int row, int column) {
+		super(row, column);
+		this.walls = walls;
+	}
+
+	public boolean hasTopWall() {
+		return walls.hasTopWall(getY(), getX());
+	}
+
+	public void setTopWall(boolean topWall) {
+		walls.setTopWall(getY(), getX(), topWall);
+	}
+
+	public boolean hasRightWall() {
+		return walls.hasRightWall(getY(), getX());
+	}
+
+	public void setRightWall(boolean rightWall) {
+		walls.setRightWall(getY(), getX(), rightWall);
+	}
+
+	public boolean hasBottomWall() {
+		return walls.hasBottomWall(getY(), getX());
+	}
+
+	public void setBottomWall(boolean bottomWall) {
+		walls.setBottomWall(getY(), getX(), bottomWall);
+	}
+
+	public boolean hasLeftWall() {
+		return walls.hasLeftWall(getY(), getX());
+	}
+
+	public void setLeftWall(boolean leftWall) {
+		walls.setLeftWall(getY(), getX(), leftWall);
+	}
+
+	public boolean hasAllWallsUp() {
+		return walls.hasAllWallsUp(getY(), getX());
+	}
+
+	public boolean hasAnyWallUp() {
+		return hasTopWall() || hasRightWall() || hasBottomWall()
+				|| hasLeftWall();
+	}
+}
@@ -0,0 +1,398 @@
+package es.udc.santiago.maze;
+
+import java.io.Serializable;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores the walls of a maze as packed bits. Neighbor cells share their
+ * walls, so every cell only keeps two bits: its right wall and its bottom
+ * wall. Top and left walls are read from the neighbors (or are always up on
+ * the borders).
+ * 
+ * The words are usually in an array, but they can also be in buffers, e.g. a
+ * maze file mapped in memory (see MazeUtils.fileToMaze()), so they aren't
+ * copied to the heap unless the walls are changed.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class PackedWalls implements Serializable {
+	private static final long serialVersionUID = 4127361021860924771L;
+	/**
+	 * Bits used by every cell.
+	 */
+	public static final int BITS_PER_CELL = 2;
+	private static final long RIGHT_BIT = 0x1L;
+	private static final long BOTTOM_BIT = 0x2L;
+	/**
+	 * Words of every buffer but the last one (a mapping can't be bigger than
+	 * 2 GB).
+	 */
+	public static final int WORDS_PER_BUFFER = 1 << 27;
+	private static final int BUFFER_SHIFT = 27;
+	private static final int BUFFER_MASK = WORDS_PER_BUFFER - 1;
+	private int width;
+	private int height;
+	/**
+	 * Words, <i>null</i> if they are in buffers.
+	 */
+	private long[] bits;
+	private transient LongBuffer[] buffers;
+
+	/**
+	 * Creates a grid with all walls up.
+	 * 
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 */
+	public PackedWalls(int width, int height) {
+		this(width, height, new long[wordsFor(width, height)]);
+		Arrays.fill(bits, -1L);
+	}
+
+	/**
+	 * Creates a grid from already packed words.
+	 * 
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 * @param bits
+	 *            Packed words (see {@link #getBits()}).
+	 */
+	public PackedWalls(int width, int height, long[] bits) {
+		if (bits.length < wordsFor(width, height)) {
+			throw new IllegalArgumentException("Expected "
+					+ wordsFor(width, height) + " words, got " + bits.length);
+		}
+		this.width = width;
+		this.height = height;
+		this.bits = bits;
+	}
+
+	/**
+	 * Creates a grid whose words are in buffers, which are read in place.
+	 * Read-only buffers are copied to the heap the first time the grid is
+	 * changed.
+	 * 
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 * @param buffers
+	 *            Packed words (see {@link #getBits()}), WORDS_PER_BUFFER in
+	 *            every buffer but the last one.
+	 */
+	public PackedWalls(int width, int height, LongBuffer[] buffers) {
+		long words = 0;
+		for (int i = 0; i < buffers.length; i++) {
+			if (i < buffers.length - 1
+					&& buffers[i].capacity() != WORDS_PER_BUFFER) {
+				throw new IllegalArgumentException("Buffer " + i + " has "
+						+ buffers[i].capacity() + " words");
+			}
+			words += buffers[i].capacity();
+		}
+		if (words < wordsFor(width, height)) {
+			throw new IllegalArgumentException("Expected "
+					+ wordsFor(width, height) + " words, got " + words);
+		}
+		this.width = width;
+		this.height = height;
+		this.buffers = buffers;
+	}
+
+	/**
+	 * Grid used to copy bits from an array.
+	 */
+	private PackedWalls(long[] bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Number of longs needed to store a grid.
+	 * 
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 * @return Number of words.
+	 */
+	public static int wordsFor(int width, int height) {
+		long totalBits = (long) width * height * BITS_PER_CELL;
+		return (int) ((totalBits + 63) >>> 6);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the raw words. Cell (x, y) uses bits <i>2 * (y * width + x)</i>
+	 * (right wall) and <i>2 * (y * width + x) + 1</i> (bottom wall); a set bit
+	 * means the wall is up.
+	 * 
+	 * @return Backing array (not a copy), or a copy of the words if they are
+	 *         in buffers.
+	 */
+	public long[] getBits() {
+		if (bits != null) {
+			return bits;
+		}
+		long[] result = new long[getWords()];
+		for (int i = 0; i < result.length; i += WORDS_PER_BUFFER) {
+			LongBuffer buffer = buffers[i >>> BUFFER_SHIFT].duplicate();
+			buffer.clear();
+			buffer.get(result, i, Math.min(WORDS_PER_BUFFER, result.length
+					- i));
+		}
+		return result;
+	}
+
+	/**
+	 * Gets a raw word without copying them (see {@link #getBits()}).
+	 * 
+	 * @param index
+	 *            Index of the word.
+	 * @return Word.
+	 */
+	public long getWord(int index) {
+		if (bits != null) {
+			return bits[index];
+		}
+		return buffers[index >>> BUFFER_SHIFT].get(index & BUFFER_MASK);
+	}
+
+	private void setWord(int index, long word) {
+		if (bits == null) {
+			makeWritable();
+		}
+		if (bits != null) {
+			bits[index] = word;
+		} else {
+			buffers[index >>> BUFFER_SHIFT].put(index & BUFFER_MASK, word);
+		}
+	}
+
+	/**
+	 * Copies the words to an array if they are in read-only buffers (e.g. a
+	 * mapped file), so they can be changed. It must be called before several
+	 * threads write the grid.
+	 */
+	void makeWritable() {
+		if (bits == null && buffers[0].isReadOnly()) {
+			bits = getBits();
+			buffers = null;
+		}
+	}
+
+	/**
+	 * Number of words, which may be more than the grid needs.
+	 */
+	private int getWords() {
+		if (bits != null) {
+			return bits.length;
+		}
+		return (buffers.length - 1) * WORDS_PER_BUFFER
+				+ buffers[buffers.length - 1].capacity();
+	}
+
+	private boolean isSet(int x, int y, long mask) {
+		long bit = ((long) y * width + x) << 1;
+		return (getWord((int) (bit >>> 6)) & (mask << (bit & 63))) != 0;
+	}
+
+	private void set(int x, int y, long mask, boolean up) {
+		long bit = ((long) y * width + x) << 1;
+		int word = (int) (bit >>> 6);
+		if (up) {
+			setWord(word, getWord(word) | (mask << (bit & 63)));
+		} else {
+			setWord(word, getWord(word) & ~(mask << (bit & 63)));
+		}
+	}
+
+	public boolean hasRightWall(int x, int y) {
+		return isSet(x, y, RIGHT_BIT);
+	}
+
+	public boolean hasBottomWall(int x, int y) {
+		return isSet(x, y, BOTTOM_BIT);
+	}
+
+	public boolean hasTopWall(int x, int y) {
+		return y == 0 || isSet(x, y - 1, BOTTOM_BIT);
+	}
+
+	public boolean hasLeftWall(int x, int y) {
+		return x == 0 || isSet(x - 1, y, RIGHT_BIT);
+	}
+
+	public void setRightWall(int x, int y, boolean up) {
+		set(x, y, RIGHT_BIT, up);
+	}
+
+	public void setBottomWall(int x, int y, boolean up) {
+		set(x, y, BOTTOM_BIT, up);
+	}
+
+	/**
+	 * Sets the top wall (it's the bottom wall of the upper neighbor, so the
+	 * first row can't be opened).
+	 */
+	public void setTopWall(int x, int y, boolean up) {
+		if (y > 0) {
+			set(x, y - 1, BOTTOM_BIT, up);
+		}
+	}
+
+	/**
+	 * Sets the left wall (it's the right wall of the left neighbor, so the
+	 * first column can't be opened).
+	 */
+	public void setLeftWall(int x, int y, boolean up) {
+		if (x > 0) {
+			set(x - 1, y, RIGHT_BIT, up);
+		}
+	}
+
+	/**
+	 * Determines if the cell is surrounded by all the walls.
+	 * 
+	 * @return boolean.
+	 */
+	public boolean hasAllWallsUp(int x, int y) {
+		return hasTopWall(x, y) && hasRightWall(x, y) && hasBottomWall(x, y)
+				&& hasLeftWall(x, y);
+	}
+
+	/**
+	 * Gets a copy of some consecutive rows.
+	 * 
+	 * @param firstRow
+	 *            First row.
+	 * @param rows
+	 *            Number of rows.
+	 * @return Grid with <i>rows</i> rows (the bottom walls of its last row are
+	 *         the ones between it and the next row of this grid).
+	 */
+	public PackedWalls getRows(int firstRow, int rows) {
+		long rowBits = (long) width * BITS_PER_CELL;
+		return new PackedWalls(width, rows, copy(firstRow * rowBits, rows
+				* rowBits));
+	}
+
+	/**
+	 * Gets a copy of a rectangle of the grid. It may go beyond the borders:
+	 * cells outside the grid have all walls up.
+	 * 
+	 * @param left
+	 *            X coord of the top left corner.
+	 * @param top
+	 *            Y coord of the top left corner.
+	 * @param regionWidth
+	 *            Width of the rectangle.
+	 * @param regionHeight
+	 *            Height of the rectangle.
+	 * @return Grid with the walls of the rectangle.
+	 */
+	public PackedWalls getRegion(int left, int top, int regionWidth,
+			int regionHeight) {
+		PackedWalls region = new PackedWalls(regionWidth, regionHeight);
+		int fromX = Math.max(0, left);
+		int toX = Math.min(width, left + regionWidth);
+		if (fromX >= toX) {
+			return region;
+		}
+		long count = (long) (toX - fromX) * BITS_PER_CELL;
+		int toY = Math.min(height, top + regionHeight);
+		for (int y = Math.max(0, top); y < toY; y++) {
+			long[] row = copy(((long) y * width + fromX) * BITS_PER_CELL,
+					count);
+			long toBit = ((long) (y - top) * regionWidth + (fromX - left))
+					* BITS_PER_CELL;
+			for (int i = 0; i < row.length; i++) {
+				int length = (int) Math.min(64, count - 64L * i);
+				pasteBits(region.bits, toBit + 64L * i, row[i], length);
+			}
+		}
+		return region;
+	}
+
+	/**
+	 * Overwrites up to 64 bits.
+	 * 
+	 * @param target
+	 *            Packed words.
+	 * @param toBit
+	 *            First bit to write.
+	 * @param value
+	 *            Bits (from bit 0).
+	 * @param length
+	 *            Number of bits.
+	 */
+	private static void pasteBits(long[] target, long toBit, long value,
+			int length) {
+		long mask = (length == 64) ? -1L : (1L << length) - 1;
+		int word = (int) (toBit >>> 6);
+		int shift = (int) (toBit & 63);
+		target[word] = (target[word] & ~(mask << shift))
+				| ((value & mask) << shift);
+		if (shift != 0 && shift + length > 64) {
+			target[word + 1] = (target[word + 1] & ~(mask >>> (64 - shift)))
+					| ((value & mask) >>> (64 - shift));
+		}
+	}
+
+	/**
+	 * Copies a range of bits to the start of a new array.
+	 * 
+	 * @param source
+	 *            Packed words.
+	 * @param fromBit
+	 *            First bit.
+	 * @param count
+	 *            Number of bits.
+	 * @return Words with the copied bits from bit 0 (the bits after
+	 *         <i>count</i> in the last word are undefined).
+	 */
+	public static long[] copyBits(long[] source, long fromBit, long count) {
+		return new PackedWalls(source).copy(fromBit, count);
+	}
+
+	/**
+	 * Copies a range of bits of this grid to the start of a new array (see
+	 * {@link #copyBits(long[], long, long)}).
+	 */
+	private long[] copy(long fromBit, long count) {
+		long[] result = new long[(int) ((count + 63) >>> 6)];
+		int first = (int) (fromBit >>> 6);
+		int shift = (int) (fromBit & 63);
+		int words = getWords();
+		for (int i = 0; i < result.length; i++) {
+			long word = getWord(first + i) >>> shift;
+			if (shift != 0 && first + i + 1 < words) {
+				word |= getWord(first + i + 1) << (64 - shift);
+			}
+			result[i] = word;
+		}
+		return result;
+	}
+
+	/**
+	 * Buffers can't be serialized, so their words are copied.
+	 */
+	private Object writeReplace() {
+		if (bits != null) {
+			return this;
+		}
+		return new PackedWalls(width, height, getBits());
+	}
+}
@@ -0,0 +1,181 @@
+package es.udc.santiago.maze.graph;
+
+import java.util.Arrays;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Maze compressed into a graph: junctions, dead ends, start and end are the
+ * nodes and every corridor between two of them is an edge weighted with its
+ * length.
+ * 
+ * It's stored in CSR form: the edges leaving node <i>n</i> are
+ * <i>edgeOffsets[n]..edgeOffsets[n + 1] - 1</i>, and each one keeps its
+ * target node, its length and the direction it leaves the node. Corridors
+ * are walked again only when a result is expanded into a Path.
+ * 
+ * @author Santiago Munín González
+ * 
+ * @see JunctionGraphBuilder
+ */
+public class JunctionGraph {
+	public static final int NO_NODE = -1;
+	private Maze maze;
+	/**
+	 * Cell (<i>y * width + x</i>) of every node, in ascending order.
+	 */
+	private int[] nodeCells;
+	private int[] edgeOffsets;
+	private int[] edgeTargets;
+	private int[] edgeLengths;
+	private byte[] edgeDirections;
+	private int startNode;
+	private int endNode;
+
+	JunctionGraph(Maze maze, int[] nodeCells, int[] edgeOffsets,
+			int[] edgeTargets, int[] edgeLengths, byte[] edgeDirections) {
+		this.maze = maze;
+		this.nodeCells = nodeCells;
+		this.edgeOffsets = edgeOffsets;
+		this.edgeTargets = edgeTargets;
+		this.edgeLengths = edgeLengths;
+		this.edgeDirections = edgeDirections;
+		this.startNode = findNode(maze.getStart().x, maze.getStart().y);
+		this.endNode = findNode(maze.getEnd().x, maze.getEnd().y);
+	}
+
+	public Maze getMaze() {
+		return maze;
+	}
+
+	public int getNodeCount() {
+		return nodeCells.length;
+	}
+
+	/**
+	 * Number of edges. Every corridor is stored once from each end.
+	 * 
+	 * @return Number of edges.
+	 */
+	public int getEdgeCount() {
+		return edgeTargets.length;
+	}
+
+	public int getStartNode() {
+		return startNode;
+	}
+
+	public int getEndNode() {
+		return endNode;
+	}
+
+	public int getNodeX(int node) {
+		return nodeCells[node] % maze.getWidth();
+	}
+
+	public int getNodeY(int node) {
+		return nodeCells[node] / maze.getWidth();
+	}
+
+	/**
+	 * Finds the node of a cell.
+	 * 
+	 * @param x
+	 *            X coord.
+	 * @param y
+	 *            Y coord.
+	 * @return Node, NO_NODE if the cell is inside a corridor.
+	 */
+	public int findNode(int x, int y) {
+		int node = Arrays.binarySearch(nodeCells, y * maze.getWidth() + x);
+		return (node < 0) ? NO_NODE : node;
+	}
+
+	/**
+	 * First edge leaving a node.
+	 * 
+	 * @param node
+	 *            Node.
+	 * @return Edge.
+	 */
+	public int getFirstEdge(int node) {
+		return edgeOffsets[node];
+	}
+
+	/**
+	 * Edge after the last one leaving a node.
+	 * 
+	 * @param node
+	 *            Node.
+	 * @return Edge (exclusive).
+	 */
+	public int getEndEdge(int node) {
+		return edgeOffsets[node + 1];
+	}
+
+	public int getTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Number of movements from the source node to the target one.
+	 * 
+	 * @param edge
+	 *            Edge.
+	 * @return Length of the corridor.
+	 */
+	public int getLength(int edge) {
+		return edgeLengths[edge];
+	}
+
+	/**
+	 * Direction the corridor leaves its source node.
+	 * 
+	 * @param edge
+	 *            Edge.
+	 * @return Direction (see Path's constants).
+	 */
+	public byte getDirection(int edge) {
+		return edgeDirections[edge];
+	}
+
+	/**
+	 * Expands some consecutive edges into a path of the maze.
+	 * 
+	 * @param edges
+	 *            Edges, the first one leaving the start node.
+	 * @return Path from the start of the maze.
+	 */
+	public Path toPath(int[] edges) {
+		Path path = new Path(maze.getStart());
+		for (int edge : edges) {
+			this.appendCorridor(path, edge);
+		}
+		return path;
+	}
+
+	/**
+	 * Walks a corridor, adding its movements to a path.
+	 * 
+	 * @param path
+	 *            Path which ends at the source node of the edge.
+	 * @param edge
+	 *            Edge.
+	 */
+	public void appendCorridor(Path path, int edge) {
+		int direction = edgeDirections[edge];
+		int x = path.getCurrentX();
+		int y = path.getCurrentY();
+		for (int i = 0; i < edgeLengths[edge]; i++) {
+			if (i > 0) {
+				// Corridor cells have only one way forward
+				direction = maze.openDirections(x, y, direction);
+			}
+			path.addMovement((byte) direction);
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package es.udc.santiago.maze.graph;
+
+import java.util.Arrays;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Builds the junction graph of a maze. Every cell without exactly two
+ * openings (plus start and end) becomes a node, and the corridors leaving
+ * each node are followed until the next one.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class JunctionGraphBuilder {
+	private static final int INITIAL_CAPACITY = 1024;
+	private Maze maze;
+	private int width;
+	private int start;
+	private int end;
+	private int[] nodeCells;
+	private int nodeCount;
+	private int[] targets;
+	private int[] lengths;
+	private byte[] directions;
+	private int edgeCount;
+
+	public JunctionGraphBuilder(Maze maze) {
+		this.maze = maze;
+		this.width = maze.getWidth();
+	}
+
+	/**
+	 * Builds the graph.
+	 * 
+	 * @return Junction graph.
+	 */
+	public JunctionGraph build() {
+		this.findNodes();
+		targets = new int[INITIAL_CAPACITY];
+		lengths = new int[INITIAL_CAPACITY];
+		directions = new byte[INITIAL_CAPACITY];
+		edgeCount = 0;
+		int[] offsets = new int[nodeCount + 1];
+		for (int node = 0; node < nodeCount; node++) {
+			offsets[node] = edgeCount;
+			int x = nodeCells[node] % width;
+			int y = nodeCells[node] / width;
+			int open = maze.openDirections(x, y, Path.NO_DIRECTION);
+			while (open != 0) {
+				int direction = Integer.lowestOneBit(open);
+				open &= ~direction;
+				this.followCorridor(node, x, y, direction);
+			}
+		}
+		offsets[nodeCount] = edgeCount;
+		return new JunctionGraph(maze, Arrays.copyOf(nodeCells, nodeCount),
+				offsets, Arrays.copyOf(targets, edgeCount), Arrays.copyOf(
+						lengths, edgeCount), Arrays.copyOf(directions,
+						edgeCount));
+	}
+
+	/**
+	 * Finds the cells which are nodes (in ascending order).
+	 */
+	private void findNodes() {
+		start = maze.getStart().y * width + maze.getStart().x;
+		end = maze.getEnd().y * width + maze.getEnd().x;
+		nodeCells = new int[INITIAL_CAPACITY];
+		nodeCount = 0;
+		for (int y = 0; y < maze.getHeight(); y++) {
+			for (int x = 0; x < width; x++) {
+				int cell = y * width + x;
+				int degree = Integer.bitCount(maze.openDirections(x, y,
+						Path.NO_DIRECTION));
+				if (cell == start || cell == end
+						|| (degree != 2 && degree != 0)) {
+					if (nodeCount == nodeCells.length) {
+						nodeCells = Arrays.copyOf(nodeCells, nodeCount * 2);
+					}
+					nodeCells[nodeCount++] = cell;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Follows a corridor and adds its edge (corridors which come back to the
+	 * same node are useless, so they're dropped).
+	 * 
+	 * @param node
+	 *            Source node.
+	 * @param x
+	 *            X coord of the node.
+	 * @param y
+	 *            Y coord of the node.
+	 * @param direction
+	 *            Direction which leaves the node.
+	 */
+	private void followCorridor(int node, int x, int y, int direction) {
+		int first = direction;
+		int length = 0;
+		while (true) {
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
+			length++;
+			int cell = y * width + x;
+			int forward = maze.openDirections(x, y, direction);
+			if (cell == start || cell == end
+					|| Integer.bitCount(forward) != 1) {
+				break;
+			}
+			direction = forward;
+		}
+		// Only nodes need the binary search
+		int target = Arrays.binarySearch(nodeCells, 0, nodeCount, y * width
+				+ x);
+		if (target == node) {
+			return;
+		}
+		if (edgeCount == targets.length) {
+			targets = Arrays.copyOf(targets, edgeCount * 2);
+			lengths = Arrays.copyOf(lengths, edgeCount * 2);
+			directions = Arrays.copyOf(directions, edgeCount * 2);
+		}
+		targets[edgeCount] = target;
+		lengths[edgeCount] = length;
+		directions[edgeCount] = (byte) first;
+		edgeCount++;
+	}
+}
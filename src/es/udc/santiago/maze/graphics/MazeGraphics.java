@@ -1,24 +1,31 @@
 package es.udc.santiago.maze.graphics;
 
+import java.awt.BorderLayout;
 import java.awt.Canvas;
 import java.awt.Color;
 import java.awt.Frame;
 import java.awt.Graphics;
+import java.awt.Image;
 import java.awt.Point;
-import java.awt.ScrollPane;
+import java.awt.Scrollbar;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map.Entry;
-import java.util.Queue;
 
-import es.udc.santiago.maze.Cell;
 import es.udc.santiago.maze.Maze;
 import es.udc.santiago.maze.walker.Path;
 
 /**
- * Maze drawer.
+ * Maze drawer. Only the visible part of the maze is painted (see MazeView),
+ * so big mazes can be panned with the scrollbars, the mouse wheel or dragging
+ * them.
  * 
  * @author Santiago Munín González
  * 
@@ -27,6 +34,15 @@ public class MazeGraphics {
 	private static int SIZE = 8;
 	private static int MARGIN = 5;
 	private static int FRAME_MARGIN = 30;
+	/**
+	 * Biggest initial size of the frame.
+	 */
+	private static int MAX_FRAME_WIDTH = 1024;
+	private static int MAX_FRAME_HEIGHT = 768;
+	/**
+	 * Cells scrolled per mouse wheel click.
+	 */
+	private static int WHEEL_CELLS = 3;
 	private Maze m;
 	private MazeCanvas mc;
 
@@ -42,14 +58,14 @@ public class MazeGraphics {
 	 * @return Frame.
 	 */
 	public Frame getMapFrame(String title) {
-		ScrollPane sp = new ScrollPane();
-		mc = new MazeCanvas(m);
-		sp.add(mc);
+		mc = new MazeCanvas(new MazeView(m, SIZE));
 		Frame f = new Frame(title);
-		f.setSize(MazeGraphics.SIZE * m.getWidth() + MazeGraphics.MARGIN * 2
-				+ FRAME_MARGIN, MazeGraphics.SIZE * m.getHeight()
-				+ MazeGraphics.MARGIN * 2 + FRAME_MARGIN);
-		f.add(sp);
+		f.add(mc, BorderLayout.CENTER);
+		f.add(mc.horizontal, BorderLayout.SOUTH);
+		f.add(mc.vertical, BorderLayout.EAST);
+		f.setSize((int) Math.min(MAX_FRAME_WIDTH, mc.getContentWidth()
+				+ FRAME_MARGIN), (int) Math.min(MAX_FRAME_HEIGHT,
+				mc.getContentHeight() + FRAME_MARGIN));
 		f.addWindowListener(new WindowAdapter() {
 			public void windowClosing(WindowEvent we) {
 				System.exit(0);
@@ -59,116 +75,122 @@ public class MazeGraphics {
 	}
 
 	/**
-	 * Adds a path to paint.
+	 * Adds a path to paint. Only the visible part is repainted.
 	 * 
 	 * @param path
 	 */
 	public void addPath(Entry<Color, Path> path) {
-		mc.addPath(path);
+		mc.view.addPath(path.getValue(), path.getKey());
 		mc.repaint();
 	}
 
+	/**
+	 * Viewport of the maze, with its own scrollbars (the whole maze may not
+	 * fit in a component).
+	 */
 	private class MazeCanvas extends Canvas {
 
 		private static final long serialVersionUID = -8025702657222278281L;
 
-		Maze maze;
-		Queue<Entry<Color, Path>> pathsToDraw;
+		MazeView view;
+		Scrollbar horizontal = new Scrollbar(Scrollbar.HORIZONTAL);
+		Scrollbar vertical = new Scrollbar(Scrollbar.VERTICAL);
+		/**
+		 * Back buffer, as big as the canvas.
+		 */
+		private Image buffer;
+
+		public MazeCanvas(MazeView view) {
+			this.view = view;
+			setBackground(Color.WHITE);
+			AdjustmentListener scrolled = new AdjustmentListener() {
+				public void adjustmentValueChanged(AdjustmentEvent e) {
+					repaint();
+				}
+			};
+			horizontal.addAdjustmentListener(scrolled);
+			vertical.addAdjustmentListener(scrolled);
+			addComponentListener(new ComponentAdapter() {
+				public void componentResized(ComponentEvent e) {
+					updateScrollbars();
+				}
+			});
+			MouseAdapter pan = new MouseAdapter() {
+				private Point last;
 
-		public MazeCanvas(Maze maze) {
-			this.maze = maze;
-			pathsToDraw = new LinkedList<Entry<Color, Path>>();
-		}
+				public void mousePressed(MouseEvent e) {
+					last = e.getPoint();
+				}
 
-		public void paint(Graphics g) {
+				public void mouseDragged(MouseEvent e) {
+					scroll(last.x - e.getX(), last.y - e.getY());
+					last = e.getPoint();
+				}
 
-			Point start = maze.getStart();
-			Point end = maze.getEnd();
-			for (int x = 0; x < maze.getWidth(); x++) {
-				for (int y = 0; y < maze.getHeight(); y++) {
-					if (start.equals(new Point(x, y))) {
-						drawPoint(x, y, Color.BLUE, g);
-					}
-					if (end.equals(new Point(x, y))) {
-						drawPoint(x, y, Color.RED, g);
-					}
-					Cell cell = maze.getCell(y, x);
-					if (cell.hasTopWall()) {
-						g.drawLine(MARGIN + x * SIZE, MARGIN + y * SIZE, MARGIN
-								+ x * SIZE + SIZE, MARGIN + y * SIZE);
-					}
-
-					if (cell.hasBottomWall()) {
-						g.drawLine(MARGIN + x * SIZE, MARGIN + y * SIZE + SIZE,
-								MARGIN + x * SIZE + SIZE, MARGIN + y * SIZE
-										+ SIZE);
-					}
-
-					if (cell.hasLeftWall()) {
-						g.drawLine(MARGIN + x * SIZE, MARGIN + y * SIZE, MARGIN
-								+ x * SIZE, MARGIN + y * SIZE + SIZE);
-					}
-
-					if (cell.hasRightWall()) {
-						g.drawLine(MARGIN + x * SIZE + SIZE, MARGIN + y * SIZE,
-								MARGIN + x * SIZE + SIZE, MARGIN + y * SIZE
-										+ SIZE);
-					}
+				public void mouseWheelMoved(MouseWheelEvent e) {
+					scroll(0, e.getWheelRotation() * WHEEL_CELLS * SIZE);
 				}
-			}
-			for (Iterator<Entry<Color, Path>> it = pathsToDraw.iterator(); it
-					.hasNext();) {
-				Entry<Color, Path> entry = it.next();
-				drawPath(entry.getKey(), entry.getValue(), g);
-			}
+			};
+			addMouseListener(pan);
+			addMouseMotionListener(pan);
+			addMouseWheelListener(pan);
+		}
+
+		long getContentWidth() {
+			return view.getWidth() + 2 * MARGIN;
+		}
+
+		long getContentHeight() {
+			return view.getHeight() + 2 * MARGIN;
 		}
 
 		/**
-		 * Adds a path to be painted when the repaint() method is called.
-		 * 
-		 * @param path
+		 * Fits the scrollbars to the size of the canvas.
 		 */
-		public void addPath(Entry<Color, Path> path) {
-			this.pathsToDraw.add(path);
+		private void updateScrollbars() {
+			int width = Math.max(1, getWidth());
+			int height = Math.max(1, getHeight());
+			horizontal.setValues(horizontal.getValue(), width, 0,
+					(int) Math.max(width, getContentWidth()));
+			vertical.setValues(vertical.getValue(), height, 0,
+					(int) Math.max(height, getContentHeight()));
+			horizontal.setUnitIncrement(SIZE);
+			vertical.setUnitIncrement(SIZE);
+			horizontal.setBlockIncrement(width);
+			vertical.setBlockIncrement(height);
+			repaint();
 		}
-	}
 
-	/**
-	 * Draws a square point in the map.
-	 * 
-	 * @param x
-	 *            X coord.
-	 * @param y
-	 *            Y coord.
-	 * @param c
-	 *            Color.
-	 * @param g
-	 *            Graphics instance.
-	 */
-	private void drawPoint(int x, int y, Color c, Graphics g) {
-		g.setColor(c);
-		g.fillRect(x * SIZE + MARGIN + 2, y * SIZE + MARGIN + 2, SIZE - 3,
-				SIZE - 3);
-		g.setColor(Color.BLACK);
-	}
+		private void scroll(int dx, int dy) {
+			horizontal.setValue(horizontal.getValue() + dx);
+			vertical.setValue(vertical.getValue() + dy);
+			repaint();
+		}
 
-	/**
-	 * Draws a path.
-	 * 
-	 * @param color
-	 *            path's color.
-	 * @param path
-	 *            Path data.
-	 * @param g
-	 *            Graphics instance.
-	 */
-	private void drawPath(Color color, Path path, Graphics g) {
-		for (Iterator<Point> iterator = path.getPoints().iterator(); iterator
-				.hasNext();) {
-			Point p = iterator.next();
-			if (!p.equals(m.getStart()) && !p.equals(m.getEnd())) {
-				drawPoint(p.x, p.y, color, g);
+		/**
+		 * Paints everything, so the background isn't cleared first.
+		 */
+		public void update(Graphics g) {
+			paint(g);
+		}
+
+		public void paint(Graphics g) {
+			int width = getWidth();
+			int height = getHeight();
+			if (width <= 0 || height <= 0) {
+				return;
+			}
+			if (buffer == null || buffer.getWidth(null) != width
+					|| buffer.getHeight(null) != height) {
+				buffer = createImage(width, height);
 			}
+			Graphics bg = buffer.getGraphics();
+			bg.setColor(Color.WHITE);
+			bg.fillRect(0, 0, width, height);
+			view.paint(bg, horizontal.getValue() - MARGIN, vertical.getValue()
+					- MARGIN, width, height);
+			bg.dispose();
+			g.drawImage(buffer, 0, 0, null);
 		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,455 @@
+package es.udc.santiago.maze.graphics;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Draws a maze and its paths into an image without any display (it works
+ * with -Djava.awt.headless=true).
+ * 
+ * Every cell is a square of cellSize pixels whose top row and left column are
+ * its walls, so the image has an extra row and column for the bottom and
+ * right borders. Pixels are written straight into the raster of an indexed
+ * image (a byte per pixel), and the rows are split in bands drawn by a pool
+ * of threads. Big mazes can be written as tiles, so the whole image is never
+ * in memory: the paths are indexed by rows when they are added, so every tile
+ * only goes through its own cells.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeRenderer {
+	/**
+	 * Pixels per cell side, as in MazeGraphics.
+	 */
+	public static final int DEFAULT_CELL_SIZE = 8;
+	private static final byte WALL = 1;
+	private static final byte START = 2;
+	private static final byte END = 3;
+	/**
+	 * Index of the color of the first path.
+	 */
+	private static final int FIRST_PATH = 4;
+	private static final int MAX_COLORS = 256;
+	private Maze maze;
+	private PackedWalls walls;
+	private int cellSize;
+	private int threads;
+	private List<PathCells> paths = new ArrayList<PathCells>();
+	private List<Color> colors = new ArrayList<Color>();
+
+	/**
+	 * Creates a renderer with the default cell size which uses all the
+	 * available processors.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 */
+	public MazeRenderer(Maze maze) {
+		this(maze, DEFAULT_CELL_SIZE, Runtime.getRuntime()
+				.availableProcessors());
+	}
+
+	/**
+	 * Creates a renderer.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param cellSize
+	 *            Pixels per cell side (at least 2: a wall and the inside).
+	 * @param threads
+	 *            Number of threads.
+	 */
+	public MazeRenderer(Maze maze, int cellSize, int threads) {
+		if (cellSize < 2) {
+			throw new IllegalArgumentException("Cells need 2 pixels: "
+					+ cellSize);
+		}
+		this.maze = maze;
+		this.walls = maze.getWalls();
+		this.cellSize = cellSize;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Adds a path, drawn over the previous ones.
+	 * 
+	 * @param path
+	 *            Path.
+	 * @param color
+	 *            Color of its cells.
+	 */
+	public void addPath(Path path, Color color) {
+		if (FIRST_PATH + paths.size() == MAX_COLORS) {
+			throw new IllegalStateException("Too many paths");
+		}
+		paths.add(new PathCells(path, maze.getHeight()));
+		colors.add(color);
+	}
+
+	/**
+	 * Width of the whole image.
+	 * 
+	 * @return Pixels.
+	 */
+	public long getWidth() {
+		return (long) maze.getWidth() * cellSize + 1;
+	}
+
+	/**
+	 * Height of the whole image.
+	 * 
+	 * @return Pixels.
+	 */
+	public long getHeight() {
+		return (long) maze.getHeight() * cellSize + 1;
+	}
+
+	/**
+	 * Draws the whole maze.
+	 * 
+	 * @return Image.
+	 * @throws IllegalStateException
+	 *             If the image doesn't fit in an array (use writeTiles()).
+	 */
+	public BufferedImage render() {
+		if (getWidth() * getHeight() > Integer.MAX_VALUE) {
+			throw new IllegalStateException("The image has more than "
+					+ Integer.MAX_VALUE + " pixels, it must be tiled");
+		}
+		return render(0, 0, (int) getWidth(), (int) getHeight());
+	}
+
+	/**
+	 * Draws a region of the image.
+	 * 
+	 * @param left
+	 *            First column (pixels).
+	 * @param top
+	 *            First row (pixels).
+	 * @param width
+	 *            Width (pixels, the region must be inside the image).
+	 * @param height
+	 *            Height (pixels).
+	 * @return Image of the region.
+	 */
+	public BufferedImage render(int left, int top, int width, int height) {
+		if (threads == 1 || height == 1) {
+			// No need to start threads (e.g. the tiles of MazeGraphics)
+			return render(left, top, width, height, null);
+		}
+		ExecutorService executor = createExecutor();
+		try {
+			return render(left, top, width, height, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Draws a region of the image.
+	 * 
+	 * @param executor
+	 *            Threads which draw the bands of rows (<i>null</i> to draw
+	 *            them on this one).
+	 */
+	private BufferedImage render(int left, int top, int width, int height,
+			ExecutorService executor) {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_BYTE_INDEXED, colorModel());
+		// A byte per pixel, rows one after another
+		byte[] pixels = ((DataBufferByte) image.getRaster()
+				.getDataBuffer()).getData();
+		if (executor == null) {
+			for (int row = 0; row < height; row++) {
+				drawRow(pixels, row * width, left, width, top + row);
+			}
+		} else {
+			drawBands(executor, pixels, left, top, width, height);
+		}
+		Region region = new Region(pixels, left, top, width, height);
+		for (int i = 0; i < paths.size(); i++) {
+			drawPath(region, paths.get(i), (byte) (FIRST_PATH + i));
+		}
+		fillCell(region, maze.getStart().x, maze.getStart().y, START);
+		fillCell(region, maze.getEnd().x, maze.getEnd().y, END);
+		return image;
+	}
+
+	/**
+	 * Creates the threads which draw the bands (they don't keep the JVM
+	 * alive).
+	 */
+	private ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int created;
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "maze-renderer-"
+						+ created++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Draws the walls of a region, a band of rows per thread.
+	 */
+	private void drawBands(ExecutorService executor, final byte[] pixels,
+			final int left, final int top, final int width, int height) {
+		int rowsPerBand = (height + threads - 1) / threads;
+		int bands = (height + rowsPerBand - 1) / rowsPerBand;
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for (int i = 0; i < bands; i++) {
+			final int firstRow = i * rowsPerBand;
+			final int lastRow = Math.min(height, firstRow + rowsPerBand);
+			results.add(executor.submit(new Runnable() {
+				public void run() {
+					for (int row = firstRow; row < lastRow; row++) {
+						drawRow(pixels, row * width, left, width, top + row);
+					}
+				}
+			}));
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while drawing", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Problem drawing the maze",
+						e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Writes the whole maze as a PNG image.
+	 * 
+	 * @param file
+	 *            Output file.
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public void writePng(File file) throws IOException {
+		write(render(), file);
+	}
+
+	/**
+	 * Writes the maze as PNG tiles, named <i>name-row-column.png</i> after
+	 * the given file (tiles in the last row and column may be smaller).
+	 * 
+	 * @param file
+	 *            Output file (e.g. <i>maze.png</i>).
+	 * @param tileSize
+	 *            Pixels per tile side (more than 0).
+	 * @return Written files, by rows.
+	 * @throws IOException
+	 *             If a file can't be written.
+	 */
+	public List<File> writeTiles(File file, int tileSize) throws IOException {
+		if (tileSize <= 0) {
+			throw new IllegalArgumentException("Wrong tile size: " + tileSize);
+		}
+		String name = file.getName();
+		if (name.toLowerCase().endsWith(".png")) {
+			name = name.substring(0, name.length() - ".png".length());
+		}
+		List<File> result = new ArrayList<File>();
+		long width = getWidth();
+		long height = getHeight();
+		// The same threads draw every tile
+		ExecutorService executor = (threads > 1) ? createExecutor() : null;
+		try {
+			for (long top = 0; top < height; top += tileSize) {
+				for (long left = 0; left < width; left += tileSize) {
+					File tile = new File(file.getParentFile(), name + "-"
+							+ (top / tileSize) + "-" + (left / tileSize)
+							+ ".png");
+					write(render((int) left, (int) top,
+							(int) Math.min(tileSize, width - left),
+							(int) Math.min(tileSize, height - top), executor),
+							tile);
+					result.add(tile);
+				}
+			}
+		} finally {
+			if (executor != null) {
+				executor.shutdown();
+			}
+		}
+		return result;
+	}
+
+	private static void write(BufferedImage image, File file)
+			throws IOException {
+		if (!ImageIO.write(image, "png", file)) {
+			throw new IOException("No PNG writer for " + file);
+		}
+	}
+
+	/**
+	 * Background, walls, start, end and a color per path.
+	 */
+	private IndexColorModel colorModel() {
+		List<Color> palette = new ArrayList<Color>(Arrays.asList(Color.WHITE,
+				Color.BLACK, Color.BLUE, Color.RED));
+		palette.addAll(colors);
+		byte[] r = new byte[palette.size()];
+		byte[] g = new byte[palette.size()];
+		byte[] b = new byte[palette.size()];
+		for (int i = 0; i < palette.size(); i++) {
+			r[i] = (byte) palette.get(i).getRed();
+			g[i] = (byte) palette.get(i).getGreen();
+			b[i] = (byte) palette.get(i).getBlue();
+		}
+		return new IndexColorModel(8, palette.size(), r, g, b);
+	}
+
+	/**
+	 * Draws the walls of a row of pixels (the rest is already white).
+	 * 
+	 * @param pixels
+	 *            Pixels of the region.
+	 * @param offset
+	 *            First pixel of the row in <i>pixels</i>.
+	 * @param left
+	 *            First column of the region.
+	 * @param width
+	 *            Width of the region.
+	 * @param row
+	 *            Row of the image.
+	 */
+	private void drawRow(byte[] pixels, int offset, int left, int width,
+			int row) {
+		int y = row / cellSize;
+		boolean wallRow = row % cellSize == 0;
+		int right = left + width;
+		for (int x = left / cellSize; (long) x * cellSize < right; x++) {
+			int first = x * cellSize;
+			if (y == maze.getHeight()) {
+				// Bottom border
+				fill(pixels, offset, left, right, first, first + cellSize);
+			} else if (x == maze.getWidth()) {
+				// Right border (the last column of the image)
+				fill(pixels, offset, left, right, first, first + 1);
+			} else if (wallRow) {
+				// The corner, and the top wall if it's up
+				fill(pixels, offset, left, right, first,
+						walls.hasTopWall(x, y) ? first + cellSize : first + 1);
+			} else if (walls.hasLeftWall(x, y)) {
+				fill(pixels, offset, left, right, first, first + 1);
+			}
+		}
+	}
+
+	/**
+	 * Sets some columns of a row of the region to WALL.
+	 * 
+	 * @param from
+	 *            First column of the image (inclusive).
+	 * @param to
+	 *            Last column of the image (exclusive).
+	 */
+	private static void fill(byte[] pixels, int offset, int left, int right,
+			int from, int to) {
+		from = Math.max(from, left);
+		to = Math.min(to, right);
+		if (from < to) {
+			Arrays.fill(pixels, offset + from - left, offset + to - left, WALL);
+		}
+	}
+
+	/**
+	 * Fills the cells of a path inside a region (the start and the end are
+	 * filled afterwards).
+	 */
+	private void drawPath(Region region, PathCells cells, byte color) {
+		int fromX = region.left / cellSize;
+		int toX = (region.left + region.width - 1) / cellSize + 1;
+		int fromY = region.top / cellSize;
+		int toY = Math.min(maze.getHeight(), (region.top + region.height - 1)
+				/ cellSize + 1);
+		for (int y = fromY; y < toY; y++) {
+			int end = cells.end(y);
+			for (int i = cells.first(y, fromX); i < end
+					&& cells.getX(i) < toX; i++) {
+				fillCell(region, cells.getX(i), y, color);
+			}
+		}
+	}
+
+	/**
+	 * Gap between the walls of a cell and its mark (the start, the end or a
+	 * path), 2 pixels if the cells are big enough (as MazeGraphics did).
+	 * 
+	 * @return Pixels.
+	 */
+	int getMarkInset() {
+		return (cellSize >= 4) ? 2 : 1;
+	}
+
+	/**
+	 * Side of the mark of a cell.
+	 * 
+	 * @return Pixels.
+	 */
+	int getMarkSize() {
+		return cellSize - 2 * getMarkInset() + 1;
+	}
+
+	/**
+	 * Fills the mark of a cell.
+	 */
+	private void fillCell(Region region, int x, int y, byte color) {
+		int from = Math.max(x * cellSize + getMarkInset(), region.left);
+		int to = Math.min(x * cellSize + getMarkInset() + getMarkSize(),
+				region.left + region.width);
+		int firstRow = Math.max(y * cellSize + getMarkInset(), region.top);
+		int lastRow = Math.min(y * cellSize + getMarkInset() + getMarkSize(),
+				region.top + region.height);
+		for (int row = firstRow; row < lastRow && from < to; row++) {
+			int offset = (row - region.top) * region.width - region.left;
+			Arrays.fill(region.pixels, offset + from, offset + to, color);
+		}
+	}
+
+	/**
+	 * Part of the image being drawn.
+	 */
+	private static class Region {
+		private byte[] pixels;
+		private int left;
+		private int top;
+		private int width;
+		private int height;
+
+		Region(byte[] pixels, int left, int top, int width, int height) {
+			this.pixels = pixels;
+			this.left = left;
+			this.top = top;
+			this.width = width;
+			this.height = height;
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package es.udc.santiago.maze.graphics;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Paints the visible part of a maze, for MazeGraphics.
+ * 
+ * The walls (and the start and the end) never change, so they are drawn once
+ * by MazeRenderer in square tiles, and the last used tiles are kept. Paths
+ * are an overlay: their cells are split by tile when they are added, so a
+ * paint only goes through the cells of the visible tiles and adding a path
+ * doesn't redraw anything else.
+ * 
+ * Images are as MazeRenderer draws them: the cell (x, y) starts at the pixel
+ * (x * cellSize, y * cellSize).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class MazeView {
+	/**
+	 * Cells per tile side.
+	 */
+	static final int TILE_CELLS = 64;
+	/**
+	 * Tiles kept (64 of 512x512 pixels, a byte each, are 16 MB).
+	 */
+	private static final int CACHED_TILES = 64;
+	private Maze maze;
+	private int cellSize;
+	private MazeRenderer walls;
+	private int tileSize;
+	private int columns;
+	private Map<Long, BufferedImage> tiles;
+	private List<PathOverlay> paths = new CopyOnWriteArrayList<PathOverlay>();
+
+	/**
+	 * Creates a view.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param cellSize
+	 *            Pixels per cell side.
+	 */
+	MazeView(Maze maze, int cellSize) {
+		this.maze = maze;
+		this.cellSize = cellSize;
+		this.walls = new MazeRenderer(maze, cellSize, 1);
+		this.tileSize = TILE_CELLS * cellSize;
+		this.columns = (int) ((walls.getWidth() + tileSize - 1) / tileSize);
+		this.tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 2605366271429498384L;
+
+			protected boolean removeEldestEntry(
+					Entry<Long, BufferedImage> eldest) {
+				return size() > CACHED_TILES;
+			}
+		};
+	}
+
+	/**
+	 * Width of the whole image.
+	 * 
+	 * @return Pixels.
+	 */
+	long getWidth() {
+		return walls.getWidth();
+	}
+
+	/**
+	 * Height of the whole image.
+	 * 
+	 * @return Pixels.
+	 */
+	long getHeight() {
+		return walls.getHeight();
+	}
+
+	/**
+	 * Adds a path, painted over the previous ones. It can be called while
+	 * another thread paints.
+	 * 
+	 * @param path
+	 *            Path.
+	 * @param color
+	 *            Color of its cells.
+	 */
+	void addPath(Path path, Color color) {
+		paths.add(new PathOverlay(path, color));
+	}
+
+	/**
+	 * Paints a region of the image.
+	 * 
+	 * @param g
+	 *            Graphics whose origin is the first pixel of the region.
+	 * @param left
+	 *            First column of the region (pixels, it can be negative).
+	 * @param top
+	 *            First row of the region (pixels, it can be negative).
+	 * @param width
+	 *            Width of the region (pixels).
+	 * @param height
+	 *            Height of the region (pixels).
+	 */
+	void paint(Graphics g, int left, int top, int width, int height) {
+		int firstColumn = Math.max(0, left) / tileSize;
+		int lastColumn = (int) Math.min(columns,
+				((long) left + width + tileSize - 1) / tileSize);
+		int firstRow = Math.max(0, top) / tileSize;
+		int lastRow = (int) Math.min((getHeight() + tileSize - 1) / tileSize,
+				((long) top + height + tileSize - 1) / tileSize);
+		for (int row = firstRow; row < lastRow; row++) {
+			for (int column = firstColumn; column < lastColumn; column++) {
+				long key = (long) row * columns + column;
+				g.drawImage(getTile(row, column, key), column * tileSize
+						- left, row * tileSize - top, null);
+				for (PathOverlay path : paths) {
+					path.paint(g, key, left, top);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the walls of a tile, drawing them if they aren't cached.
+	 */
+	private BufferedImage getTile(int row, int column, long key) {
+		BufferedImage tile = tiles.get(key);
+		if (tile == null) {
+			int left = column * tileSize;
+			int top = row * tileSize;
+			tile = walls.render(left, top,
+					(int) Math.min(tileSize, getWidth() - left),
+					(int) Math.min(tileSize, getHeight() - top));
+			tiles.put(key, tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Cells of a path by tile (except the start and the end, which are in the
+	 * walls tiles).
+	 */
+	private class PathOverlay {
+		private Color color;
+		/**
+		 * Coordinates of the cells of every tile (x, y, x, y...).
+		 */
+		private Map<Long, int[]> cells = new HashMap<Long, int[]>();
+
+		PathOverlay(Path path, Color color) {
+			this.color = color;
+			byte[] directions = path.toArray();
+			// Counts the coordinates of every tile, then fills them (the
+			// counters become the next positions)
+			Map<Long, int[]> positions = new HashMap<Long, int[]>();
+			for (int pass = 0; pass < 2; pass++) {
+				int x = path.getStart().x;
+				int y = path.getStart().y;
+				for (byte direction : directions) {
+					x = MazeUtils.nextX(x, direction);
+					y = MazeUtils.nextY(y, direction);
+					if (isStartOrEnd(x, y)) {
+						continue;
+					}
+					long key = (long) (y / TILE_CELLS) * columns + x
+							/ TILE_CELLS;
+					int[] position = positions.get(key);
+					if (pass == 0) {
+						if (position == null) {
+							position = new int[1];
+							positions.put(key, position);
+						}
+						position[0] += 2;
+					} else {
+						int[] tile = cells.get(key);
+						tile[position[0]++] = x;
+						tile[position[0]++] = y;
+					}
+				}
+				if (pass == 0) {
+					for (Entry<Long, int[]> entry : positions.entrySet()) {
+						cells.put(entry.getKey(), new int[entry.getValue()[0]]);
+						entry.getValue()[0] = 0;
+					}
+				}
+			}
+		}
+
+		private boolean isStartOrEnd(int x, int y) {
+			Point start = maze.getStart();
+			Point end = maze.getEnd();
+			return (x == start.x && y == start.y) || (x == end.x && y == end.y);
+		}
+
+		/**
+		 * Paints the cells of a tile.
+		 */
+		void paint(Graphics g, long key, int left, int top) {
+			int[] tile = cells.get(key);
+			if (tile == null) {
+				return;
+			}
+			g.setColor(color);
+			int inset = walls.getMarkInset();
+			int size = walls.getMarkSize();
+			for (int i = 0; i < tile.length; i += 2) {
+				g.fillRect(tile[i] * cellSize + inset - left, tile[i + 1]
+						* cellSize + inset - top, size, size);
+			}
+		}
+	}
+}
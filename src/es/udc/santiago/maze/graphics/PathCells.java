@@ -0,0 +1,108 @@
+package es.udc.santiago.maze.graphics;
+
+import java.util.Arrays;
+
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Cells of a path by rows, so the ones inside a region of the maze are found
+ * without going through the whole path again. It's built once per path (the
+ * start isn't included) and takes an int per cell and per row of the maze.
+ * 
+ * The cells of a row are sorted by x: the ones of row y between the columns
+ * fromX and toX are getX(i) for i from first(y, fromX) while i < end(y) and
+ * getX(i) < toX.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class PathCells {
+	/**
+	 * Index of the first cell of every row (and the number of cells at the
+	 * end).
+	 */
+	private int[] rowStart;
+	private int[] xs;
+
+	/**
+	 * Indexes the cells of a path.
+	 * 
+	 * @param path
+	 *            Path.
+	 * @param height
+	 *            Height of the maze.
+	 */
+	PathCells(Path path, int height) {
+		byte[] directions = path.toArray();
+		rowStart = new int[height + 1];
+		// Counts the cells of every row, then puts them in place
+		int x = path.getStart().x;
+		int y = path.getStart().y;
+		for (byte direction : directions) {
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
+			rowStart[y + 1]++;
+		}
+		for (int row = 0; row < height; row++) {
+			rowStart[row + 1] += rowStart[row];
+		}
+		xs = new int[directions.length];
+		int[] next = Arrays.copyOf(rowStart, height);
+		x = path.getStart().x;
+		y = path.getStart().y;
+		for (byte direction : directions) {
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
+			xs[next[y]++] = x;
+		}
+		for (int row = 0; row < height; row++) {
+			Arrays.sort(xs, rowStart[row], rowStart[row + 1]);
+		}
+	}
+
+	/**
+	 * Gets the first cell of a row at or after a column.
+	 * 
+	 * @param y
+	 *            Row.
+	 * @param fromX
+	 *            Column.
+	 * @return Index of the cell (end(y) if there isn't any).
+	 */
+	int first(int y, int fromX) {
+		int low = rowStart[y];
+		int high = rowStart[y + 1];
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (xs[middle] < fromX) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets the index after the last cell of a row.
+	 * 
+	 * @param y
+	 *            Row.
+	 * @return Index.
+	 */
+	int end(int y) {
+		return rowStart[y + 1];
+	}
+
+	/**
+	 * Gets the column of a cell.
+	 * 
+	 * @param index
+	 *            Index of the cell.
+	 * @return X coord.
+	 */
+	int getX(int index) {
+		return xs[index];
+	}
+}
@@ -0,0 +1,80 @@
+package es.udc.santiago.maze.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size bit set which can be shared between threads.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class AtomicBitSet {
+	private final AtomicLongArray words;
+	private final int size;
+
+	/**
+	 * Creates a bit set with all bits clear.
+	 * 
+	 * @param size
+	 *            Number of bits.
+	 */
+	public AtomicBitSet(int size) {
+		this.size = size;
+		this.words = new AtomicLongArray((int) (((long) size + 63) >>> 6));
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets a bit.
+	 * 
+	 * @param index
+	 *            Bit index.
+	 * @return <i>true</i> if it's set.
+	 */
+	public boolean get(int index) {
+		return (words.get(index >>> 6) & (1L << index)) != 0;
+	}
+
+	/**
+	 * Sets a bit atomically.
+	 * 
+	 * @param index
+	 *            Bit index.
+	 * @return <i>true</i> if this call changed it (so only one of the threads
+	 *         setting the same bit gets <i>true</i>).
+	 */
+	public boolean set(int index) {
+		int word = index >>> 6;
+		long mask = 1L << index;
+		while (true) {
+			long current = words.get(word);
+			if ((current & mask) != 0) {
+				return false;
+			}
+			if (words.compareAndSet(word, current, current | mask)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Clears a bit atomically.
+	 * 
+	 * @param index
+	 *            Bit index.
+	 */
+	public void clear(int index) {
+		int word = index >>> 6;
+		long mask = 1L << index;
+		while (true) {
+			long current = words.get(word);
+			if ((current & mask) == 0
+					|| words.compareAndSet(word, current, current & ~mask)) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package es.udc.santiago.maze.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Fixed size bit set stored in a memory-mapped file, so it doesn't use heap
+ * and the OS only keeps in memory the pages being used. The file is mapped
+ * in chunks because a single mapping can't be bigger than 2 GB.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class DiskBitSet implements Closeable {
+	private static final int CHUNK_SHIFT = 30;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+	private long size;
+	private RandomAccessFile raf;
+	private MappedByteBuffer[] chunks;
+
+	/**
+	 * Creates a bit set with all bits cleared (the file is overwritten).
+	 * 
+	 * @param file
+	 *            Backing file.
+	 * @param size
+	 *            Number of bits.
+	 * @throws IOException
+	 *             If the file can't be created.
+	 */
+	public DiskBitSet(File file, long size) throws IOException {
+		this.size = size;
+		long bytes = (size + 7) >>> 3;
+		this.raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(0);
+			raf.setLength(bytes);
+			FileChannel channel = raf.getChannel();
+			int count = (int) ((bytes + CHUNK_MASK) >>> CHUNK_SHIFT);
+			chunks = new MappedByteBuffer[count];
+			for (int i = 0; i < count; i++) {
+				long position = ((long) i) << CHUNK_SHIFT;
+				chunks[i] = channel.map(MapMode.READ_WRITE, position,
+						Math.min(1L << CHUNK_SHIFT, bytes - position));
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	public long size() {
+		return size;
+	}
+
+	public boolean get(long index) {
+		long bytePosition = index >>> 3;
+		byte value = chunks[(int) (bytePosition >>> CHUNK_SHIFT)]
+				.get((int) (bytePosition & CHUNK_MASK));
+		return (value & (1 << (index & 7))) != 0;
+	}
+
+	public void set(long index) {
+		long bytePosition = index >>> 3;
+		MappedByteBuffer chunk = chunks[(int) (bytePosition >>> CHUNK_SHIFT)];
+		int position = (int) (bytePosition & CHUNK_MASK);
+		chunk.put(position, (byte) (chunk.get(position) | (1 << (index & 7))));
+	}
+
+	public void close() throws IOException {
+		chunks = null;
+		raf.close();
+	}
+}
@@ -0,0 +1,73 @@
+package es.udc.santiago.maze.utils;
+
+/**
+ * FIFO queue of primitive ints backed by a growable circular array.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class IntRingBuffer {
+	private int[] data;
+	private int head;
+	private int size;
+
+	/**
+	 * Creates an empty queue.
+	 * 
+	 * @param initialCapacity
+	 *            Initial capacity (it grows when needed).
+	 */
+	public IntRingBuffer(int initialCapacity) {
+		this.data = new int[Math.max(1, initialCapacity)];
+	}
+
+	/**
+	 * Adds a value at the tail.
+	 * 
+	 * @param value
+	 *            Value.
+	 */
+	public void add(int value) {
+		if (size == data.length) {
+			// Unrolls the ring into a bigger array
+			int[] bigger = new int[data.length * 2];
+			for (int i = 0; i < size; i++) {
+				bigger[i] = data[(head + i) % data.length];
+			}
+			data = bigger;
+			head = 0;
+		}
+		data[(head + size) % data.length] = value;
+		size++;
+	}
+
+	/**
+	 * Removes the value at the head.
+	 * 
+	 * @return Value.
+	 * @throws IllegalStateException
+	 *             If the queue is empty.
+	 */
+	public int poll() {
+		if (size == 0) {
+			throw new IllegalStateException("Empty queue");
+		}
+		int value = data[head];
+		head = (head + 1) % data.length;
+		size--;
+		return value;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		head = 0;
+		size = 0;
+	}
+}
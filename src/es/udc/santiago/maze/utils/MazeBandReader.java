@@ -0,0 +1,101 @@
+package es.udc.santiago.maze.utils;
+
+import java.awt.Point;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import es.udc.santiago.maze.PackedWalls;
+
+/**
+ * Reads bands of rows of a maze file, so only those rows have to be in
+ * memory.
+ * 
+ * @author Santiago Munín González
+ * 
+ * @see MazeUtils#openBandReader(File)
+ */
+public class MazeBandReader implements Closeable {
+	private File file;
+	private MazeFileHeader header;
+	private FileChannel channel;
+
+	MazeBandReader(File file) throws IOException {
+		this.file = file;
+		this.channel = new FileInputStream(file).getChannel();
+		try {
+			this.header = MazeFileHeader.read(channel, file);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int getWidth() {
+		return header.width;
+	}
+
+	public int getHeight() {
+		return header.height;
+	}
+
+	public Point getStart() {
+		return header.start;
+	}
+
+	public Point getEnd() {
+		return header.end;
+	}
+
+	/**
+	 * Gets the seed the maze was generated from.
+	 * 
+	 * @return Seed, <i>null</i> if unknown.
+	 */
+	public Long getSeed() {
+		return header.seed;
+	}
+
+	/**
+	 * Reads some consecutive rows.
+	 * 
+	 * @param firstRow
+	 *            First row.
+	 * @param rows
+	 *            Number of rows.
+	 * @return Grid with <i>rows</i> rows (the bottom walls of its last row are
+	 *         the ones between it and the next row of the maze).
+	 * @throws IOException
+	 *             If there is any problem reading.
+	 */
+	public PackedWalls readRows(int firstRow, int rows) throws IOException {
+		if (firstRow < 0 || rows < 0 || firstRow + rows > header.height) {
+			throw new IndexOutOfBoundsException("Rows " + firstRow + " to "
+					+ (firstRow + rows) + " are out of the maze");
+		}
+		long rowBits = (long) header.width * PackedWalls.BITS_PER_CELL;
+		long fromBit = firstRow * rowBits;
+		long toBit = fromBit + rows * rowBits;
+		int firstWord = (int) (fromBit >>> 6);
+		int words = (int) (((toBit + 63) >>> 6) - firstWord);
+		ByteBuffer buffer = ByteBuffer.allocate(8 * words);
+		long position = MazeUtils.HEADER_SIZE + 8L * firstWord;
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException(file + " is truncated");
+			}
+		}
+		buffer.flip();
+		long[] bits = new long[words];
+		buffer.asLongBuffer().get(bits);
+		return new PackedWalls(header.width, rows, PackedWalls.copyBits(bits,
+				fromBit & 63, rows * rowBits));
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,126 @@
+package es.udc.santiago.maze.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import es.udc.santiago.maze.PackedWalls;
+
+/**
+ * Writes a maze file band by band (from top to bottom). Rows don't start at
+ * a word boundary, so the bits of every band are appended after the ones of
+ * the previous band.
+ * 
+ * @author Santiago Munín González
+ * 
+ * @see MazeUtils#openBandWriter(File, int, int, java.awt.Point,
+ *      java.awt.Point, Long)
+ */
+public class MazeBandWriter implements Closeable {
+	private MazeFileHeader header;
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	/**
+	 * Bits which don't fill a whole word yet.
+	 */
+	private long pending;
+	private int pendingBits;
+	private int writtenRows;
+
+	MazeBandWriter(File file, MazeFileHeader header) throws IOException {
+		this.header = header;
+		this.channel = new FileOutputStream(file).getChannel();
+		this.buffer = ByteBuffer.allocate(MazeUtils.WRITE_BUFFER_SIZE);
+		header.write(buffer);
+	}
+
+	/**
+	 * Number of rows written until now.
+	 * 
+	 * @return Number of rows.
+	 */
+	public int getWrittenRows() {
+		return writtenRows;
+	}
+
+	/**
+	 * Appends the next rows.
+	 * 
+	 * @param band
+	 *            Rows (as wide as the maze); the bottom walls of its last row
+	 *            are the ones between it and the next band.
+	 * @throws IOException
+	 *             If there is any problem writing.
+	 */
+	public void writeRows(PackedWalls band) throws IOException {
+		if (band.getWidth() != header.width) {
+			throw new IllegalArgumentException("Expected width "
+					+ header.width + ", got " + band.getWidth());
+		}
+		if (writtenRows + band.getHeight() > header.height) {
+			throw new IllegalArgumentException("Too many rows: "
+					+ (writtenRows + band.getHeight()) + " > " + header.height);
+		}
+		long[] bits = band.getBits();
+		long count = (long) band.getWidth() * band.getHeight()
+				* PackedWalls.BITS_PER_CELL;
+		for (int i = 0; count > 0; i++, count -= 64) {
+			int size = (int) Math.min(64, count);
+			long word = (size == 64) ? bits[i] : bits[i] & ((1L << size) - 1);
+			this.append(word, size);
+		}
+		writtenRows += band.getHeight();
+	}
+
+	/**
+	 * Appends some bits.
+	 * 
+	 * @param word
+	 *            Bits (the unused ones must be 0).
+	 * @param size
+	 *            Number of bits (1 to 64).
+	 */
+	private void append(long word, int size) throws IOException {
+		pending |= word << pendingBits;
+		int total = pendingBits + size;
+		if (total >= 64) {
+			this.putWord(pending);
+			pending = (pendingBits == 0) ? 0 : word >>> (64 - pendingBits);
+			pendingBits = total - 64;
+		} else {
+			pendingBits = total;
+		}
+	}
+
+	private void putWord(long word) throws IOException {
+		if (buffer.remaining() < 8) {
+			MazeUtils.writeFully(channel, buffer);
+		}
+		buffer.putLong(word);
+	}
+
+	/**
+	 * Flushes the last word and closes the file.
+	 * 
+	 * @throws IOException
+	 *             If not all rows were written or there is any problem
+	 *             writing.
+	 */
+	public void close() throws IOException {
+		try {
+			if (writtenRows != header.height) {
+				throw new IOException("Only " + writtenRows + " of "
+						+ header.height + " rows were written");
+			}
+			if (pendingBits > 0) {
+				this.putWord(pending);
+			}
+			MazeUtils.writeFully(channel, buffer);
+		} finally {
+			channel.close();
+		}
+	}
+}
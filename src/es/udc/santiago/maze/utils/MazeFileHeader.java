@@ -0,0 +1,132 @@
+package es.udc.santiago.maze.utils;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import es.udc.santiago.maze.PackedWalls;
+
+/**
+ * Header of the binary maze files: magic, version, width, height, start (x,
+ * y), end (x, y), flags and a padding int (ints), then the seed (a long).
+ * The packed walls follow it.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class MazeFileHeader {
+	/**
+	 * First int of a maze file ("MAZE").
+	 */
+	static final int MAGIC = 0x4D415A45;
+	static final int VERSION = 1;
+	static final int SIZE = 10 * 4 + 8;
+	private static final int FLAG_SEED = 0x1;
+	final int width;
+	final int height;
+	final Point start;
+	final Point end;
+	final Long seed;
+
+	MazeFileHeader(int width, int height, Point start, Point end, Long seed) {
+		this.width = width;
+		this.height = height;
+		this.start = start;
+		this.end = end;
+		this.seed = seed;
+	}
+
+	/**
+	 * Number of words of packed walls after the header.
+	 * 
+	 * @return Number of words.
+	 */
+	int words() {
+		return PackedWalls.wordsFor(width, height);
+	}
+
+	/**
+	 * Reads and checks the header of a file.
+	 * 
+	 * @param channel
+	 *            File channel.
+	 * @param file
+	 *            File (for the messages).
+	 * @return Header.
+	 * @throws IOException
+	 *             If the file isn't a maze, its header is wrong or it's
+	 *             truncated.
+	 */
+	static MazeFileHeader read(FileChannel channel, File file)
+			throws IOException {
+		if (channel.size() < SIZE) {
+			throw new IOException(file + " isn't a maze file");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, buffer.position()) < 0) {
+				throw new IOException(file + " is truncated");
+			}
+		}
+		buffer.flip();
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException(file + " isn't a maze file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported maze file version: " + version);
+		}
+		int width = buffer.getInt();
+		int height = buffer.getInt();
+		Point start = new Point(buffer.getInt(), buffer.getInt());
+		Point end = new Point(buffer.getInt(), buffer.getInt());
+		int flags = buffer.getInt();
+		buffer.getInt();
+		long seed = buffer.getLong();
+		// Checked before words(), which a bad size would overflow
+		if (width <= 0 || height <= 0
+				|| (long) width * height * PackedWalls.BITS_PER_CELL > 64L
+						* Integer.MAX_VALUE) {
+			throw new IOException(file + " has a wrong size: " + width + "x"
+					+ height);
+		}
+		if (!inside(start, width, height) || !inside(end, width, height)) {
+			throw new IOException(file + " has start or end points outside "
+					+ "the maze: " + start + ", " + end);
+		}
+		MazeFileHeader header = new MazeFileHeader(width, height, start, end,
+				((flags & FLAG_SEED) != 0) ? Long.valueOf(seed) : null);
+		if (channel.size() < SIZE + 8L * header.words()) {
+			throw new IOException(file + " is truncated");
+		}
+		return header;
+	}
+
+	private static boolean inside(Point point, int width, int height) {
+		return point.x >= 0 && point.y >= 0 && point.x < width
+				&& point.y < height;
+	}
+
+	/**
+	 * Puts the header in a buffer.
+	 * 
+	 * @param buffer
+	 *            Destination buffer.
+	 */
+	void write(ByteBuffer buffer) {
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(width);
+		buffer.putInt(height);
+		buffer.putInt(start.x);
+		buffer.putInt(start.y);
+		buffer.putInt(end.x);
+		buffer.putInt(end.y);
+		buffer.putInt((seed != null) ? FLAG_SEED : 0);
+		// Keeps the words aligned
+		buffer.putInt(0);
+		buffer.putLong((seed != null) ? seed : 0L);
+	}
+}
@@ -7,14 +7,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.AbstractMap;
 import java.util.LinkedList;
 import java.util.List;
 
 import es.udc.santiago.maze.Cell;
 import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
 import es.udc.santiago.maze.graphics.MazeGraphics;
 import es.udc.santiago.maze.walker.Path;
 
@@ -25,6 +28,12 @@ import es.udc.santiago.maze.walker.Path;
  * 
  */
 public class MazeUtils {
+	/**
+	 * Size of the header of maze files (see {@link MazeFileHeader}).
+	 */
+	public static final int HEADER_SIZE = MazeFileHeader.SIZE;
+	static final int WRITE_BUFFER_SIZE = 1 << 16;
+
 	/**
 	 * Gets the next point
 	 * 
@@ -54,6 +63,44 @@ public class MazeUtils {
 		return new Point(x, y);
 	}
 
+	/**
+	 * Gets the X coord of the next point without creating any object.
+	 * 
+	 * @param x
+	 *            Original X coord.
+	 * @param direction
+	 *            Walk direction.
+	 * @return New X coord.
+	 */
+	public static int nextX(int x, int direction) {
+		if (direction == Path.RIGHT) {
+			return x + 1;
+		}
+		if (direction == Path.LEFT) {
+			return x - 1;
+		}
+		return x;
+	}
+
+	/**
+	 * Gets the Y coord of the next point without creating any object.
+	 * 
+	 * @param y
+	 *            Original Y coord.
+	 * @param direction
+	 *            Walk direction.
+	 * @return New Y coord.
+	 */
+	public static int nextY(int y, int direction) {
+		if (direction == Path.DOWN) {
+			return y + 1;
+		}
+		if (direction == Path.UP) {
+			return y - 1;
+		}
+		return y;
+	}
+
 	/**
 	 * Prints the java code which will generate the given maze.
 	 * 
@@ -134,6 +181,18 @@ public class MazeUtils {
 		System.out.println("End point: " + result.getCurrentPoint());
 		System.out.println("End point (map): " + maze.getEnd());
 		System.out.println("Time: " + totalTime + " (ms).");
+	}
+
+	/**
+	 * Shows a maze and its path in a window (there must be a display, see
+	 * MazeRenderer otherwise).
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param result
+	 *            Path from start to the end.
+	 */
+	public static void showResult(Maze maze, Path result) {
 		MazeGraphics mg = new MazeGraphics(maze);
 		Frame f = mg.getMapFrame("Maze");
 		mg.addPath(new AbstractMap.SimpleEntry<Color, Path>(Color.BLACK, result));
@@ -141,7 +200,9 @@ public class MazeUtils {
 	}
 
 	/**
-	 * Serializes a maze in a file.
+	 * Writes a maze in a file with the binary format: a header (see
+	 * {@link MazeFileHeader}) followed by the packed walls (see
+	 * {@link PackedWalls#getBits()}).
 	 * 
 	 * @param maze
 	 *            Maze.
@@ -151,33 +212,108 @@ public class MazeUtils {
 	 *             If there is any problem with the maze writing.
 	 */
 	public static void mazeToFile(Maze maze, File file) throws IOException {
-		FileOutputStream fout;
-		fout = new FileOutputStream(file);
-		ObjectOutputStream oos = new ObjectOutputStream(fout);
-		oos.writeObject(maze);
-		oos.close();
+		FileChannel channel = new FileOutputStream(file).getChannel();
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+			MazeFileHeader header = new MazeFileHeader(maze.getWidth(),
+					maze.getHeight(), maze.getStart(), maze.getEnd(),
+					maze.getSeed());
+			header.write(buffer);
+			PackedWalls walls = maze.getWalls();
+			for (int i = 0; i < header.words(); i++) {
+				if (buffer.remaining() < 8) {
+					writeFully(channel, buffer);
+				}
+				buffer.putLong(walls.getWord(i));
+			}
+			writeFully(channel, buffer);
+		} finally {
+			channel.close();
+		}
 	}
 
 	/**
-	 * Unserializes a maze from a file.
+	 * Reads a maze written by {@link #mazeToFile(Maze, File)}. The walls are
+	 * left in the file, mapped read-only in memory, so it opens at once and
+	 * processes which read the same file share its pages in the page cache.
+	 * Changing the walls (e.g. filling dead ends) copies them to the heap
+	 * first, so the file is never modified.
 	 * 
 	 * @param file
 	 *            Source file.
-	 * @return Unserialized Maze.
+	 * @return Maze.
 	 * @throws IOException
-	 *             If there is any problem with the maze reading.
+	 *             If there is any problem with the maze reading or the file
+	 *             isn't a maze.
 	 */
 	public static Maze fileToMaze(File file) throws IOException {
-		FileInputStream fin = new FileInputStream(file);
-		ObjectInputStream ois = new ObjectInputStream(fin);
-		Maze maze;
+		FileChannel channel = new FileInputStream(file).getChannel();
 		try {
-			maze = (Maze) ois.readObject();
-			ois.close();
-			return maze;
-		} catch (ClassNotFoundException e) {
-			// Won't happen
-			return null;
+			MazeFileHeader header = MazeFileHeader.read(channel, file);
+			int words = header.words();
+			int perBuffer = PackedWalls.WORDS_PER_BUFFER;
+			LongBuffer[] buffers = new LongBuffer[Math.max(1,
+					(words + perBuffer - 1) / perBuffer)];
+			for (int i = 0; i < buffers.length; i++) {
+				long first = (long) i * perBuffer;
+				buffers[i] = channel.map(MapMode.READ_ONLY,
+						HEADER_SIZE + 8L * first,
+						8L * Math.min(perBuffer, words - first))
+						.asLongBuffer();
+			}
+			// Mappings stay valid after the channel is closed
+			return new Maze(new PackedWalls(header.width, header.height,
+					buffers), header.start, header.end, header.seed);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Opens a maze file to write it by bands of rows, so the whole maze never
+	 * has to be in memory.
+	 * 
+	 * @param file
+	 *            Destination file.
+	 * @param width
+	 *            Width.
+	 * @param height
+	 *            Height.
+	 * @param start
+	 *            Start point.
+	 * @param end
+	 *            End point.
+	 * @param seed
+	 *            Seed (<i>null</i> if unknown).
+	 * @return Writer (it must be closed).
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public static MazeBandWriter openBandWriter(File file, int width,
+			int height, Point start, Point end, Long seed) throws IOException {
+		return new MazeBandWriter(file, new MazeFileHeader(width, height,
+				start, end, seed));
+	}
+
+	/**
+	 * Opens a maze file to read it by bands of rows.
+	 * 
+	 * @param file
+	 *            Source file.
+	 * @return Reader (it must be closed).
+	 * @throws IOException
+	 *             If the file can't be read or it isn't a maze.
+	 */
+	public static MazeBandReader openBandReader(File file) throws IOException {
+		return new MazeBandReader(file);
+	}
+
+	static void writeFully(FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
 		}
+		buffer.clear();
 	}
 }
@@ -0,0 +1,359 @@
+package es.udc.santiago.maze.walker;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a solve, one instance per process. Walkers report what they
+ * expand (what a cell or a junction is depends on the walker) and
+ * MeteredCommunicator the messages sent and received by tag.
+ * 
+ * Walkers get DISABLED unless they are given another instance, and every
+ * method of it returns at once. Hot loops should count in local variables
+ * and report once per corridor or per walk, and check isEnabled() before
+ * measuring anything (e.g. calling System.nanoTime()).
+ * 
+ * Counters can be updated from several threads (see ForkJoinWalker).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class Metrics {
+	/**
+	 * Metrics which don't record anything.
+	 */
+	public static final Metrics DISABLED = new Metrics(-1, false);
+	/**
+	 * Cells whose open directions were looked up.
+	 */
+	public static final int CELLS_EXPANDED = 0;
+	/**
+	 * Cells with more than one way forward.
+	 */
+	public static final int JUNCTIONS_FOUND = 1;
+	/**
+	 * Cells or junctions reached again (or claimed by someone else).
+	 */
+	public static final int DUPLICATE_EXPANSIONS = 2;
+	/**
+	 * Dead ends, where the walker had to go back to a pending junction.
+	 */
+	public static final int BACKTRACKS = 3;
+	/**
+	 * Time without anything to walk (ns).
+	 */
+	public static final int IDLE_NANOS = 4;
+	/**
+	 * Time waiting in blocking receives and probes (ns).
+	 */
+	public static final int BLOCKED_NANOS = 5;
+	/**
+	 * Biggest size of the pending work (junctions, frontier or stack).
+	 */
+	public static final int MAX_QUEUE_DEPTH = 6;
+	/**
+	 * Sum of the sampled sizes of the pending work (divide it by
+	 * QUEUE_SAMPLES to get the mean).
+	 */
+	public static final int QUEUE_DEPTH_SUM = 7;
+	public static final int QUEUE_SAMPLES = 8;
+	/**
+	 * Message tags which are counted (0 to MAX_TAGS - 1).
+	 */
+	public static final int MAX_TAGS = 16;
+	private static final String[] NAMES = { "cellsExpanded",
+			"junctionsFound", "duplicateExpansions", "backtracks",
+			"idleNanos", "blockedNanos", "maxQueueDepth", "queueDepthSum",
+			"queueSamples" };
+	private static final String[] MESSAGE_NAMES = { "sent", "sentBytes",
+			"received", "receivedBytes" };
+	private static final int SENT = 0;
+	private static final int RECEIVED = 2;
+	/**
+	 * Number of words of toArray().
+	 */
+	public static final int SIZE = NAMES.length + MAX_TAGS
+			* MESSAGE_NAMES.length;
+	private int rank;
+	private boolean enabled;
+	/**
+	 * Counters, then 4 per tag (see MESSAGE_NAMES).
+	 */
+	private AtomicLongArray values;
+
+	/**
+	 * Creates the metrics of a process.
+	 * 
+	 * @param rank
+	 *            Process ID (0 if there is only one).
+	 */
+	public Metrics(int rank) {
+		this(rank, true);
+	}
+
+	private Metrics(int rank, boolean enabled) {
+		this.rank = rank;
+		this.enabled = enabled;
+		this.values = new AtomicLongArray(enabled ? SIZE : 0);
+	}
+
+	/**
+	 * Rebuilds the metrics sent by another process.
+	 * 
+	 * @param rank
+	 *            Process ID.
+	 * @param array
+	 *            Counters (see {@link #toArray()}).
+	 * @return Metrics.
+	 */
+	public static Metrics fromArray(int rank, long[] array) {
+		Metrics result = new Metrics(rank);
+		for (int i = 0; i < SIZE; i++) {
+			result.values.set(i, array[i]);
+		}
+		return result;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	/**
+	 * Determines if anything is recorded.
+	 * 
+	 * @return <i>false</i> for DISABLED.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Adds to a counter.
+	 * 
+	 * @param counter
+	 *            Counter (see the constants).
+	 * @param value
+	 *            Amount.
+	 */
+	public void add(int counter, long value) {
+		if (enabled) {
+			values.addAndGet(counter, value);
+		}
+	}
+
+	/**
+	 * Adds what a walker counted in a walk (or a part of it).
+	 * 
+	 * @param cells
+	 *            Cells expanded.
+	 * @param junctions
+	 *            Junctions found.
+	 * @param duplicates
+	 *            Duplicate expansions.
+	 * @param backtracks
+	 *            Backtracks.
+	 */
+	public void addWalk(long cells, long junctions, long duplicates,
+			long backtracks) {
+		if (enabled) {
+			values.addAndGet(CELLS_EXPANDED, cells);
+			values.addAndGet(JUNCTIONS_FOUND, junctions);
+			values.addAndGet(DUPLICATE_EXPANSIONS, duplicates);
+			values.addAndGet(BACKTRACKS, backtracks);
+		}
+	}
+
+	/**
+	 * Samples the size of the pending work.
+	 * 
+	 * @param depth
+	 *            Current size.
+	 */
+	public void queueDepth(int depth) {
+		if (!enabled) {
+			return;
+		}
+		values.addAndGet(QUEUE_DEPTH_SUM, depth);
+		values.incrementAndGet(QUEUE_SAMPLES);
+		long max = values.get(MAX_QUEUE_DEPTH);
+		while (depth > max
+				&& !values.compareAndSet(MAX_QUEUE_DEPTH, max, depth)) {
+			max = values.get(MAX_QUEUE_DEPTH);
+		}
+	}
+
+	/**
+	 * Counts a sent message.
+	 * 
+	 * @param tag
+	 *            Message tag.
+	 * @param bytes
+	 *            Size of the message.
+	 */
+	public void sent(int tag, long bytes) {
+		message(tag, SENT, bytes);
+	}
+
+	/**
+	 * Counts a received message.
+	 * 
+	 * @param tag
+	 *            Message tag.
+	 * @param bytes
+	 *            Size of the message.
+	 */
+	public void received(int tag, long bytes) {
+		message(tag, RECEIVED, bytes);
+	}
+
+	private void message(int tag, int kind, long bytes) {
+		if (enabled && tag >= 0 && tag < MAX_TAGS) {
+			int index = NAMES.length + tag * MESSAGE_NAMES.length + kind;
+			values.incrementAndGet(index);
+			values.addAndGet(index + 1, bytes);
+		}
+	}
+
+	/**
+	 * Gets a counter.
+	 * 
+	 * @param counter
+	 *            Counter (see the constants).
+	 * @return Value.
+	 */
+	public long get(int counter) {
+		return enabled ? values.get(counter) : 0;
+	}
+
+	public long getSent(int tag) {
+		return messageValue(tag, SENT);
+	}
+
+	public long getSentBytes(int tag) {
+		return messageValue(tag, SENT + 1);
+	}
+
+	public long getReceived(int tag) {
+		return messageValue(tag, RECEIVED);
+	}
+
+	public long getReceivedBytes(int tag) {
+		return messageValue(tag, RECEIVED + 1);
+	}
+
+	private long messageValue(int tag, int kind) {
+		return get(NAMES.length + tag * MESSAGE_NAMES.length + kind);
+	}
+
+	/**
+	 * Copies the counters, to send them to another process.
+	 * 
+	 * @return SIZE words.
+	 */
+	public long[] toArray() {
+		long[] result = new long[SIZE];
+		for (int i = 0; i < SIZE && enabled; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the metrics of every process: CSV (a row per process) if the
+	 * file name ends with ".csv", JSON otherwise. Only the tags which were
+	 * used by some process are written.
+	 * 
+	 * @param processes
+	 *            Metrics of every process.
+	 * @param file
+	 *            Output file.
+	 * @throws IOException
+	 *             If the file can't be written.
+	 */
+	public static void write(List<Metrics> processes, File file)
+			throws IOException {
+		boolean[] used = new boolean[MAX_TAGS];
+		for (Metrics metrics : processes) {
+			for (int tag = 0; tag < MAX_TAGS; tag++) {
+				used[tag] |= metrics.getSent(tag) > 0
+						|| metrics.getReceived(tag) > 0;
+			}
+		}
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			if (file.getName().endsWith(".csv")) {
+				writeCsv(processes, used, out);
+			} else {
+				writeJson(processes, used, out);
+			}
+		} finally {
+			out.close();
+		}
+		if (out.checkError()) {
+			throw new IOException("Problem writing " + file);
+		}
+	}
+
+	private static void writeCsv(List<Metrics> processes, boolean[] used,
+			PrintWriter out) {
+		StringBuilder header = new StringBuilder("rank");
+		for (String name : NAMES) {
+			header.append(',').append(name);
+		}
+		for (int tag = 0; tag < MAX_TAGS; tag++) {
+			for (int i = 0; i < MESSAGE_NAMES.length && used[tag]; i++) {
+				header.append(",tag").append(tag).append('.')
+						.append(MESSAGE_NAMES[i]);
+			}
+		}
+		out.println(header);
+		for (Metrics metrics : processes) {
+			StringBuilder row = new StringBuilder().append(metrics.rank);
+			for (int i = 0; i < NAMES.length; i++) {
+				row.append(',').append(metrics.get(i));
+			}
+			for (int tag = 0; tag < MAX_TAGS; tag++) {
+				for (int i = 0; i < MESSAGE_NAMES.length && used[tag]; i++) {
+					row.append(',').append(metrics.messageValue(tag, i));
+				}
+			}
+			out.println(row);
+		}
+	}
+
+	private static void writeJson(List<Metrics> processes, boolean[] used,
+			PrintWriter out) {
+		out.println("[");
+		for (int p = 0; p < processes.size(); p++) {
+			Metrics metrics = processes.get(p);
+			StringBuilder json = new StringBuilder("  {\"rank\": ")
+					.append(metrics.rank);
+			for (int i = 0; i < NAMES.length; i++) {
+				json.append(", \"").append(NAMES[i]).append("\": ")
+						.append(metrics.get(i));
+			}
+			json.append(", \"messages\": {");
+			String separator = "";
+			for (int tag = 0; tag < MAX_TAGS; tag++) {
+				if (!used[tag]) {
+					continue;
+				}
+				json.append(separator).append('"').append(tag).append("\": {");
+				for (int i = 0; i < MESSAGE_NAMES.length; i++) {
+					json.append((i > 0) ? ", " : "").append('"')
+							.append(MESSAGE_NAMES[i]).append("\": ")
+							.append(metrics.messageValue(tag, i));
+				}
+				json.append('}');
+				separator = ", ";
+			}
+			json.append("}}").append((p < processes.size() - 1) ? "," : "");
+			out.println(json);
+		}
+		out.println("]");
+	}
+}
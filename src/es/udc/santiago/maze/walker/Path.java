@@ -2,7 +2,7 @@ package es.udc.santiago.maze.walker;
 
 import java.awt.Point;
 import java.io.Serializable;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -11,42 +11,53 @@ import es.udc.santiago.maze.utils.MazeUtils;
 /**
  * This class represents the path walked by a process.
  * 
+ * Movements are packed 2 bits each in a growable long array and the current
+ * point is cached, so walking doesn't replay the whole path. A clone shares
+ * the movements of the original one (it just keeps a pointer to them and
+ * the number of movements it owns), so branching is O(1).
+ * 
  * @author Santiago Munín González
  * 
  */
 public class Path implements Serializable {
-	private static final long serialVersionUID = 8301650252151209655L;
+	private static final long serialVersionUID = -1894271535046339163L;
 	private Point start;
 	public static final byte NO_DIRECTION = 0;
 	public static final byte UP = 0x1;
 	public static final byte RIGHT = 0x2;
 	public static final byte DOWN = 0x4;
 	public static final byte LEFT = 0x8;
-	private Queue<Byte> movements;
+	private static final int MOVEMENTS_PER_WORD = 32;
+	private static final int INITIAL_WORDS = 2;
+	private Segment segment;
+	private int endX;
+	private int endY;
 
 	public Path(Point start) {
 		this.start = start;
-		this.movements = new LinkedList<Byte>();
+		this.segment = new Segment(null, 0);
+		this.endX = start.x;
+		this.endY = start.y;
 	}
 
 	public Path(Point start, Queue<Byte> movements) {
-		this.start = start;
+		this(start);
 		if (movements != null) {
-			this.movements = movements;
-		} else {
-			this.movements = new LinkedList<Byte>();
+			for (byte movement : movements) {
+				this.addMovement(movement);
+			}
 		}
 	}
+
 	/**
 	 * Creates a path from an int's array.
 	 * @see #getAsIntArray()
 	 * @param array
 	 */
 	public Path(int[] array) {
-		this.start = new Point(array[0], array[1]);
-		this.movements = new LinkedList<Byte>();
+		this(new Point(array[0], array[1]));
 		for (int i = 2; i < array.length; i++) {
-			this.movements.add((byte) array[i]);
+			this.addMovement((byte) array[i]);
 		}
 	}
 
@@ -55,26 +66,54 @@ public class Path implements Serializable {
 	}
 
 	public void setStart(Point start) {
+		this.endX += start.x - this.start.x;
+		this.endY += start.y - this.start.y;
 		this.start = start;
 	}
 
 	/**
-	 * Gets the current point (walking all saved directions from the starting
-	 * point).
+	 * Gets the current point (it's cached, so it doesn't walk the saved
+	 * directions).
 	 * 
 	 * @return coordinates x and y.
 	 */
 	public Point getCurrentPoint() {
-		Point result = new Point(start);
-		for (Iterator<Byte> iterator = movements.iterator(); iterator.hasNext();) {
-			byte direction = (byte) iterator.next();
-			result = MazeUtils.getNextPoint(result, direction);
-		}
-		return result;
+		return new Point(endX, endY);
+	}
+
+	/**
+	 * Gets the X coord of the current point.
+	 * 
+	 * @return X coord.
+	 */
+	public int getCurrentX() {
+		return endX;
+	}
+
+	/**
+	 * Gets the Y coord of the current point.
+	 * 
+	 * @return Y coord.
+	 */
+	public int getCurrentY() {
+		return endY;
+	}
+
+	/**
+	 * Number of movements.
+	 * 
+	 * @return Length of the path.
+	 */
+	public int size() {
+		return segment.base + segment.count;
 	}
 
 	public Queue<Byte> getMovements() {
-		return new LinkedList<Byte>(this.movements);
+		Queue<Byte> result = new LinkedList<Byte>();
+		for (byte movement : this.toArray()) {
+			result.add(movement);
+		}
+		return result;
 	}
 
 	/**
@@ -83,20 +122,23 @@ public class Path implements Serializable {
 	 * @return A byte array with array[0] = point.x, array[1] = point.y, array[2..n] = directions
 	 */
 	public int[] getAsIntArray() {
-		int[] result;
-		int size = this.movements.size();
-		result = (size == 0) ? new int[2] : new int[2 + size];
+		byte[] movements = this.toArray();
+		int[] result = new int[2 + movements.length];
 		result[0] = this.start.x;
 		result[1] = this.start.y;
-		int i = 2;
-		for (byte dir : this.movements) {
-			result[i++] = dir;
+		for (int i = 0; i < movements.length; i++) {
+			result[i + 2] = movements[i];
 		}
 		return result;
 	}
 
 	public void setMovements(Queue<Byte> movements) {
-		this.movements = movements;
+		this.segment = new Segment(null, 0);
+		this.endX = start.x;
+		this.endY = start.y;
+		for (byte movement : movements) {
+			this.addMovement(movement);
+		}
 	}
 
 	/**
@@ -106,7 +148,13 @@ public class Path implements Serializable {
 	 *            Integer as direction (see Path's constants)
 	 */
 	public void addMovement(byte movement) {
-		this.movements.add(movement);
+		if (Integer.bitCount(movement & 0xF) != 1 || (movement & ~0xF) != 0) {
+			throw new IllegalArgumentException("Not a single direction: "
+					+ movement);
+		}
+		segment.add(Integer.numberOfTrailingZeros(movement));
+		endX = MazeUtils.nextX(endX, movement);
+		endY = MazeUtils.nextY(endY, movement);
 	}
 
 	/**
@@ -116,23 +164,99 @@ public class Path implements Serializable {
 	 */
 	public Queue<Point> getPoints() {
 		Queue<Point> result = new LinkedList<Point>();
-		Point currentPoint = new Point(start.x, start.y);
-		result.add(currentPoint);
-		for (Iterator<Byte> iterator = movements.iterator(); iterator.hasNext();) {
-			byte direction = iterator.next();
-			currentPoint = MazeUtils.getNextPoint(currentPoint, direction);
-			result.add(currentPoint);
+		int x = start.x;
+		int y = start.y;
+		result.add(new Point(x, y));
+		for (byte direction : this.toArray()) {
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
+			result.add(new Point(x, y));
 		}
 		return result;
 	}
 
+	/**
+	 * Gets all movements in order.
+	 * 
+	 * @return An array of directions (see Path's constants).
+	 */
+	public byte[] toArray() {
+		byte[] result = new byte[this.size()];
+		int limit = segment.count;
+		for (Segment s = segment; s != null; limit = s.parentCount,
+				s = s.parent) {
+			for (int i = 0; i < limit; i++) {
+				result[s.base + i] = (byte) (1 << s.get(i));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a copy of this path. Both paths share the movements walked
+	 * until now, so it doesn't depend on the length of the path.
+	 * 
+	 * @return The copy.
+	 */
 	public Path clone() {
-		return new Path((Point) start.clone(), new LinkedList<Byte>(
-				this.movements));
+		Path result = new Path((Point) start.clone());
+		if (segment.count == 0) {
+			result.segment = new Segment(segment.parent, segment.parentCount);
+		} else {
+			result.segment = new Segment(segment, segment.count);
+		}
+		result.endX = endX;
+		result.endY = endY;
+		return result;
 	}
 
 	public boolean equals(Object path) {
 		Path p = (Path) path;
 		return p.getCurrentPoint().equals(this.getCurrentPoint());
 	}
-}
\ No newline at end of file
+
+	public int hashCode() {
+		return this.getCurrentPoint().hashCode();
+	}
+
+	/**
+	 * Movements appended by a single path. It keeps a pointer to the
+	 * movements it was cloned from; those are never modified (the original
+	 * path only appends after them), so they can be shared.
+	 */
+	private static class Segment implements Serializable {
+		private static final long serialVersionUID = 6412087311440522853L;
+		private final Segment parent;
+		/**
+		 * Movements of the parent segment which belong to this path.
+		 */
+		private final int parentCount;
+		/**
+		 * Movements before this segment.
+		 */
+		private final int base;
+		private long[] words;
+		private int count;
+
+		Segment(Segment parent, int parentCount) {
+			this.parent = parent;
+			this.parentCount = parentCount;
+			this.base = (parent == null) ? 0 : parent.base + parentCount;
+			this.words = new long[INITIAL_WORDS];
+		}
+
+		void add(int code) {
+			int word = count / MOVEMENTS_PER_WORD;
+			if (word == words.length) {
+				words = Arrays.copyOf(words, words.length * 2);
+			}
+			words[word] |= ((long) code) << ((count % MOVEMENTS_PER_WORD) * 2);
+			count++;
+		}
+
+		int get(int index) {
+			long word = words[index / MOVEMENTS_PER_WORD];
+			return (int) (word >>> ((index % MOVEMENTS_PER_WORD) * 2)) & 0x3;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package es.udc.santiago.maze.walker;
+
+/**
+ * Common interface of the single process walkers.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public interface Walker {
+	/**
+	 * Walks through the maze.
+	 * 
+	 * @return Path from start to end.
+	 */
+	public Path walk();
+
+	/**
+	 * Sets where the walker reports what it expands (Metrics.DISABLED by
+	 * default).
+	 * 
+	 * @param metrics
+	 *            Metrics.
+	 */
+	public void setMetrics(Metrics metrics);
+}
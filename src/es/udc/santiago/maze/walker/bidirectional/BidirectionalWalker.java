@@ -0,0 +1,294 @@
+package es.udc.santiago.maze.walker.bidirectional;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.IntRingBuffer;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+
+/**
+ * Breadth-first walker which expands two frontiers, one from the start and
+ * another one from the end, until they meet. Then it joins both halves (the
+ * second one reversed).
+ * 
+ * Every cell (<i>y * width + x</i>) is claimed by only one of the frontiers.
+ * Claims are atomic, so both frontiers can be expanded on their own threads.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class BidirectionalWalker implements Walker {
+	private static final int FREE = 0;
+	private static final long NOT_MET = -1L;
+	private static final int INITIAL_QUEUE_SIZE = 1024;
+	private Maze maze;
+	private boolean twoThreads;
+	private int width;
+	/**
+	 * <i>parent + 1</i> for cells claimed from the start, <i>-(parent +
+	 * 1)</i> for cells claimed from the end, FREE otherwise.
+	 */
+	private AtomicIntegerArray claims;
+	/**
+	 * Start side cell and end side cell where the frontiers met.
+	 */
+	private AtomicLong meeting;
+	private Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Creates a walker which expands both frontiers on the calling thread.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 */
+	public BidirectionalWalker(Maze maze) {
+		this(maze, false);
+	}
+
+	/**
+	 * Creates a walker.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param twoThreads
+	 *            Expands each frontier on its own thread if <i>true</i>.
+	 */
+	public BidirectionalWalker(Maze maze, boolean twoThreads) {
+		this.maze = maze;
+		this.twoThreads = twoThreads;
+		this.width = maze.getWidth();
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Walks through the maze.
+	 * 
+	 * @return Path from start to end, <i>null</i> if the end can't be reached.
+	 */
+	public Path walk() {
+		int start = maze.getStart().y * width + maze.getStart().x;
+		int end = maze.getEnd().y * width + maze.getEnd().x;
+		if (start == end) {
+			return new Path(maze.getStart());
+		}
+		claims = new AtomicIntegerArray(width * maze.getHeight());
+		meeting = new AtomicLong(NOT_MET);
+		final Frontier fromStart = new Frontier(start, true);
+		final Frontier fromEnd = new Frontier(end, false);
+		if (twoThreads) {
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					while (fromEnd.expand()) {
+						// Until the frontiers meet
+					}
+				}
+			}, "bidirectional-end");
+			thread.start();
+			while (fromStart.expand()) {
+				// Until the frontiers meet
+			}
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		} else {
+			boolean startAlive = true;
+			boolean endAlive = true;
+			while ((startAlive || endAlive) && meeting.get() == NOT_MET) {
+				if (startAlive) {
+					startAlive = fromStart.expand();
+				}
+				if (endAlive) {
+					endAlive = fromEnd.expand();
+				}
+			}
+		}
+		fromStart.report();
+		fromEnd.report();
+		long met = meeting.get();
+		if (met == NOT_MET) {
+			return null;
+		}
+		return buildPath(start, end, (int) (met >>> 32), (int) met);
+	}
+
+	/**
+	 * Joins both halves.
+	 * 
+	 * @param start
+	 *            Start cell.
+	 * @param end
+	 *            End cell.
+	 * @param startSide
+	 *            Last cell of the start half.
+	 * @param endSide
+	 *            First cell of the end half.
+	 * @return Path from start to end.
+	 */
+	private Path buildPath(int start, int end, int startSide, int endSide) {
+		int firstHalf = 0;
+		for (int cell = startSide; cell != start; cell = parent(cell)) {
+			firstHalf++;
+		}
+		byte[] movements = new byte[firstHalf];
+		int cell = startSide;
+		for (int i = firstHalf - 1; i >= 0; i--) {
+			int parent = parent(cell);
+			movements[i] = direction(parent, cell);
+			cell = parent;
+		}
+		Path path = new Path(maze.getStart());
+		for (byte movement : movements) {
+			path.addMovement(movement);
+		}
+		path.addMovement(direction(startSide, endSide));
+		// The end half is walked backwards, so it's already reversed
+		for (cell = endSide; cell != end; cell = parent(cell)) {
+			path.addMovement(direction(cell, parent(cell)));
+		}
+		return path;
+	}
+
+	private int parent(int cell) {
+		int claim = claims.get(cell);
+		return (claim > 0) ? claim - 1 : -claim - 1;
+	}
+
+	/**
+	 * Gets the direction between two neighbor cells.
+	 * 
+	 * @param from
+	 *            Origin cell.
+	 * @param to
+	 *            Destination cell.
+	 * @return Direction (see Path's constants).
+	 */
+	private byte direction(int from, int to) {
+		if (to == from + 1) {
+			return Path.RIGHT;
+		}
+		if (to == from - 1) {
+			return Path.LEFT;
+		}
+		if (to == from + width) {
+			return Path.DOWN;
+		}
+		return Path.UP;
+	}
+
+	/**
+	 * One of the frontiers.
+	 */
+	private class Frontier {
+		private int origin;
+		private boolean fromStart;
+		private IntRingBuffer queue;
+		private boolean metered = metrics.isEnabled();
+		private long expanded = 0;
+		private long junctions = 0;
+		private long duplicates = 0;
+		private long deadEnds = 0;
+		/**
+		 * Cells of the other frontier found (they aren't duplicates).
+		 */
+		private long crossings = 0;
+
+		Frontier(int origin, boolean fromStart) {
+			this.origin = origin;
+			this.fromStart = fromStart;
+			this.queue = new IntRingBuffer(INITIAL_QUEUE_SIZE);
+			claims.set(origin, claimValue(origin));
+			queue.add(origin);
+		}
+
+		private int claimValue(int parent) {
+			return fromStart ? parent + 1 : -(parent + 1);
+		}
+
+		/**
+		 * Expands one level of the frontier.
+		 * 
+		 * @return <i>false</i> if the frontiers met or there's nothing left
+		 *         to expand.
+		 */
+		boolean expand() {
+			int levelSize = queue.size();
+			for (int i = 0; i < levelSize; i++) {
+				if (meeting.get() != NOT_MET) {
+					return false;
+				}
+				int cell = queue.poll();
+				int directions = maze.openDirections(cell % width, cell
+						/ width, Path.NO_DIRECTION);
+				int queued = queue.size();
+				if ((directions & Path.UP) != 0) {
+					visit(cell, cell - width);
+				}
+				if ((directions & Path.RIGHT) != 0) {
+					visit(cell, cell + 1);
+				}
+				if ((directions & Path.DOWN) != 0) {
+					visit(cell, cell + width);
+				}
+				if ((directions & Path.LEFT) != 0) {
+					visit(cell, cell - 1);
+				}
+				if (metered) {
+					count(cell, directions, queued);
+				}
+			}
+			return !queue.isEmpty() && meeting.get() == NOT_MET;
+		}
+
+		private void visit(int from, int to) {
+			if (claims.compareAndSet(to, FREE, claimValue(from))) {
+				queue.add(to);
+				return;
+			}
+			int claim = claims.get(to);
+			if ((claim > 0) != fromStart) {
+				// It belongs to the other frontier
+				crossings++;
+				long met = fromStart ? pack(from, to) : pack(to, from);
+				meeting.compareAndSet(NOT_MET, met);
+			}
+		}
+
+		/**
+		 * Counts an expanded cell.
+		 * 
+		 * @param queued
+		 *            Size of the queue before expanding it.
+		 */
+		private void count(int cell, int directions, int queued) {
+			// Every cell but the origin was reached from an open one
+			int forward = Integer.bitCount(directions)
+					- ((cell == origin) ? 0 : 1);
+			expanded++;
+			junctions += (forward > 1) ? 1 : 0;
+			deadEnds += (forward == 0) ? 1 : 0;
+			duplicates += forward - (queue.size() - queued);
+			metrics.queueDepth(queue.size());
+		}
+
+		/**
+		 * Adds the counts of this frontier to the metrics.
+		 */
+		void report() {
+			metrics.addWalk(expanded, junctions, duplicates - crossings,
+					deadEnds);
+		}
+
+		private long pack(int startSide, int endSide) {
+			return (((long) startSide) << 32) | (endSide & 0xFFFFFFFFL);
+		}
+	}
+}
@@ -0,0 +1,184 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.AtomicBitSet;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+
+/**
+ * Shared memory parallel walker. It follows corridors like ParallelWalker,
+ * but forks a task for every direction of a junction instead of sending it to
+ * the master process.
+ * 
+ * Junctions are claimed in a shared bit set, so every one of them is expanded
+ * only once. When a task reaches the end all the others stop.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class ForkJoinWalker implements Walker {
+	private Maze maze;
+	private int parallelism;
+	private int width;
+	private AtomicBitSet walkedJunctions;
+	private AtomicReference<Path> result;
+	private Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Creates a walker which uses all the available processors.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 */
+	public ForkJoinWalker(Maze maze) {
+		this(maze, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a walker.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 * @param parallelism
+	 *            Number of threads.
+	 */
+	public ForkJoinWalker(Maze maze, int parallelism) {
+		this.maze = maze;
+		this.parallelism = parallelism;
+		this.width = maze.getWidth();
+	}
+
+	/**
+	 * Sets the metrics. Every task reports its counts when it finishes, and
+	 * the queue depth is the number of tasks forked and not started by the
+	 * worker which forks a new one.
+	 * 
+	 * @param metrics
+	 *            Metrics.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Walks through the maze. It returns when all the tasks are finished.
+	 * 
+	 * @return Path from start to end, <i>null</i> if the end can't be reached.
+	 */
+	public Path walk() {
+		Path start = new Path(maze.getStart());
+		if (maze.getStart().equals(maze.getEnd())) {
+			return start;
+		}
+		walkedJunctions = new AtomicBitSet(width * maze.getHeight());
+		result = new AtomicReference<Path>();
+		walkedJunctions.set(maze.getStart().y * width + maze.getStart().x);
+		int directions = maze.openDirections(maze.getStart().x,
+				maze.getStart().y, Path.NO_DIRECTION);
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new WalkTask(null, start, directions));
+		} finally {
+			pool.shutdownNow();
+			// Tasks still walking finish their corridor, see the result and
+			// report their metrics
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return result.get();
+	}
+
+	/**
+	 * Walks from the end of a path in some directions.
+	 */
+	private class WalkTask extends CountedCompleter<Void> {
+		private static final long serialVersionUID = -4705470316932913211L;
+		private Path path;
+		private int directions;
+		private long expanded = 0;
+		private long junctions = 0;
+		private long duplicates = 0;
+		private long deadEnds = 0;
+
+		WalkTask(CountedCompleter<?> parent, Path path, int directions) {
+			super(parent);
+			this.path = path;
+			this.directions = directions;
+		}
+
+		public void compute() {
+			while (directions != Path.NO_DIRECTION && result.get() == null) {
+				byte direction = (byte) Integer.lowestOneBit(directions);
+				int others = directions & ~direction;
+				if (others != Path.NO_DIRECTION) {
+					// The junction: other directions go to a new task. Paths
+					// are cloned before anyone keeps walking, so shared
+					// movements are never written again.
+					Path own = path.clone();
+					addToPendingCount(1);
+					new WalkTask(this, path.clone(), others).fork();
+					path = own;
+					if (metrics.isEnabled()) {
+						metrics.queueDepth(getQueuedTaskCount());
+					}
+				}
+				directions = walkCorridor(direction);
+			}
+			metrics.addWalk(expanded, junctions, duplicates, deadEnds);
+			tryComplete();
+		}
+
+		/**
+		 * Follows a corridor until the end, a dead end or a junction.
+		 * 
+		 * @param direction
+		 *            First direction.
+		 * @return New directions (NO_DIRECTION if the task is finished).
+		 */
+		private int walkCorridor(byte direction) {
+			int x = path.getCurrentX();
+			int y = path.getCurrentY();
+			int endX = maze.getEnd().x;
+			int endY = maze.getEnd().y;
+			while (true) {
+				x = MazeUtils.nextX(x, direction);
+				y = MazeUtils.nextY(y, direction);
+				path.addMovement(direction);
+				if (x == endX && y == endY) {
+					if (result.compareAndSet(null, path)) {
+						// Releases pool.invoke(); other tasks see the result
+						// and stop
+						quietlyCompleteRoot();
+					}
+					return Path.NO_DIRECTION;
+				}
+				int directions = maze.openDirections(x, y, direction);
+				expanded++;
+				if (Integer.bitCount(directions) == 1) {
+					direction = (byte) directions;
+				} else if (directions == Path.NO_DIRECTION) {
+					deadEnds++;
+					return Path.NO_DIRECTION;
+				} else {
+					junctions++;
+					if (!walkedJunctions.set(y * width + x)) {
+						// Someone else is walking from this junction
+						duplicates++;
+						return Path.NO_DIRECTION;
+					}
+					return directions;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Work unit of the parallel walkers: a junction and the directions which are
+ * still to be walked from it.
+ * 
+ * When whole paths are sent, the path goes from the start to the junction.
+ * Otherwise it's empty (it only gives the coordinates) and the junction is
+ * identified by the process which found it and its index in that process'
+ * table (see JunctionTable), so the path can be rebuilt at the end.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class Junction {
+	/**
+	 * Identifier of the junctions which aren't in any table (the start, and
+	 * every junction when whole paths are sent).
+	 */
+	public static final long NO_ID = -1;
+	private Path path;
+	private byte directions;
+	private long id;
+
+	/**
+	 * Creates a junction.
+	 * 
+	 * @param path
+	 *            Path until the junction.
+	 * @param directions
+	 *            Directions to walk from it.
+	 * @param id
+	 *            Identifier (NO_ID if it isn't in any table).
+	 */
+	public Junction(Path path, byte directions, long id) {
+		this.path = path;
+		this.directions = directions;
+		this.id = id;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public byte getDirections() {
+		return directions;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the X coord of the junction.
+	 * 
+	 * @return X coord.
+	 */
+	public int getX() {
+		return path.getCurrentX();
+	}
+
+	/**
+	 * Gets the Y coord of the junction.
+	 * 
+	 * @return Y coord.
+	 */
+	public int getY() {
+		return path.getCurrentY();
+	}
+
+	/**
+	 * Builds an identifier.
+	 * 
+	 * @param process
+	 *            Process which keeps the junction (less than 2^23).
+	 * @param index
+	 *            Index in its table.
+	 * @return Identifier.
+	 */
+	public static long id(int process, int index) {
+		return (((long) process) << 32) | (index & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Gets the process which keeps a junction.
+	 * 
+	 * @param id
+	 *            Identifier (not NO_ID).
+	 * @return Process ID.
+	 */
+	public static int owner(long id) {
+		return (int) (id >>> 32);
+	}
+
+	/**
+	 * Gets the index of a junction in the table of its owner.
+	 * 
+	 * @param id
+	 *            Identifier (not NO_ID).
+	 * @return Index.
+	 */
+	public static int index(long id) {
+		return (int) id;
+	}
+}
@@ -0,0 +1,95 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Predecessors of the junctions found by a process: for every one, the
+ * junction it was reached from (which may belong to another process) and the
+ * direction taken there. Entries are never removed, since stolen junctions
+ * can still point to them.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class JunctionTable {
+	private static final int INITIAL_SIZE = 1024;
+	private int me;
+	private long[] parents = new long[INITIAL_SIZE];
+	/**
+	 * Coordinates of the parents, x (bits 32-63) and y (bits 0-31).
+	 */
+	private long[] parentPoints = new long[INITIAL_SIZE];
+	private byte[] directions = new byte[INITIAL_SIZE];
+	private int size = 0;
+
+	/**
+	 * Creates an empty table.
+	 * 
+	 * @param me
+	 *            Process ID.
+	 */
+	JunctionTable(int me) {
+		this.me = me;
+	}
+
+	/**
+	 * Adds a junction.
+	 * 
+	 * @param parent
+	 *            Junction it was reached from.
+	 * @param direction
+	 *            Direction taken from the parent.
+	 * @return Identifier of the new junction.
+	 */
+	long add(Junction parent, byte direction) {
+		if (size == parents.length) {
+			parents = Arrays.copyOf(parents, size * 2);
+			parentPoints = Arrays.copyOf(parentPoints, size * 2);
+			directions = Arrays.copyOf(directions, size * 2);
+		}
+		parents[size] = parent.getId();
+		parentPoints[size] = (((long) parent.getX()) << 32)
+				| (parent.getY() & 0xFFFFFFFFL);
+		directions[size] = direction;
+		return Junction.id(me, size++);
+	}
+
+	/**
+	 * Walks back the predecessors of a junction while they belong to this
+	 * process.
+	 * 
+	 * @param id
+	 *            Identifier of the junction.
+	 * @return Steps to the junction, newest first: every one is a junction
+	 *         (with its identifier) and the direction taken from it. The
+	 *         identifier of the last one is NO_ID (the start) or a junction of
+	 *         another process. Empty if the junction doesn't belong to this
+	 *         process.
+	 */
+	List<Junction> trace(long id) {
+		List<Junction> steps = new ArrayList<Junction>();
+		while (id != Junction.NO_ID && Junction.owner(id) == me) {
+			int index = Junction.index(id);
+			Point point = new Point((int) (parentPoints[index] >>> 32),
+					(int) parentPoints[index]);
+			steps.add(new Junction(new Path(point), directions[index],
+					parents[index]));
+			id = parents[index];
+		}
+		return steps;
+	}
+
+	/**
+	 * Number of junctions.
+	 * 
+	 * @return Size of the table.
+	 */
+	int size() {
+		return size;
+	}
+}
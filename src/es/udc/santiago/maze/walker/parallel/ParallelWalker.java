@@ -1,117 +1,398 @@
 package es.udc.santiago.maze.walker.parallel;
 
-import java.awt.Point;
-import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Queue;
+import java.util.Random;
 
-import mpi.MPI;
+import es.udc.santiago.executionEnvironment.Communicator;
 import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.PendingRequests;
+import es.udc.santiago.executionEnvironment.Request;
+import es.udc.santiago.executionEnvironment.Status;
+import es.udc.santiago.executionEnvironment.WorkMessage;
 import es.udc.santiago.maze.Maze;
 import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
 import es.udc.santiago.maze.walker.Path;
 
 /**
+ * Son process. It keeps its own deque of junctions: it walks the newest one
+ * (depth first) and, when it runs out of work, it steals the oldest half of
+ * the junctions of another son. The master only starts the job and receives
+ * the result.
+ * 
+ * Junctions can be sent with the whole path from the start or, to keep
+ * messages small however deep the search goes, just with their coordinates
+ * and identifiers. Then every son keeps the predecessor of each junction it
+ * finds (see JunctionTable) and the master rebuilds the path at the end by
+ * asking for them.
+ * 
+ * Junctions are claimed in a visited set split between the sons (see
+ * VisitedSet), so each one is walked only once.
+ * 
+ * Communication never blocks the walk: messages are sent asynchronously (see
+ * PendingRequests), the receive of work requests is always posted and a
+ * steal is answered while the son goes on walking whatever arrives. A son
+ * only blocks when it has nothing to walk, until a message arrives. After a
+ * steal fails, it waits twice as long (up to MAX_STEAL_DELAY) before asking
+ * again, so idle sons don't keep the busy ones answering.
+ * 
+ * If there's no way to the end, the sons notice that all of them ran out of
+ * work (see TerminationDetector) and tell the master. The kill signal is
+ * polled with the rest of messages, so sons stop within a step of the walk.
+ * 
  * @author Santiago Munín González
  * 
  */
 public class ParallelWalker {
+	private static final long MIN_STEAL_DELAY = 50000;
+	private static final long MAX_STEAL_DELAY = 10000000;
+	private Communicator comm;
 	private int me;
+	private int nproc;
 	private Maze maze;
-	private Queue<Entry<Path, Byte>> pendingDirections = new LinkedList<Entry<Path, Byte>>();;
-	private List<Point> walkedPoints = new LinkedList<Point>();
-	private int newDirsSent = 0;
+	private Deque<Junction> pendingDirections = new LinkedList<Junction>();
+	private VisitedSet visited;
+	private Random random;
+	private boolean stopped = false;
+	private boolean paths;
+	private JunctionTable junctions;
+	private PendingRequests pending = new PendingRequests();
+	/**
+	 * Posted receive of the next work request.
+	 */
+	private Request workRequests;
+	/**
+	 * Posted receive of the kill signal.
+	 */
+	private Request stop;
+	private TerminationDetector termination;
+	/**
+	 * Son asked for work, NO_PROCESS if this son isn't stealing.
+	 */
+	private int victim = ParallelUtils.NO_PROCESS;
+	/**
+	 * Time to wait before the next steal (ns), 0 if the last one didn't
+	 * fail.
+	 */
+	private long stealDelay = 0;
+	/**
+	 * When the last steal failed (ns).
+	 */
+	private long stealFailed;
+	/**
+	 * <i>true</i> until the master deals the starting directions (only for
+	 * the sons which get some).
+	 */
+	private boolean waitingForWork;
+	private Metrics metrics = Metrics.DISABLED;
+	/**
+	 * When this son ran out of work (ns), 0 if it has work or metrics are
+	 * disabled.
+	 */
+	private long idleSince = 0;
 
-	public ParallelWalker(int me, Maze maze) {
-		this.me = me;
+	/**
+	 * Creates a walker which sends whole paths.
+	 * 
+	 * @param comm
+	 *            Communicator of the son.
+	 * @param maze
+	 *            Maze.
+	 */
+	public ParallelWalker(Communicator comm, Maze maze) {
+		this(comm, maze, true);
+	}
+
+	/**
+	 * Creates a walker.
+	 * 
+	 * @param comm
+	 *            Communicator of the son.
+	 * @param maze
+	 *            Maze.
+	 * @param paths
+	 *            <i>true</i> to send whole paths, <i>false</i> to send only
+	 *            junctions (all processes must agree).
+	 */
+	public ParallelWalker(Communicator comm, Maze maze, boolean paths) {
+		this.comm = comm;
+		this.me = comm.rank();
+		this.nproc = comm.size();
 		this.maze = maze;
+		this.random = new Random(me);
+		this.paths = paths;
+		this.junctions = new JunctionTable(me);
+		this.visited = new VisitedSet(comm, maze, pending);
+		this.termination = new TerminationDetector(comm, pending);
+		int startDirections = Integer.bitCount(maze.openDirections(
+				maze.getStart().x, maze.getStart().y, Path.NO_DIRECTION));
+		this.waitingForWork = me <= startDirections;
+	}
+
+	/**
+	 * Sets where this son reports the corridors it walks, the junctions
+	 * rejected by the visited set and the time without work.
+	 * 
+	 * @param metrics
+	 *            Metrics of the son.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+		visited.setMetrics(metrics);
 	}
 
 	/**
 	 * Performs the main job.
 	 */
 	public void doJob() {
-		Byte direction;
-		Path currentPath;
-		WalkResult wr;
-		while (true) {
-			Byte receivedDirections = ParallelUtils.receiveDirection(me,0);
-			if (receivedDirections == Path.NO_DIRECTION) {
-				ParallelUtils.log(me, "Kill signal received.");
-				return;
-			}
-			pendingDirections.add(new AbstractMap.SimpleEntry<Path, Byte>(
-					ParallelUtils.receivePath(me, 0), receivedDirections));
-			while (pendingDirections.size() > 0) {
-				Entry<Path, Byte> entry = pendingDirections.peek();
-				List<Byte> directions = MazeUtils.directionsByteToList(entry
-						.getValue());
-				while (directions.size() > 0) {
-					direction = directions.get(0);
-					directions.remove(0);
-					currentPath = entry.getKey().clone();
-					wr = walk(currentPath, direction);
-					currentPath = wr.path;
-					if (wr.found) {
-						ParallelUtils.sendResult(me, wr.path);
-						return;
+		stop = ParallelUtils.postStop(comm);
+		workRequests = ParallelUtils.postWorkRequest(comm);
+		boolean found = false;
+		while (!mustStop()) {
+			progress();
+			if (found) {
+				// The token stops here, otherwise it would wake this son up
+				// until the kill signal arrives
+				termination.poll(false);
+				waitForMessages(Long.MAX_VALUE);
+			} else if (pendingDirections.size() > 0) {
+				stopIdle();
+				found = walkNext();
+			} else {
+				startIdle();
+				// Buffered claims are this son's only work
+				visited.flush();
+				boolean idle = !waitingForWork && !visited.isWaiting();
+				if (termination.poll(idle)) {
+					pending.add(ParallelUtils.sendNoPath(comm));
+				}
+				long timeout = Long.MAX_VALUE;
+				if (idle && victim == ParallelUtils.NO_PROCESS) {
+					long left = stealDelay - (System.nanoTime() - stealFailed);
+					if (left > 0) {
+						timeout = left;
 					} else {
-						if (wr.newDirections.size() > 0) {
-							Point currentPoint = wr.path.getCurrentPoint();
-							if (!walkedPoints.contains(currentPoint)) {
-								walkedPoints.add(currentPoint);
-								/*if (newDirsSent > 10000) {*/
-								//	newDirsSent += wr.newDirections.size();
-								ParallelUtils.log(me, "Sending dirs");
-									ParallelUtils
-											.sendNewDirections(
-													me,
-													wr.path,
-													MazeUtils
-															.directionsListToByte(wr.newDirections));
-							/*	} else {
-									pendingDirections
-											.add(new AbstractMap.SimpleEntry<Path, Byte>(
-													wr.path,
-													MazeUtils
-															.directionsListToByte(wr.newDirections)));
-								}*/
-							}
-						}
+						steal();
 					}
 				}
-				pendingDirections.poll();
+				waitForMessages(timeout);
+			}
+		}
+		stopIdle();
+		workRequests.cancel();
+		pending.cancel();
+	}
+
+	/**
+	 * Blocks until the kill signal, a work request or any other message
+	 * arrives.
+	 * 
+	 * @param nanos
+	 *            Maximum time to wait (ns).
+	 */
+	private void waitForMessages(long nanos) {
+		comm.waitAny(new Request[] { stop, workRequests }, nanos);
+	}
+
+	private void startIdle() {
+		if (idleSince == 0 && metrics.isEnabled()) {
+			idleSince = System.nanoTime();
+		}
+	}
+
+	private void stopIdle() {
+		if (idleSince != 0) {
+			metrics.add(Metrics.IDLE_NANOS, System.nanoTime() - idleSince);
+			idleSince = 0;
+		}
+	}
+
+	/**
+	 * Makes progress with the communication (it doesn't block): answers work
+	 * requests and claims, and takes the stolen work if it arrived.
+	 */
+	private void progress() {
+		pending.progress();
+		serveWorkRequests();
+		visited.serve(pendingDirections);
+		if (victim != ParallelUtils.NO_PROCESS
+				&& ParallelUtils.workReplyArrived(comm, victim)) {
+			// Oldest first, so the newest one is walked next
+			List<Junction> work = ParallelUtils.receiveWork(comm, victim);
+			if (!work.isEmpty()) {
+				termination.received();
+				pendingDirections.addAll(work);
+				stealDelay = 0;
+			} else {
+				stealFailed = System.nanoTime();
+				stealDelay = (stealDelay == 0) ? MIN_STEAL_DELAY : Math.min(
+						stealDelay * 2, MAX_STEAL_DELAY);
+			}
+			victim = ParallelUtils.NO_PROCESS;
+		}
+	}
+
+	/**
+	 * Processes the messages from the master (starting directions and trace
+	 * requests) and checks the kill signal, which is forwarded to the
+	 * children of this son first.
+	 * 
+	 * @return <i>true</i> if the kill signal was received.
+	 */
+	private boolean mustStop() {
+		if (!stopped && stop.test() != null) {
+			ParallelUtils.forwardStop(comm);
+			ParallelUtils.log(me, "Kill signal received.");
+			stopped = true;
+		}
+		while (!stopped) {
+			WorkMessage message = ParallelUtils.receiveFromMaster(comm);
+			if (message == null) {
+				break;
+			}
+			if (message.getOpcode() == WorkMessage.WORK) {
+				pendingDirections.addAll(message.getTasks());
+				waitingForWork = false;
+			} else if (message.getOpcode() == WorkMessage.TRACE) {
+				pending.add(ParallelUtils.sendTrace(comm,
+						junctions.trace(message.getTasks().get(0).getId()), false));
 			}
-			ParallelUtils.sendWall(me);
 		}
+		return stopped;
 	}
+
+	/**
+	 * Walks one direction of the newest junction, and sends the result if it
+	 * reaches the end.
+	 * 
+	 * @return <i>true</i> if the end was found.
+	 */
+	private boolean walkNext() {
+		metrics.queueDepth(pendingDirections.size());
+		Junction junction = pendingDirections.pollLast();
+		int directions = junction.getDirections();
+		byte direction = (byte) Integer.lowestOneBit(directions);
+		if (directions != direction) {
+			// The rest of directions can still be stolen
+			pendingDirections.addLast(new Junction(junction.getPath(),
+					(byte) (directions & ~direction), junction.getId()));
+		}
+		WalkResult wr = walk(maze, junction.getPath().clone(), direction);
+		if (metrics.isEnabled()) {
+			// Corridors end in the end, a junction or a dead end
+			boolean junctionFound = wr.newDirections != Path.NO_DIRECTION;
+			boolean deadEnd = !junctionFound && !wr.found;
+			metrics.addWalk(wr.path.size() - junction.getPath().size(),
+					junctionFound ? 1 : 0, 0, deadEnd ? 1 : 0);
+		}
+		if (wr.found) {
+			sendResult(junction, direction, wr.path);
+			return true;
+		}
+		if (wr.newDirections != Path.NO_DIRECTION) {
+			if (paths) {
+				visited.claim(new Junction(wr.path, wr.newDirections,
+						Junction.NO_ID), pendingDirections);
+			} else {
+				// The corridor is forgotten, the table keeps the way back
+				visited.claim(new Junction(new Path(wr.path.getCurrentPoint()),
+						wr.newDirections, junctions.add(junction, direction)),
+						pendingDirections);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sends the path to the end (or its last junctions, if only junctions are
+	 * sent).
+	 * 
+	 * @param junction
+	 *            Last junction.
+	 * @param direction
+	 *            Direction taken from it.
+	 * @param path
+	 *            Path walked from the junction.
+	 */
+	private void sendResult(Junction junction, byte direction, Path path) {
+		if (paths) {
+			pending.add(ParallelUtils.sendResult(comm, path));
+			return;
+		}
+		List<Junction> steps = new ArrayList<Junction>();
+		steps.add(new Junction(junction.getPath(), direction, junction.getId()));
+		steps.addAll(junctions.trace(junction.getId()));
+		pending.add(ParallelUtils.sendResultTrace(comm, steps, false));
+	}
+
+	/**
+	 * Answers all pending work requests with the oldest half of the
+	 * junctions (in a single message).
+	 */
+	private void serveWorkRequests() {
+		Status status = workRequests.test();
+		while (status != null) {
+			int count = (pendingDirections.size() + 1) / 2;
+			List<Junction> tasks = new ArrayList<Junction>(count);
+			for (int i = 0; i < count; i++) {
+				tasks.add(pendingDirections.pollFirst());
+			}
+			if (count > 0) {
+				termination.sent();
+			}
+			pending.add(ParallelUtils.sendWork(comm, status.getSource(), tasks,
+					paths));
+			workRequests = ParallelUtils.postWorkRequest(comm);
+			status = workRequests.test();
+		}
+	}
+
+	/**
+	 * Asks a random son for work (the answer is taken by progress()), if
+	 * there is any other.
+	 */
+	private void steal() {
+		if (nproc <= 2) {
+			return;
+		}
+		victim = 1 + random.nextInt(nproc - 2);
+		if (victim >= me) {
+			victim++;
+		}
+		pending.add(ParallelUtils.requestWork(comm, victim));
+	}
+
 	/**
 	 * Walk through the maze.
+	 * @param maze Maze.
 	 * @param path Walked path until current point.
 	 * @param direction Default direction
 	 * @return A WalkResult
 	 */
-	private WalkResult walk(Path path, byte direction) {
-		List<Byte> directions = new LinkedList<Byte>();
-		Point currentPoint = path.getCurrentPoint();
+	static WalkResult walk(Maze maze, Path path, byte direction) {
+		int directions;
+		int x = path.getCurrentX();
+		int y = path.getCurrentY();
+		int endX = maze.getEnd().x;
+		int endY = maze.getEnd().y;
 		while (true) {
-			currentPoint = MazeUtils.getNextPoint(currentPoint, direction);
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
 			path.addMovement(direction);
-			if (currentPoint.equals(maze.getEnd())) {
-				return new WalkResult(path, null, true);
+			if (x == endX && y == endY) {
+				return new WalkResult(path, Path.NO_DIRECTION, true);
 			}
-			directions = MazeUtils.directionsByteToList(maze
-					.findPossibleDirections(currentPoint, direction));
-			if (directions.size() == 0) {
-				return new WalkResult(path, directions, false);
+			directions = maze.openDirections(x, y, direction);
+			if (directions == Path.NO_DIRECTION) {
+				return new WalkResult(path, Path.NO_DIRECTION, false);
 			}
-			if (directions.size() == 1) {
-				direction = directions.get(0);
-			}
-			if (directions.size() > 1) {
-				return new WalkResult(path, directions, false);
+			if (Integer.bitCount(directions) == 1) {
+				direction = (byte) directions;
+			} else {
+				return new WalkResult(path, (byte) directions, false);
 			}
 		}
 	}
@@ -119,14 +400,14 @@ public class ParallelWalker {
 /**
  * Represents the result of a walk
  * @author Santiago Munín González
- *
+ * 
  */
 class WalkResult {
 	protected Path path;
-	protected List<Byte> newDirections;
+	protected byte newDirections;
 	protected boolean found;
 
-	public WalkResult(Path path, List<Byte> newDirections, boolean found) {
+	public WalkResult(Path path, byte newDirections, boolean found) {
 		this.path = path;
 		this.newDirections = newDirections;
 		this.found = found;
@@ -1,20 +1,22 @@
 package es.udc.santiago.maze.walker.parallel;
 
-import java.awt.Point;
-import java.util.AbstractMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Queue;
 
-import mpi.MPI;
+import es.udc.santiago.executionEnvironment.Communicator;
 import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.WorkMessage;
 import es.udc.santiago.maze.Maze;
 import es.udc.santiago.maze.utils.MazeUtils;
 import es.udc.santiago.maze.walker.Path;
 
 /**
- * Manages all the parallel process, distributing directions between processes.
+ * Starts the parallel job and waits for the result. Sons balance the work
+ * between them (see ParallelWalker), so the master doesn't take part in it.
+ * 
+ * If only junctions are sent, the result is the last junctions of the path:
+ * the master asks their owners for the predecessors until it gets back to
+ * the start, and then walks the corridors between them again.
  * 
  * @author Santiago Munín González
  * 
@@ -23,162 +25,171 @@ public class ParallelWalkingManager {
 	/**
 	 * Path found event code.
 	 */
-	public static final byte PATH_FOUND = 0;
-	/**
-	 * New directions event code.
-	 */
-	public static final byte NEW_DIRECTIONS = 1;
-	/**
-	 * Wall found event code.
-	 */
-	public static final byte WALL_FOUND = 2;
-	public static final int TAG_DIRECTIONS = 0;
-	/**
-	 * Stores the processes which are waiting for work.
-	 */
-	private Queue<Integer> freeSons = new LinkedList<Integer>();
-	private Queue<Entry<Path, Byte>> pendingDirections = new LinkedList<Entry<Path, Byte>>();
-	private List<Point> walkedPoints = new LinkedList<Point>();
-	private int nproc;
+	public static final byte PATH_FOUND = WorkMessage.PATH_FOUND;
+	private Communicator comm;
 	private Maze maze;
-	private long startTime;
 	private boolean found = false;
+	private Path result;
+	private boolean paths = true;
+	/**
+	 * Junctions of the path (and directions taken from them), newest first.
+	 */
+	private List<Junction> steps;
 
 	/**
 	 * Creates a manager which will auto-generate the maze to be solved.
 	 * 
-	 * @param nproc
+	 * @param comm
 	 * @param mazeHeight
 	 * @param mazeWidth
 	 */
-	public ParallelWalkingManager(int nproc, int mazeHeight, int mazeWidth) {
-		this.nproc = nproc;
+	public ParallelWalkingManager(Communicator comm, int mazeHeight,
+			int mazeWidth) {
+		this.comm = comm;
 		this.maze = new Maze(mazeHeight, mazeWidth, false);
 	}
 
 	/**
 	 * Creates a manager with the given maze.
 	 * 
-	 * @param nproc
-	 *            Number of processes.
+	 * @param comm
+	 *            Communicator of the master.
 	 * @param maze
 	 *            Maze.
 	 */
-	public ParallelWalkingManager(int nproc, Maze maze) {
-		this.nproc = nproc;
+	public ParallelWalkingManager(Communicator comm, Maze maze) {
+		this.comm = comm;
 		this.maze = maze;
 	}
 
 	/**
-	 * Performs the initial steps.
+	 * Creates a manager with the given maze.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param maze
+	 *            Maze.
+	 * @param paths
+	 *            <i>true</i> if sons send whole paths, <i>false</i> if they
+	 *            send only junctions.
+	 */
+	public ParallelWalkingManager(Communicator comm, Maze maze, boolean paths) {
+		this(comm, maze);
+		this.paths = paths;
+	}
+
+	/**
+	 * Performs the initial steps: the starting directions are dealt between
+	 * the first sons.
 	 */
 	public void prepareJob() {
-		// All sons are free at the beginning.
-		for (int i = 1; i < nproc; i++) {
-			this.freeSons.add(i);
-		}
-		// ParallelUtils.sendMaze(nproc, maze);
-		List<Byte> directionsAsByte = new LinkedList<Byte>();
-		for (Byte byte1 : MazeUtils.directionsByteToList(this.maze
-				.findPossibleDirections(maze.getStart()))) {
-			List<Byte> tempDirectionsList = new LinkedList<Byte>();
-			tempDirectionsList.add(byte1);
-			Byte directionsByte = MazeUtils
-					.directionsListToByte(tempDirectionsList);
-			directionsAsByte.add(directionsByte);
-		}
-		ParallelUtils.distributeDirections(nproc, directionsAsByte,
+		List<Byte> directions = MazeUtils.directionsByteToList(this.maze
+				.findPossibleDirections(maze.getStart()));
+		ParallelUtils.distributeDirections(comm, directions,
 				this.maze.getStart());
-		for (int i = 0; i < directionsAsByte.size(); i++) {
-			this.freeSons.poll();
-		}
 	}
 
 	/**
 	 * Process the received operation.
 	 * 
-	 * @param operationData
-	 *            Received bytes.
+	 * @param message
+	 *            Received message.
 	 */
-	private void processOperation(Byte[] operationData) {
-		switch (operationData[0]) {
+	private void processOperation(WorkMessage message) {
+		switch (message.getOpcode()) {
 		case PATH_FOUND:
-			pathFound(operationData[1]);
+			if (paths) {
+				pathFound(message.getTasks().get(0).getPath());
+			} else if (steps == null) {
+				// Other results are ignored while the first one is rebuilt
+				steps = new ArrayList<Junction>();
+				traceReceived(message.getTasks());
+			}
 			break;
-		case WALL_FOUND:
-			wallFound(operationData[1]);
+		case WorkMessage.TRACE:
+			traceReceived(message.getTasks());
 			break;
-		case NEW_DIRECTIONS:
-			newDirections(operationData[1], operationData[2]);
+		case WorkMessage.NO_PATH:
+			noPath();
 			break;
 		}
 	}
 
 	/**
-	 * Path found event.
+	 * Adds some steps of the path and asks for the next ones (or rebuilds the
+	 * path if the start was reached).
 	 * 
-	 * @param son
-	 *            Son process ID.
+	 * @param received
+	 *            Steps, newest first.
 	 */
-	private void pathFound(Byte son) {
-		this.found = true;
-		Path path = ParallelUtils.receivePath(0, son);
-		MazeUtils.printResult(maze, path, startTime);
-		ParallelUtils.tellSonsToStop(nproc);
+	private void traceReceived(List<Junction> received) {
+		steps.addAll(received);
+		Junction last = steps.get(steps.size() - 1);
+		if (last.getId() == Junction.NO_ID) {
+			if (ParallelUtils.LOG) {
+				ParallelUtils.log(0, "Path rebuilt from " + steps.size()
+						+ " junctions.");
+			}
+			pathFound(rebuildPath());
+		} else {
+			ParallelUtils.requestTrace(comm, last);
+		}
 	}
 
 	/**
-	 * Wall found event
+	 * Walks the corridors between the junctions of the path.
 	 * 
-	 * @param son
-	 *            Son process ID.
+	 * @return Path from start to end.
 	 */
-	private void wallFound(Byte son) {
-		this.freeSons.add((int) son);
+	private Path rebuildPath() {
+		Path path = new Path(maze.getStart());
+		for (int i = steps.size() - 1; i >= 0; i--) {
+			Junction step = steps.get(i);
+			if (path.getCurrentX() != step.getX()
+					|| path.getCurrentY() != step.getY()) {
+				throw new IllegalStateException("Broken path at junction ("
+						+ step.getX() + ", " + step.getY() + ")");
+			}
+			path = ParallelWalker.walk(maze, path, step.getDirections()).path;
+		}
+		if (!path.getCurrentPoint().equals(maze.getEnd())) {
+			throw new IllegalStateException("Rebuilt path doesn't reach the end");
+		}
+		return path;
 	}
 
 	/**
-	 * New directions event
+	 * Path found event.
 	 * 
-	 * @param son
-	 *            Son process ID.
-	 * @param directions
-	 *            Byte of directions.
+	 * @param path
+	 *            Path from start to end.
 	 */
-	private void newDirections(Byte son, Byte directions) {
-		Path p = ParallelUtils.receivePath(0, son);
-		Entry<Path, Byte> entry = new AbstractMap.SimpleEntry<Path, Byte>(p,
-				directions);
-		Point current = p.getCurrentPoint();
-		if (!walkedPoints.contains(current)) {
-			this.pendingDirections.add(entry);
-			this.walkedPoints.add(current);
-		}
+	private void pathFound(Path path) {
+		this.found = true;
+		this.result = path;
+		ParallelUtils.tellSonsToStop(comm);
 	}
 
 	/**
-	 * Sends pending directions to free sons.
+	 * All sons ran out of work without reaching the end.
 	 */
-	private void distributePendingDirections() {
-		while (pendingDirections.size() > 0 && freeSons.size() > 0) {
-			Entry<Path, Byte> entry = pendingDirections.poll();
-			ParallelUtils.sendDirection(freeSons.poll(), entry.getValue(),
-					entry.getKey());
-		}
+	private void noPath() {
+		this.found = true;
+		ParallelUtils.tellSonsToStop(comm);
 	}
 
 	/**
-	 * Performs the main job.
+	 * Performs the main job. It returns when the path is found or when the
+	 * sons find out that there isn't any (the sons are stopped in both
+	 * cases).
+	 * 
+	 * @return Path from start to end, <i>null</i> if there isn't any.
 	 */
-	public void doJob() {
-		startTime = System.currentTimeMillis();
+	public Path doJob() {
 		prepareJob();
-		Byte[] data = new Byte[3];
 		while (!found) {
-			distributePendingDirections();
-			MPI.COMM_WORLD.Recv(data, 0, 3, MPI.BYTE, MPI.ANY_SOURCE,
-					ParallelUtils.TAG_COMMUNICATION);
-			processOperation(data);
+			processOperation(ParallelUtils.receiveFromSons(comm));
 		}
+		return result;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.PendingRequests;
+
+/**
+ * Detects that all sons ran out of work without finding the end (Safra's
+ * algorithm). A token goes around the ring of sons, starting at son 1, and
+ * adds the messages every son sent minus the ones it received. Only messages
+ * which can give work to an idle son are counted; a son which receives one
+ * turns black, and so does the token when it leaves it.
+ * 
+ * Sons only pass the token while they are idle. When it gets back to son 1
+ * white, with son 1 white and a total of zero, no work is left anywhere (nor
+ * on its way); otherwise son 1 starts another round.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class TerminationDetector {
+	private Communicator comm;
+	private int me;
+	private int nproc;
+	private PendingRequests pending;
+	/**
+	 * Counted messages sent minus counted messages received.
+	 */
+	private long count = 0;
+	private boolean black = false;
+	/**
+	 * Token held by this son, <i>null</i> if it doesn't have it.
+	 */
+	private long[] token;
+	/**
+	 * <i>true</i> while the token of son 1 is going around.
+	 */
+	private boolean probing = false;
+	private boolean terminated = false;
+
+	/**
+	 * Creates the detector of a son.
+	 * 
+	 * @param comm
+	 *            Communicator of the son.
+	 * @param pending
+	 *            Sends of the son not completed yet (tokens are added).
+	 */
+	TerminationDetector(Communicator comm, PendingRequests pending) {
+		this.comm = comm;
+		this.me = comm.rank();
+		this.nproc = comm.size();
+		this.pending = pending;
+	}
+
+	/**
+	 * A message which gives work was sent.
+	 */
+	void sent() {
+		count++;
+	}
+
+	/**
+	 * A message which gives work was received.
+	 */
+	void received() {
+		count--;
+		black = true;
+	}
+
+	/**
+	 * Receives and passes the token (it doesn't block).
+	 * 
+	 * @param idle
+	 *            <i>true</i> if this son has no work and isn't waiting for
+	 *            any answer which could bring some.
+	 * @return <i>true</i> once (only on son 1), when all sons are idle.
+	 */
+	boolean poll(boolean idle) {
+		if (terminated) {
+			return false;
+		}
+		if (token == null) {
+			token = ParallelUtils.receiveToken(comm);
+		}
+		if (!idle) {
+			return false;
+		}
+		if (nproc == 2) {
+			// A single son, nothing to count
+			terminated = true;
+			return true;
+		}
+		if (me != 1) {
+			if (token != null) {
+				pending.add(ParallelUtils.sendToken(comm, token[1] + count,
+						token[2] != 0 || black));
+				token = null;
+				black = false;
+			}
+			return false;
+		}
+		if (token != null) {
+			if (token[2] == 0 && !black && token[1] + count == 0) {
+				terminated = true;
+				return true;
+			}
+			token = null;
+			probing = false;
+		}
+		if (!probing) {
+			probing = true;
+			black = false;
+			pending.add(ParallelUtils.sendToken(comm, 0, false));
+		}
+		return false;
+	}
+}
@@ -0,0 +1,148 @@
+package es.udc.santiago.maze.walker.parallel;
+
+/**
+ * Splits a maze in a grid of rectangular tiles, one per son. The grid has as
+ * many columns and rows as it takes to keep tiles close to squares, so their
+ * borders (and the cells sent between sons) are as short as possible.
+ * 
+ * Tiles are numbered by rows and tile <i>i</i> belongs to son <i>i + 1</i>.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class TileLayout {
+	private int width;
+	private int height;
+	private int columns;
+	private int rows;
+
+	/**
+	 * Creates a layout.
+	 * 
+	 * @param width
+	 *            Width of the maze.
+	 * @param height
+	 *            Height of the maze.
+	 * @param tiles
+	 *            Number of tiles.
+	 */
+	public TileLayout(int width, int height, int tiles) {
+		this.width = width;
+		this.height = height;
+		// The divisor which gives the squarest tiles
+		double best = Double.MAX_VALUE;
+		for (int c = 1; c <= tiles; c++) {
+			if (tiles % c != 0 || c > width || tiles / c > height) {
+				continue;
+			}
+			double ratio = ((double) width / c)
+					/ ((double) height / (tiles / c));
+			double score = Math.abs(Math.log(ratio));
+			if (score < best) {
+				best = score;
+				columns = c;
+				rows = tiles / c;
+			}
+		}
+		if (columns == 0) {
+			throw new IllegalArgumentException("A " + width + "x" + height
+					+ " maze can't be split in " + tiles + " tiles");
+		}
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Number of tiles.
+	 * 
+	 * @return columns * rows.
+	 */
+	public int size() {
+		return columns * rows;
+	}
+
+	/**
+	 * Gets the X coord where a column of tiles starts.
+	 * 
+	 * @param column
+	 *            Column (<i>columns</i> gives the width of the maze).
+	 * @return X coord.
+	 */
+	public int columnStart(int column) {
+		return (int) ((long) column * width / columns);
+	}
+
+	/**
+	 * Gets the Y coord where a row of tiles starts.
+	 * 
+	 * @param row
+	 *            Row (<i>rows</i> gives the height of the maze).
+	 * @return Y coord.
+	 */
+	public int rowStart(int row) {
+		return (int) ((long) row * height / rows);
+	}
+
+	public int getLeft(int tile) {
+		return columnStart(tile % columns);
+	}
+
+	public int getTop(int tile) {
+		return rowStart(tile / columns);
+	}
+
+	public int getWidth(int tile) {
+		return columnStart(tile % columns + 1) - getLeft(tile);
+	}
+
+	public int getHeight(int tile) {
+		return rowStart(tile / columns + 1) - getTop(tile);
+	}
+
+	/**
+	 * Gets the tile of a cell.
+	 * 
+	 * @param x
+	 *            X coord.
+	 * @param y
+	 *            Y coord.
+	 * @return Tile.
+	 */
+	public int tileOf(int x, int y) {
+		// Guess and fix the rounding of columnStart() and rowStart()
+		int column = (int) ((long) x * columns / width);
+		int row = (int) ((long) y * rows / height);
+		while (columnStart(column + 1) <= x) {
+			column++;
+		}
+		while (columnStart(column) > x) {
+			column--;
+		}
+		while (rowStart(row + 1) <= y) {
+			row++;
+		}
+		while (rowStart(row) > y) {
+			row--;
+		}
+		return row * columns + column;
+	}
+
+	/**
+	 * Gets the son which owns a cell.
+	 * 
+	 * @param x
+	 *            X coord.
+	 * @param y
+	 *            Y coord.
+	 * @return Process ID.
+	 */
+	public int owner(int x, int y) {
+		return 1 + tileOf(x, y);
+	}
+}
@@ -0,0 +1,455 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.PendingRequests;
+import es.udc.santiago.executionEnvironment.Request;
+import es.udc.santiago.executionEnvironment.Status;
+import es.udc.santiago.executionEnvironment.WorkMessage;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Son process of the domain decomposition mode. It only gets its own tile of
+ * the maze (see TileLayout) plus the walls around it, so its memory is
+ * proportional to the tile.
+ * 
+ * It floods its tile from the start (or from the cells its neighbors reach)
+ * and keeps, for every visited cell, the direction it was reached from. Cells
+ * reached across the border are sent to the neighbor in batches, once per
+ * flooding round. When the end is found, the master asks the sons for the
+ * way back through their tiles (see TileWalkingManager).
+ * 
+ * Halo messages are the only way a son gets more work, so they are counted to
+ * detect that the end can't be reached (see TerminationDetector). Their
+ * receive is always posted, so a son with nothing to flood blocks until a
+ * message arrives.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class TileWalker {
+	/**
+	 * Cells flooded between two checks of the incoming messages.
+	 */
+	static final int FLOOD_STEPS = 4096;
+	/**
+	 * Cells sent together to a neighbor.
+	 */
+	static final int HALO_BATCH = 256;
+	private static final int INITIAL_STACK_SIZE = 1024;
+	private static final byte[] DIRECTIONS = { Path.UP, Path.RIGHT,
+			Path.DOWN, Path.LEFT };
+	private Communicator comm;
+	private int me;
+	private int nproc;
+	private TileLayout layout;
+	private int mazeWidth;
+	private int mazeHeight;
+	private Point start;
+	private Point end;
+	private int left;
+	private int top;
+	private int width;
+	private int height;
+	/**
+	 * Walls of the tile, with an extra column on the left and an extra row on
+	 * the top.
+	 */
+	private PackedWalls walls;
+	private long[] visited;
+	/**
+	 * Direction back to the previous cell, 2 bits per cell.
+	 */
+	private long[] parents;
+	private int[] stack = new int[INITIAL_STACK_SIZE];
+	private int size = 0;
+	/**
+	 * Cells reached across every border (by direction code).
+	 */
+	private long[][] halo = new long[DIRECTIONS.length][HALO_BATCH];
+	private int[] haloSize = new int[DIRECTIONS.length];
+	private boolean found = false;
+	private boolean stopped = false;
+	private PendingRequests pending = new PendingRequests();
+	/**
+	 * Posted receive of the kill signal.
+	 */
+	private Request stop;
+	/**
+	 * Posted receive of the next halo batch.
+	 */
+	private Request halos;
+	private long[] haloBuffer = new long[HALO_BATCH + 1];
+	private TerminationDetector termination;
+	private Metrics metrics = Metrics.DISABLED;
+	/**
+	 * When the stack got empty (ns), 0 if there are cells to flood or
+	 * metrics are disabled.
+	 */
+	private long idleSince = 0;
+
+	/**
+	 * Creates a son.
+	 * 
+	 * @param comm
+	 *            Communicator of the son.
+	 */
+	public TileWalker(Communicator comm) {
+		this.comm = comm;
+		this.me = comm.rank();
+		this.nproc = comm.size();
+		this.termination = new TerminationDetector(comm, pending);
+	}
+
+	/**
+	 * Sets where this son reports the cells it floods (a cell reached from
+	 * two sides is a duplicate) and the time with nothing to flood.
+	 * 
+	 * @param metrics
+	 *            Metrics of the son.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Performs the main job.
+	 */
+	public void doJob() {
+		stop = ParallelUtils.postStop(comm);
+		halos = ParallelUtils.postHalo(comm, haloBuffer);
+		if (!receiveTile()) {
+			// The master couldn't read the maze, the rest of sons still
+			// need the kill signal
+			waitForStop();
+			halos.cancel();
+			return;
+		}
+		if (owns(start.x, start.y)) {
+			visit(start.x, start.y, Path.NO_DIRECTION);
+		}
+		while (!mustStop()) {
+			pending.progress();
+			receiveHalo();
+			if (size > 0) {
+				stopIdle();
+				flood();
+				sendHalo();
+				metrics.queueDepth(size);
+			}
+			if (found) {
+				List<Junction> steps = new ArrayList<Junction>(1);
+				steps.add(trace(end.x, end.y));
+				pending.add(ParallelUtils.sendResultTrace(comm, steps, true));
+				waitForStop();
+				break;
+			}
+			if (size == 0) {
+				startIdle();
+				if (termination.poll(true)) {
+					pending.add(ParallelUtils.sendNoPath(comm));
+				}
+				waitForMessages();
+			}
+		}
+		stopIdle();
+		halos.cancel();
+		pending.cancel();
+	}
+
+	private void startIdle() {
+		if (idleSince == 0 && metrics.isEnabled()) {
+			idleSince = System.nanoTime();
+		}
+	}
+
+	private void stopIdle() {
+		if (idleSince != 0) {
+			metrics.add(Metrics.IDLE_NANOS, System.nanoTime() - idleSince);
+			idleSince = 0;
+		}
+	}
+
+	/**
+	 * Receives the tile of this son from the master.
+	 * 
+	 * @return <i>false</i> if the master couldn't read the maze.
+	 */
+	private boolean receiveTile() {
+		long[] header = new long[ParallelUtils.TILE_HEADER_SIZE];
+		walls = ParallelUtils.receiveTile(comm, header);
+		if (walls == null) {
+			return false;
+		}
+		mazeWidth = (int) header[0];
+		mazeHeight = (int) header[1];
+		start = new Point((int) header[2], (int) header[3]);
+		end = new Point((int) header[4], (int) header[5]);
+		layout = new TileLayout(mazeWidth, mazeHeight, nproc - 1);
+		left = layout.getLeft(me - 1);
+		top = layout.getTop(me - 1);
+		width = layout.getWidth(me - 1);
+		height = layout.getHeight(me - 1);
+		visited = new long[(int) (((long) width * height + 63) >>> 6)];
+		parents = new long[(int) (((long) width * height * 2 + 63) >>> 6)];
+		return true;
+	}
+
+	/**
+	 * Processes the messages from the master (answering trace requests) and
+	 * checks the kill signal, which is forwarded to the children of this son
+	 * first.
+	 * 
+	 * @return <i>true</i> if the kill signal was received.
+	 */
+	private boolean mustStop() {
+		if (!stopped && stop.test() != null) {
+			ParallelUtils.forwardStop(comm);
+			ParallelUtils.log(me, "Kill signal received.");
+			stopped = true;
+		}
+		while (!stopped) {
+			WorkMessage message = ParallelUtils.receiveFromMaster(comm);
+			if (message == null) {
+				break;
+			}
+			if (message.getOpcode() == WorkMessage.TRACE) {
+				Point cell = message.getTasks().get(0).getPath().getStart();
+				List<Junction> steps = new ArrayList<Junction>(1);
+				steps.add(trace(cell.x, cell.y));
+				pending.add(ParallelUtils.sendTrace(comm, steps, true));
+			}
+		}
+		return stopped;
+	}
+
+	/**
+	 * Waits until the master sends the kill signal.
+	 */
+	private void waitForStop() {
+		while (!mustStop()) {
+			// Neighbors may still be flooding, and the token stops here
+			while (halos.test() != null) {
+				halos = ParallelUtils.postHalo(comm, haloBuffer);
+			}
+			termination.poll(false);
+			pending.progress();
+			waitForMessages();
+		}
+	}
+
+	/**
+	 * Blocks until the kill signal, a halo batch or any other message
+	 * arrives.
+	 */
+	private void waitForMessages() {
+		comm.waitAny(new Request[] { stop, halos }, Long.MAX_VALUE);
+	}
+
+	private boolean owns(int x, int y) {
+		return x >= left && x < left + width && y >= top && y < top + height;
+	}
+
+	private int cell(int x, int y) {
+		return (y - top) * width + (x - left);
+	}
+
+	private boolean isVisited(int cell) {
+		return (visited[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	private int parent(int cell) {
+		long bit = (long) cell << 1;
+		int code = (int) (parents[(int) (bit >>> 6)] >>> (bit & 63)) & 0x3;
+		return 1 << code;
+	}
+
+	/**
+	 * Marks a cell of the tile and adds it to the stack.
+	 * 
+	 * @param back
+	 *            Direction to the previous cell, NO_DIRECTION for the start.
+	 */
+	private void visit(int x, int y, int back) {
+		int cell = cell(x, y);
+		visited[cell >>> 6] |= 1L << cell;
+		if (back != Path.NO_DIRECTION) {
+			long bit = (long) cell << 1;
+			parents[(int) (bit >>> 6)] |= ((long) Integer
+					.numberOfTrailingZeros(back)) << (bit & 63);
+		}
+		if (x == end.x && y == end.y) {
+			found = true;
+		}
+		if (size == stack.length) {
+			stack = Arrays.copyOf(stack, size * 2);
+		}
+		stack[size++] = cell;
+	}
+
+	/**
+	 * Open directions of a cell of the tile.
+	 */
+	private int openDirections(int x, int y) {
+		int lx = x - left + 1;
+		int ly = y - top + 1;
+		int result = Path.NO_DIRECTION;
+		if (y > 0 && !walls.hasBottomWall(lx, ly - 1)) {
+			result |= Path.UP;
+		}
+		if (x < mazeWidth - 1 && !walls.hasRightWall(lx, ly)) {
+			result |= Path.RIGHT;
+		}
+		if (y < mazeHeight - 1 && !walls.hasBottomWall(lx, ly)) {
+			result |= Path.DOWN;
+		}
+		if (x > 0 && !walls.hasRightWall(lx - 1, ly)) {
+			result |= Path.LEFT;
+		}
+		return result;
+	}
+
+	private static int opposite(int direction) {
+		return (direction << 2 | direction >>> 2) & 0xF;
+	}
+
+	/**
+	 * Floods some cells of the stack.
+	 */
+	private void flood() {
+		int expanded = 0;
+		int junctions = 0;
+		int duplicates = 0;
+		int deadEnds = 0;
+		for (int i = 0; i < FLOOD_STEPS && size > 0 && !found; i++) {
+			int cell = stack[--size];
+			int x = left + cell % width;
+			int y = top + cell / width;
+			int directions = openDirections(x, y);
+			if (x != start.x || y != start.y) {
+				directions &= ~parent(cell);
+			}
+			expanded++;
+			if (directions == Path.NO_DIRECTION) {
+				deadEnds++;
+			} else if (Integer.bitCount(directions) > 1) {
+				junctions++;
+			}
+			for (int d = 0; d < DIRECTIONS.length; d++) {
+				int direction = DIRECTIONS[d];
+				if ((directions & direction) == 0) {
+					continue;
+				}
+				int nx = MazeUtils.nextX(x, direction);
+				int ny = MazeUtils.nextY(y, direction);
+				if (!owns(nx, ny)) {
+					addToHalo(d, nx, ny);
+				} else if (!isVisited(cell(nx, ny))) {
+					visit(nx, ny, opposite(direction));
+				} else {
+					duplicates++;
+				}
+			}
+		}
+		metrics.addWalk(expanded, junctions, duplicates, deadEnds);
+	}
+
+	/**
+	 * Buffers a cell reached across a border.
+	 * 
+	 * @param d
+	 *            Code of the direction taken.
+	 */
+	private void addToHalo(int d, int x, int y) {
+		halo[d][haloSize[d]++] = (((long) x) << 32) | (((long) y) << 2) | d;
+		if (haloSize[d] == HALO_BATCH) {
+			sendHalo(d);
+		}
+	}
+
+	/**
+	 * Sends every buffered cell.
+	 */
+	private void sendHalo() {
+		for (int d = 0; d < DIRECTIONS.length; d++) {
+			if (haloSize[d] > 0) {
+				sendHalo(d);
+			}
+		}
+	}
+
+	private void sendHalo(int d) {
+		long[] cells = halo[d];
+		int x = (int) (cells[0] >>> 32);
+		int y = (int) ((cells[0] & 0xFFFFFFFFL) >>> 2);
+		pending.add(ParallelUtils.sendHalo(comm, layout.owner(x, y), cells,
+				haloSize[d]));
+		termination.sent();
+		haloSize[d] = 0;
+	}
+
+	/**
+	 * Adds the cells reached by the neighbors.
+	 */
+	private void receiveHalo() {
+		Status status = halos.test();
+		while (status != null) {
+			termination.received();
+			long[] cells = haloBuffer;
+			for (int i = 1; i < status.getCount() && !found; i++) {
+				int x = (int) (cells[i] >>> 32);
+				int y = (int) ((cells[i] & 0xFFFFFFFFL) >>> 2);
+				int direction = DIRECTIONS[(int) (cells[i] & 0x3)];
+				if (!isVisited(cell(x, y))) {
+					visit(x, y, opposite(direction));
+				} else {
+					metrics.add(Metrics.DUPLICATE_EXPANSIONS, 1);
+				}
+			}
+			halos = ParallelUtils.postHalo(comm, haloBuffer);
+			status = halos.test();
+		}
+	}
+
+	/**
+	 * Walks back from a visited cell until the start or the border of the
+	 * tile.
+	 * 
+	 * @return The path from the first cell of the tile to the given one, and
+	 *         the direction from that first cell back to the neighbor
+	 *         (NO_DIRECTION if it's the start).
+	 */
+	private Junction trace(int x, int y) {
+		byte[] movements = new byte[INITIAL_STACK_SIZE];
+		int count = 0;
+		byte back = Path.NO_DIRECTION;
+		while (x != start.x || y != start.y) {
+			back = (byte) parent(cell(x, y));
+			int px = MazeUtils.nextX(x, back);
+			int py = MazeUtils.nextY(y, back);
+			if (!owns(px, py)) {
+				break;
+			}
+			if (count == movements.length) {
+				movements = Arrays.copyOf(movements, count * 2);
+			}
+			movements[count++] = (byte) opposite(back);
+			back = Path.NO_DIRECTION;
+			x = px;
+			y = py;
+		}
+		Path path = new Path(new Point(x, y));
+		for (int i = count - 1; i >= 0; i--) {
+			path.addMovement(movements[i]);
+		}
+		return new Junction(path, back, Junction.NO_ID);
+	}
+}
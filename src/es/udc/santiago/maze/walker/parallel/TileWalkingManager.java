@@ -0,0 +1,249 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.WorkMessage;
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.utils.MazeBandReader;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Master of the domain decomposition mode. It sends every son its tile (see
+ * TileWalker) and waits for the son which reaches the end. Then it asks the
+ * sons for the way back through their tiles, from the end to the start, and
+ * joins the pieces.
+ * 
+ * The maze can be read from a file by bands of tiles, so not even the master
+ * needs to keep the whole maze in memory.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class TileWalkingManager {
+	private Communicator comm;
+	private Maze maze;
+	private File file;
+	private TileLayout layout;
+	private int width;
+	private int height;
+	private Point start;
+	private Point end;
+	/**
+	 * Number of sons which got their tile.
+	 */
+	private int tilesSent = 0;
+	private boolean found = false;
+	private Path result;
+	/**
+	 * Pieces of the path (paths through a tile and the direction back to the
+	 * previous tile), newest first.
+	 */
+	private List<Junction> pieces;
+
+	/**
+	 * Creates a manager with the given maze.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param maze
+	 *            Maze.
+	 */
+	public TileWalkingManager(Communicator comm, Maze maze) {
+		this.comm = comm;
+		this.maze = maze;
+	}
+
+	/**
+	 * Creates a manager which reads the maze from a file.
+	 * 
+	 * @param comm
+	 *            Communicator of the master.
+	 * @param file
+	 *            Maze file (see {@link MazeUtils#mazeToFile(Maze, File)}).
+	 */
+	public TileWalkingManager(Communicator comm, File file) {
+		this.comm = comm;
+		this.file = file;
+	}
+
+	/**
+	 * Performs the main job. It returns when the path is found or when the
+	 * sons find out that there isn't any (the sons are stopped in both
+	 * cases).
+	 * 
+	 * @return Path from start to end, <i>null</i> if there isn't any.
+	 * @throws IOException
+	 *             If the maze file can't be read. The sons which didn't get
+	 *             their tile are told so, but all of them must still be
+	 *             stopped (see ParallelUtils.tellSonsToStop()).
+	 */
+	public Path doJob() throws IOException {
+		if (maze != null) {
+			width = maze.getWidth();
+			height = maze.getHeight();
+			start = maze.getStart();
+			end = maze.getEnd();
+			layout = new TileLayout(width, height, comm.size() - 1);
+			for (int tile = 0; tile < layout.size(); tile++) {
+				sendTile(tile, maze.getWalls(), 0);
+			}
+		} else {
+			try {
+				sendTiles();
+			} catch (IOException e) {
+				for (int son = tilesSent + 1; son < comm.size(); son++) {
+					ParallelUtils.sendTileFailure(comm, son);
+				}
+				throw e;
+			}
+		}
+		while (!found) {
+			processOperation(ParallelUtils.receiveFromSons(comm));
+		}
+		return result;
+	}
+
+	/**
+	 * Sends the tiles read from the file, a row of tiles at a time.
+	 * 
+	 * @throws IOException
+	 *             If the maze file can't be read.
+	 */
+	private void sendTiles() throws IOException {
+		MazeBandReader reader = MazeUtils.openBandReader(file);
+		try {
+			width = reader.getWidth();
+			height = reader.getHeight();
+			start = reader.getStart();
+			end = reader.getEnd();
+			layout = new TileLayout(width, height, comm.size() - 1);
+			for (int row = 0; row < layout.getRows(); row++) {
+				// The row above the tiles is needed for their top walls
+				int first = Math.max(0, layout.rowStart(row) - 1);
+				PackedWalls band = reader.readRows(first,
+						layout.rowStart(row + 1) - first);
+				for (int column = 0; column < layout.getColumns(); column++) {
+					sendTile(row * layout.getColumns() + column, band, first);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Sends a tile, with the column on its left and the row above it.
+	 * 
+	 * @param tile
+	 *            Tile.
+	 * @param walls
+	 *            Rows of the maze which contain the tile.
+	 * @param firstRow
+	 *            Row of the maze where <i>walls</i> starts.
+	 */
+	private void sendTile(int tile, PackedWalls walls, int firstRow) {
+		int tileWidth = layout.getWidth(tile) + 1;
+		int tileHeight = layout.getHeight(tile) + 1;
+		long[] header = { width, height, start.x, start.y, end.x, end.y,
+				tileWidth, tileHeight };
+		ParallelUtils.sendTile(comm, 1 + tile, header, walls.getRegion(
+				layout.getLeft(tile) - 1, layout.getTop(tile) - 1 - firstRow,
+				tileWidth, tileHeight));
+		tilesSent++;
+	}
+
+	/**
+	 * Process the received operation.
+	 * 
+	 * @param message
+	 *            Received message.
+	 */
+	private void processOperation(WorkMessage message) {
+		switch (message.getOpcode()) {
+		case WorkMessage.PATH_FOUND:
+			pieces = new ArrayList<Junction>();
+			pieceReceived(message.getTasks().get(0));
+			break;
+		case WorkMessage.TRACE:
+			pieceReceived(message.getTasks().get(0));
+			break;
+		case WorkMessage.NO_PATH:
+			found = true;
+			ParallelUtils.tellSonsToStop(comm);
+			break;
+		}
+	}
+
+	/**
+	 * Adds a piece of the path and asks for the previous one (or joins them
+	 * if the start was reached).
+	 * 
+	 * @param piece
+	 *            Path through a tile.
+	 */
+	private void pieceReceived(Junction piece) {
+		pieces.add(piece);
+		if (piece.getDirections() == Path.NO_DIRECTION) {
+			if (ParallelUtils.LOG) {
+				ParallelUtils.log(0, "Path joined from " + pieces.size()
+						+ " pieces.");
+			}
+			pathFound(joinPieces());
+			return;
+		}
+		Point first = piece.getPath().getStart();
+		Point previous = MazeUtils.getNextPoint(first, piece.getDirections());
+		ParallelUtils.requestTrace(comm, layout.owner(previous.x, previous.y),
+				previous);
+	}
+
+	/**
+	 * Joins the pieces of the path.
+	 * 
+	 * @return Path from start to end.
+	 */
+	private Path joinPieces() {
+		Path path = new Path(start);
+		for (int i = pieces.size() - 1; i >= 0; i--) {
+			Junction piece = pieces.get(i);
+			if (i < pieces.size() - 1) {
+				// From the previous tile to this one
+				int back = piece.getDirections();
+				path.addMovement((byte) ((back << 2 | back >>> 2) & 0xF));
+			}
+			Point first = piece.getPath().getStart();
+			if (path.getCurrentX() != first.x
+					|| path.getCurrentY() != first.y) {
+				throw new IllegalStateException("Broken path at (" + first.x
+						+ ", " + first.y + ")");
+			}
+			for (byte movement : piece.getPath().toArray()) {
+				path.addMovement(movement);
+			}
+		}
+		if (!path.getCurrentPoint().equals(end)) {
+			throw new IllegalStateException("Joined path doesn't reach the end");
+		}
+		return path;
+	}
+
+	/**
+	 * Path found event.
+	 * 
+	 * @param path
+	 *            Path from start to end.
+	 */
+	private void pathFound(Path path) {
+		this.found = true;
+		this.result = path;
+		ParallelUtils.tellSonsToStop(comm);
+	}
+}
@@ -0,0 +1,222 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.PendingRequests;
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.Metrics;
+
+/**
+ * Visited junctions, shared by all sons. The maze is split in square tiles
+ * which are dealt round robin between the sons, and every son keeps a bitset
+ * of the tiles it owns (a tile row is a single word).
+ * 
+ * Junctions in tiles of other sons are claimed asynchronously: claims are
+ * batched by owner and the junctions wait until the owner answers. Only the
+ * first claim of a cell is granted, so a junction is walked by a single son.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+class VisitedSet {
+	/**
+	 * Cells per side of a tile (a tile row fits in a word).
+	 */
+	static final int TILE_SIZE = 64;
+	/**
+	 * Claims sent together to the same owner.
+	 */
+	static final int CLAIM_BATCH = 64;
+	private Communicator comm;
+	private int me;
+	private int sons;
+	private int tilesPerRow;
+	private long[] bits;
+	/**
+	 * Claims not sent yet, by owner.
+	 */
+	private List<List<Junction>> unsent;
+	/**
+	 * Batches sent and not answered yet, by owner (oldest first).
+	 */
+	private List<LinkedList<List<Junction>>> waiting;
+	private int pendingClaims = 0;
+	private long[] cells = new long[CLAIM_BATCH];
+	private PendingRequests pending;
+	/**
+	 * Rejected claims of this son are counted as duplicate expansions.
+	 */
+	private Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Creates the part of the set kept by a son.
+	 * 
+	 * @param comm
+	 *            Communicator of the son (the master doesn't own any tile).
+	 * @param maze
+	 *            Maze.
+	 * @param pending
+	 *            Sends of the son not completed yet (claims and replies are
+	 *            added).
+	 */
+	VisitedSet(Communicator comm, Maze maze, PendingRequests pending) {
+		int nproc = comm.size();
+		this.comm = comm;
+		this.me = comm.rank();
+		this.pending = pending;
+		this.sons = nproc - 1;
+		this.tilesPerRow = (maze.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		int tiles = tilesPerRow
+				* ((maze.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+		int ownedTiles = (tiles + sons - 1) / sons;
+		this.bits = new long[ownedTiles * TILE_SIZE];
+		this.unsent = new ArrayList<List<Junction>>(nproc);
+		this.waiting = new ArrayList<LinkedList<List<Junction>>>(nproc);
+		for (int i = 0; i < nproc; i++) {
+			unsent.add(new ArrayList<Junction>(CLAIM_BATCH));
+			waiting.add(new LinkedList<List<Junction>>());
+		}
+		// The start is never walked again
+		int startX = maze.getStart().x;
+		int startY = maze.getStart().y;
+		if (owner(startX, startY) == me) {
+			claimLocal(startX, startY);
+		}
+	}
+
+	void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the son which owns a cell.
+	 * 
+	 * @param x
+	 *            X coord.
+	 * @param y
+	 *            Y coord.
+	 * @return Process ID.
+	 */
+	int owner(int x, int y) {
+		return 1 + tile(x, y) % sons;
+	}
+
+	private int tile(int x, int y) {
+		return (y / TILE_SIZE) * tilesPerRow + x / TILE_SIZE;
+	}
+
+	/**
+	 * Marks a cell of this son.
+	 * 
+	 * @return <i>true</i> if it wasn't visited.
+	 */
+	private boolean claimLocal(int x, int y) {
+		int word = (tile(x, y) / sons) * TILE_SIZE + y % TILE_SIZE;
+		long mask = 1L << (x % TILE_SIZE);
+		if ((bits[word] & mask) != 0) {
+			return false;
+		}
+		bits[word] |= mask;
+		return true;
+	}
+
+	/**
+	 * Claims a junction. If this son owns it, it's added to the work at once
+	 * (unless it was visited), otherwise it waits for the owner's answer.
+	 * 
+	 * @param junction
+	 *            Junction.
+	 * @param work
+	 *            Work of this son.
+	 */
+	void claim(Junction junction, Deque<Junction> work) {
+		int owner = owner(junction.getX(), junction.getY());
+		if (owner == me) {
+			if (claimLocal(junction.getX(), junction.getY())) {
+				work.addLast(junction);
+			} else {
+				metrics.add(Metrics.DUPLICATE_EXPANSIONS, 1);
+			}
+			return;
+		}
+		List<Junction> batch = unsent.get(owner);
+		batch.add(junction);
+		pendingClaims++;
+		if (batch.size() == CLAIM_BATCH) {
+			send(owner);
+		}
+	}
+
+	/**
+	 * Sends every claim which is still buffered.
+	 */
+	void flush() {
+		for (int i = 1; i <= sons; i++) {
+			if (!unsent.get(i).isEmpty()) {
+				send(i);
+			}
+		}
+	}
+
+	private void send(int owner) {
+		List<Junction> batch = unsent.get(owner);
+		for (int i = 0; i < batch.size(); i++) {
+			Junction junction = batch.get(i);
+			cells[i] = (((long) junction.getX()) << 32)
+					| (junction.getY() & 0xFFFFFFFFL);
+		}
+		pending.add(ParallelUtils.sendClaims(comm, owner, cells, batch.size()));
+		waiting.get(owner).addLast(batch);
+		unsent.set(owner, new ArrayList<Junction>(CLAIM_BATCH));
+	}
+
+	/**
+	 * Answers the claims of other sons and adds the granted junctions of this
+	 * one to its work (it doesn't block).
+	 * 
+	 * @param work
+	 *            Work of this son.
+	 */
+	void serve(Deque<Junction> work) {
+		long[] claims = ParallelUtils.receiveClaims(comm);
+		while (claims != null) {
+			long[] granted = new long[(claims.length - 1 + 63) / 64];
+			for (int i = 1; i < claims.length; i++) {
+				if (claimLocal((int) (claims[i] >>> 32), (int) claims[i])) {
+					granted[(i - 1) / 64] |= 1L << (i - 1);
+				}
+			}
+			pending.add(ParallelUtils.sendClaimReply(comm, (int) claims[0],
+					granted));
+			claims = ParallelUtils.receiveClaims(comm);
+		}
+		long[] reply = ParallelUtils.receiveClaimReply(comm);
+		while (reply != null) {
+			List<Junction> batch = waiting.get((int) reply[0]).removeFirst();
+			int accepted = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				if ((reply[1 + i / 64] & (1L << i)) != 0) {
+					work.addLast(batch.get(i));
+					accepted++;
+				}
+			}
+			metrics.add(Metrics.DUPLICATE_EXPANSIONS, batch.size() - accepted);
+			pendingClaims -= batch.size();
+			reply = ParallelUtils.receiveClaimReply(comm);
+		}
+	}
+
+	/**
+	 * Determines if some claims haven't been answered yet.
+	 * 
+	 * @return boolean.
+	 */
+	boolean isWaiting() {
+		return pendingClaims > 0;
+	}
+}
@@ -0,0 +1,162 @@
+package es.udc.santiago.maze.walker.sequential;
+
+import java.util.Arrays;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.utils.IntRingBuffer;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+
+/**
+ * Breadth-first walker. It always finds the shortest path from start to end.
+ * 
+ * Cells are identified by <i>y * width + x</i>. The frontier is kept in an
+ * int ring buffer and every visited cell stores the cell it was reached from,
+ * so the search doesn't create any object until the path is rebuilt.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class BreadthFirstWalker implements Walker {
+	private static final int NOT_VISITED = -1;
+	private static final int INITIAL_QUEUE_SIZE = 1024;
+	private Maze maze;
+	private int width;
+	private int[] parents;
+	private IntRingBuffer queue;
+	private Metrics metrics = Metrics.DISABLED;
+
+	public BreadthFirstWalker(Maze maze) {
+		this.maze = maze;
+		this.width = maze.getWidth();
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Walks through the maze.
+	 * 
+	 * @return Shortest path from start to end, <i>null</i> if the end can't be
+	 *         reached.
+	 */
+	public Path walk() {
+		int cells = width * maze.getHeight();
+		int start = maze.getStart().y * width + maze.getStart().x;
+		int end = maze.getEnd().y * width + maze.getEnd().x;
+		parents = new int[cells];
+		Arrays.fill(parents, NOT_VISITED);
+		queue = new IntRingBuffer(Math.min(cells, INITIAL_QUEUE_SIZE));
+
+		boolean metered = metrics.isEnabled();
+		long expanded = 0;
+		long junctions = 0;
+		long duplicates = 0;
+		long deadEnds = 0;
+		Path result = null;
+		parents[start] = start;
+		queue.add(start);
+		while (!queue.isEmpty()) {
+			int cell = queue.poll();
+			if (cell == end) {
+				result = buildPath(start, end);
+				break;
+			}
+			int x = cell % width;
+			int y = cell / width;
+			int directions = maze.openDirections(x, y, Path.NO_DIRECTION);
+			int queued = queue.size();
+			if ((directions & Path.UP) != 0) {
+				visit(cell, cell - width);
+			}
+			if ((directions & Path.RIGHT) != 0) {
+				visit(cell, cell + 1);
+			}
+			if ((directions & Path.DOWN) != 0) {
+				visit(cell, cell + width);
+			}
+			if ((directions & Path.LEFT) != 0) {
+				visit(cell, cell - 1);
+			}
+			if (metered) {
+				// Every cell but the start was reached from an open one
+				int forward = Integer.bitCount(directions)
+						- ((cell == start) ? 0 : 1);
+				expanded++;
+				junctions += (forward > 1) ? 1 : 0;
+				deadEnds += (forward == 0) ? 1 : 0;
+				duplicates += forward - (queue.size() - queued);
+				metrics.queueDepth(queue.size());
+			}
+		}
+		metrics.addWalk(expanded, junctions, duplicates, deadEnds);
+		return result;
+	}
+
+	/**
+	 * Enqueues a cell if it wasn't visited yet.
+	 * 
+	 * @param from
+	 *            Current cell.
+	 * @param to
+	 *            Neighbor cell.
+	 */
+	private void visit(int from, int to) {
+		if (parents[to] == NOT_VISITED) {
+			parents[to] = from;
+			queue.add(to);
+		}
+	}
+
+	/**
+	 * Follows the parents from the end to the start.
+	 * 
+	 * @param start
+	 *            Start cell.
+	 * @param end
+	 *            End cell.
+	 * @return Path from start to end.
+	 */
+	private Path buildPath(int start, int end) {
+		int length = 0;
+		for (int cell = end; cell != start; cell = parents[cell]) {
+			length++;
+		}
+		byte[] movements = new byte[length];
+		int cell = end;
+		for (int i = length - 1; i >= 0; i--) {
+			int parent = parents[cell];
+			movements[i] = direction(parent, cell);
+			cell = parent;
+		}
+		Path path = new Path(maze.getStart());
+		for (byte movement : movements) {
+			path.addMovement(movement);
+		}
+		return path;
+	}
+
+	/**
+	 * Gets the direction between two neighbor cells.
+	 * 
+	 * @param from
+	 *            Origin cell.
+	 * @param to
+	 *            Destination cell.
+	 * @return Direction (see Path's constants).
+	 */
+	private byte direction(int from, int to) {
+		if (to == from + 1) {
+			return Path.RIGHT;
+		}
+		if (to == from - 1) {
+			return Path.LEFT;
+		}
+		if (to == from + width) {
+			return Path.DOWN;
+		}
+		return Path.UP;
+	}
+}
@@ -0,0 +1,135 @@
+package es.udc.santiago.maze.walker.sequential;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.graph.JunctionGraph;
+import es.udc.santiago.maze.graph.JunctionGraphBuilder;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+
+/**
+ * Walker which searches the junction graph of the maze instead of its cells
+ * (Dijkstra over the corridor lengths), so it finds the shortest path. Only
+ * the corridors of the result are walked again to build the path.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class JunctionGraphWalker implements Walker {
+	private static final int NO_EDGE = -1;
+	private Maze maze;
+	private JunctionGraph graph;
+	private Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Creates a walker which builds the graph when it walks.
+	 * 
+	 * @param maze
+	 *            Maze.
+	 */
+	public JunctionGraphWalker(Maze maze) {
+		this.maze = maze;
+	}
+
+	/**
+	 * Creates a walker over an already built graph.
+	 * 
+	 * @param graph
+	 *            Junction graph.
+	 */
+	public JunctionGraphWalker(JunctionGraph graph) {
+		this.maze = graph.getMaze();
+		this.graph = graph;
+	}
+
+	/**
+	 * Sets the metrics. Only the search is reported: the settled nodes as
+	 * junctions and the outdated entries of the queue as duplicates (cells
+	 * are only walked to build the graph).
+	 * 
+	 * @param metrics
+	 *            Metrics.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Walks through the maze.
+	 * 
+	 * @return Shortest path from start to end, <i>null</i> if the end can't be
+	 *         reached.
+	 */
+	public Path walk() {
+		if (graph == null) {
+			graph = new JunctionGraphBuilder(maze).build();
+		}
+		int nodes = graph.getNodeCount();
+		int start = graph.getStartNode();
+		int end = graph.getEndNode();
+		int[] distances = new int[nodes];
+		int[] parentEdges = new int[nodes];
+		int[] parents = new int[nodes];
+		Arrays.fill(distances, Integer.MAX_VALUE);
+		Arrays.fill(parentEdges, NO_EDGE);
+		// Distance in the high half, node in the low one
+		PriorityQueue<Long> queue = new PriorityQueue<Long>();
+		long settled = 0;
+		long outdated = 0;
+		Path result = null;
+		distances[start] = 0;
+		queue.add((long) start);
+		while (!queue.isEmpty()) {
+			long entry = queue.poll();
+			int node = (int) entry;
+			int distance = (int) (entry >>> 32);
+			if (distance > distances[node]) {
+				// Already reached through a shorter corridor
+				outdated++;
+				continue;
+			}
+			settled++;
+			if (node == end) {
+				result = this.buildPath(start, end, parents, parentEdges);
+				break;
+			}
+			for (int edge = graph.getFirstEdge(node); edge < graph
+					.getEndEdge(node); edge++) {
+				int target = graph.getTarget(edge);
+				int newDistance = distance + graph.getLength(edge);
+				if (newDistance < distances[target]) {
+					distances[target] = newDistance;
+					parents[target] = node;
+					parentEdges[target] = edge;
+					queue.add((((long) newDistance) << 32) | target);
+				}
+			}
+			metrics.queueDepth(queue.size());
+		}
+		metrics.addWalk(0, settled, outdated, 0);
+		return result;
+	}
+
+	/**
+	 * Expands the edges from the start to the end.
+	 * 
+	 * @return Path from start to end.
+	 */
+	private Path buildPath(int start, int end, int[] parents,
+			int[] parentEdges) {
+		int count = 0;
+		for (int node = end; node != start; node = parents[node]) {
+			count++;
+		}
+		int[] edges = new int[count];
+		int node = end;
+		for (int i = count - 1; i >= 0; i--) {
+			edges[i] = parentEdges[node];
+			node = parents[node];
+		}
+		return graph.toPath(edges);
+	}
+}
@@ -10,7 +10,9 @@ import java.util.Set;
 
 import es.udc.santiago.maze.Maze;
 import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
 import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
 
 /**
  * Represents a walker in the maze.
@@ -18,10 +20,11 @@ import es.udc.santiago.maze.walker.Path;
  * @author Santiago Munín González
  * 
  */
-public class SequentialWalker {
+public class SequentialWalker implements Walker {
 	private List<Entry<Path, Byte>> pendingDirections;
 	private Set<Point> walkedDirections;
 	private Maze maze;
+	private Metrics metrics = Metrics.DISABLED;
 
 	public SequentialWalker(Maze maze) {
 		pendingDirections = new LinkedList<Entry<Path, Byte>>();
@@ -29,6 +32,10 @@ public class SequentialWalker {
 		this.maze = maze;
 	}
 
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
 	/**
 	 * Walks through the maze.
 	 * 
@@ -47,81 +54,77 @@ public class SequentialWalker {
 	 */
 	public Path walk(byte startDirection) {
 		// List<Path> wrongPaths = new LinkedList<Path>();
-		List<Byte> directions;
+		int directions;
+		long expanded = 0;
+		long junctions = 0;
+		long duplicates = 0;
+		long backtracks = 0;
 
 		// Initializes path and point to maze's start
 		Path currentPath = new Path((Point) maze.getStart());
-		Point currentPoint = (Point) maze.getStart().clone();
+		int x = maze.getStart().x;
+		int y = maze.getStart().y;
+		int endX = maze.getEnd().x;
+		int endY = maze.getEnd().y;
 		byte direction = Path.NO_DIRECTION;
 		if (startDirection >= 0 && startDirection <= 3) {
 			if (MazeUtils.directionsByteToList(
-					maze.findPossibleDirections(currentPoint)).contains(
+					maze.findPossibleDirections(maze.getStart())).contains(
 					startDirection)) {
 				direction = startDirection;
-				currentPoint = MazeUtils.getNextPoint(currentPoint, direction);
+				x = MazeUtils.nextX(x, direction);
+				y = MazeUtils.nextY(y, direction);
 				currentPath.addMovement(direction);
 			}
 		}
 
-		while (!maze.getEnd().equals(currentPoint)) {
+		while (x != endX || y != endY) {
 			// Finds out all possible directions from a point
-			directions = MazeUtils.directionsByteToList(maze
-					.findPossibleDirections(currentPoint, direction));
+			directions = maze.openDirections(x, y, direction);
+			expanded++;
 			// If there aren't possible directions, just pick a pendant point
-			if (directions.size() == 0) {
+			if (directions == Path.NO_DIRECTION) {
+				backtracks++;
 				// If there is pending directions, pick one point and a
 				// direction
 				if (pendingDirections.size() > 0) {
-					boolean newWayFound = false;
-					while (!newWayFound && pendingDirections.size() > 0) {
-						Entry<Path, Byte> pendingDirectionsEntry = pendingDirections
-								.get(0);
-						directions = MazeUtils
-								.directionsByteToList(pendingDirectionsEntry
-										.getValue());
-						// All directions entry will have at least 1 element
-						direction = directions.get(0);
-						if (directions.size() == 1) {
-							currentPath = pendingDirectionsEntry.getKey()
-									.clone();
-							currentPoint = currentPath.getCurrentPoint();
-							newWayFound = true;
-							pendingDirections.remove(0);
-						} else {
-							// directions.size() > 1
-							currentPath = pendingDirectionsEntry.getKey()
-									.clone();
-							currentPoint = currentPath.getCurrentPoint();
-							List<Byte> tempDirections = MazeUtils
-									.directionsByteToList(pendingDirectionsEntry
-											.getValue());
-							tempDirections.remove(0);
-							pendingDirectionsEntry.setValue(MazeUtils
-									.directionsListToByte(tempDirections));
-							pendingDirections.set(0, pendingDirectionsEntry);
-							newWayFound = true;
-						}
+					Entry<Path, Byte> pendingDirectionsEntry = pendingDirections
+							.get(0);
+					directions = pendingDirectionsEntry.getValue();
+					// All directions entry will have at least 1 element
+					direction = (byte) Integer.lowestOneBit(directions);
+					currentPath = pendingDirectionsEntry.getKey().clone();
+					x = currentPath.getCurrentX();
+					y = currentPath.getCurrentY();
+					if (directions == direction) {
+						pendingDirections.remove(0);
+					} else {
+						pendingDirectionsEntry
+								.setValue((byte) (directions & ~direction));
 					}
 				}
 			} else {
-				direction = directions.get(0);
-				if (directions.size() > 1
-						&& !walkedDirections.contains(currentPoint)) {
-					List<Byte> remainingDirections = new LinkedList<Byte>();
-					for (int i = 1; i < directions.size(); i++) {
-						remainingDirections.add(directions.get(i));
+				direction = (byte) Integer.lowestOneBit(directions);
+				if (directions != direction) {
+					junctions++;
+					Point currentPoint = new Point(x, y);
+					if (!walkedDirections.contains(currentPoint)) {
+						pendingDirections
+								.add(new AbstractMap.SimpleEntry<Path, Byte>(
+										currentPath.clone(),
+										(byte) (directions & ~direction)));
+						walkedDirections.add(currentPoint);
+						metrics.queueDepth(pendingDirections.size());
+					} else {
+						duplicates++;
 					}
-					pendingDirections
-							.add(new AbstractMap.SimpleEntry<Path, Byte>(
-									currentPath.clone(),
-									MazeUtils
-											.directionsListToByte(remainingDirections)));
-					walkedDirections.add((Point) currentPoint.clone());
 				}
 			}
-			currentPoint = MazeUtils.getNextPoint(currentPoint, direction);
+			x = MazeUtils.nextX(x, direction);
+			y = MazeUtils.nextY(y, direction);
 			currentPath.addMovement(direction);
 		}
+		metrics.addWalk(expanded, junctions, duplicates, backtracks);
 		return currentPath;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,244 @@
+package es.udc.santiago.maze.walker.sequential;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.utils.DiskBitSet;
+import es.udc.santiago.maze.utils.MazeBandReader;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Metrics;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.Walker;
+
+/**
+ * Depth-first walker for mazes which don't fit in memory. It reads the maze
+ * file by bands and only keeps a window of rows around the current cell
+ * (it's moved when the walker leaves it). Visited cells are kept in a bit set
+ * on disk, and the walked directions in a stack of 2 bits per movement.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class StreamingWalker implements Walker {
+	public static final int DEFAULT_WINDOW_ROWS = 1024;
+	private static final int MOVEMENTS_PER_WORD = 32;
+	private File mazeFile;
+	private File visitedFile;
+	private int windowRows;
+	private MazeBandReader reader;
+	private int width;
+	private int height;
+	private PackedWalls window;
+	private int windowTop;
+	private int windowLoads;
+	private long[] stack;
+	private int stackSize;
+	private Metrics metrics = Metrics.DISABLED;
+
+	/**
+	 * Creates a walker which keeps the visited cells in a temporary file.
+	 * 
+	 * @param mazeFile
+	 *            Maze file (see {@link MazeUtils#mazeToFile}).
+	 * @param windowRows
+	 *            Rows kept in memory (at least 2).
+	 */
+	public StreamingWalker(File mazeFile, int windowRows) {
+		this(mazeFile, windowRows, null);
+	}
+
+	/**
+	 * Creates a walker.
+	 * 
+	 * @param mazeFile
+	 *            Maze file (see {@link MazeUtils#mazeToFile}).
+	 * @param windowRows
+	 *            Rows kept in memory (at least 2).
+	 * @param visitedFile
+	 *            File for the visited cells, a temporary one if <i>null</i>.
+	 */
+	public StreamingWalker(File mazeFile, int windowRows, File visitedFile) {
+		if (windowRows < 2) {
+			throw new IllegalArgumentException("The window needs 2 rows");
+		}
+		this.mazeFile = mazeFile;
+		this.windowRows = windowRows;
+		this.visitedFile = visitedFile;
+	}
+
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Number of times the window was read from the file in the last walk.
+	 * 
+	 * @return Number of reads.
+	 */
+	public int getWindowLoads() {
+		return windowLoads;
+	}
+
+	/**
+	 * Walks through the maze.
+	 * 
+	 * @return Path from start to end, <i>null</i> if the end can't be reached.
+	 */
+	public Path walk() {
+		File visitedBits = visitedFile;
+		try {
+			if (visitedBits == null) {
+				visitedBits = File.createTempFile("visited", ".bits");
+			}
+			reader = MazeUtils.openBandReader(mazeFile);
+			DiskBitSet visited = new DiskBitSet(visitedBits, (long) reader
+					.getWidth() * reader.getHeight());
+			try {
+				return this.search(visited);
+			} finally {
+				visited.close();
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Problem reading " + mazeFile, e);
+		} finally {
+			window = null;
+			if (visitedFile == null && visitedBits != null) {
+				visitedBits.delete();
+			}
+		}
+	}
+
+	private Path search(DiskBitSet visited) throws IOException {
+		width = reader.getWidth();
+		height = reader.getHeight();
+		window = null;
+		windowLoads = 0;
+		stack = new long[16];
+		stackSize = 0;
+		int x = reader.getStart().x;
+		int y = reader.getStart().y;
+		int endX = reader.getEnd().x;
+		int endY = reader.getEnd().y;
+		boolean metered = metrics.isEnabled();
+		long expanded = 0;
+		long junctions = 0;
+		long deadEnds = 0;
+		// false while going back, through cells already expanded
+		boolean forward = true;
+		visited.set((long) y * width + x);
+		while (x != endX || y != endY) {
+			int open = this.openDirections(x, y);
+			if (forward) {
+				expanded++;
+				if (Integer.bitCount(open) > 2) {
+					junctions++;
+				}
+			}
+			int next = Path.NO_DIRECTION;
+			while (open != 0 && next == Path.NO_DIRECTION) {
+				int direction = Integer.lowestOneBit(open);
+				open &= ~direction;
+				long cell = (long) MazeUtils.nextY(y, direction) * width
+						+ MazeUtils.nextX(x, direction);
+				if (!visited.get(cell)) {
+					visited.set(cell);
+					next = direction;
+				}
+			}
+			if (next != Path.NO_DIRECTION) {
+				this.push(next);
+				x = MazeUtils.nextX(x, next);
+				y = MazeUtils.nextY(y, next);
+				forward = true;
+				if (metered) {
+					metrics.queueDepth(stackSize);
+				}
+			} else if (stackSize == 0) {
+				break;
+			} else {
+				// Backtracks
+				if (forward) {
+					deadEnds++;
+					forward = false;
+				}
+				int back = this.pop();
+				int opposite = (back << 2 | back >>> 2) & 0xF;
+				x = MazeUtils.nextX(x, opposite);
+				y = MazeUtils.nextY(y, opposite);
+			}
+		}
+		metrics.addWalk(expanded, junctions, 0, deadEnds);
+		if (x != endX || y != endY) {
+			return null;
+		}
+		Path path = new Path(reader.getStart());
+		for (int i = 0; i < stackSize; i++) {
+			path.addMovement((byte) this.movement(i));
+		}
+		return path;
+	}
+
+	/**
+	 * Open directions of a cell (the window is moved if needed).
+	 * 
+	 * @return Directions mask (see Path's constants).
+	 */
+	private int openDirections(int x, int y) throws IOException {
+		// The upper wall is stored in the previous row
+		if (window == null || y >= windowTop + window.getHeight()
+				|| (y > 0 && y - 1 < windowTop)) {
+			int rows = Math.min(windowRows, height);
+			windowTop = Math.max(0, Math.min(y - rows / 2, height - rows));
+			window = reader.readRows(windowTop, rows);
+			windowLoads++;
+		}
+		int row = y - windowTop;
+		int result = Path.NO_DIRECTION;
+		if (y > 0 && !window.hasBottomWall(x, row - 1)) {
+			result |= Path.UP;
+		}
+		if (x < width - 1 && !window.hasRightWall(x, row)) {
+			result |= Path.RIGHT;
+		}
+		if (y < height - 1 && !window.hasBottomWall(x, row)) {
+			result |= Path.DOWN;
+		}
+		if (x > 0 && !window.hasRightWall(x - 1, row)) {
+			result |= Path.LEFT;
+		}
+		return result;
+	}
+
+	private void push(int direction) {
+		int word = stackSize / MOVEMENTS_PER_WORD;
+		if (word == stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+		int shift = (stackSize % MOVEMENTS_PER_WORD) * 2;
+		stack[word] = (stack[word] & ~(0x3L << shift))
+				| (((long) Integer.numberOfTrailingZeros(direction)) << shift);
+		stackSize++;
+	}
+
+	private int pop() {
+		stackSize--;
+		return this.movement(stackSize);
+	}
+
+	/**
+	 * Gets a movement of the stack.
+	 * 
+	 * @param index
+	 *            Position (0 is the first movement from the start).
+	 * @return Direction (see Path's constants).
+	 */
+	private int movement(int index) {
+		long word = stack[index / MOVEMENTS_PER_WORD];
+		int shift = (index % MOVEMENTS_PER_WORD) * 2;
+		return 1 << ((int) (word >>> shift) & 0x3);
+	}
+}
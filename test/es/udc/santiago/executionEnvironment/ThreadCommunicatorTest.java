@@ -0,0 +1,130 @@
+package es.udc.santiago.executionEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * ThreadCommunicator class.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class ThreadCommunicatorTest {
+	private static final int TAG = 3;
+	private static final int OTHER_TAG = 4;
+
+	/**
+	 * Messages from a rank with the same tag arrive in order, and tags are
+	 * matched apart.
+	 */
+	@Test(timeout = 10000)
+	public void testSendRecv() throws Exception {
+		ThreadCommunicator.run(2, new ParallelJob() {
+			public void run(Communicator comm) {
+				if (comm.rank() == 0) {
+					for (long i = 0; i < 100; i++) {
+						comm.send(new long[] { i, -i }, 0, 2, 1, TAG);
+					}
+					comm.send(new long[] { 7 }, 0, 1, 1, OTHER_TAG);
+					return;
+				}
+				long[] buffer = new long[2];
+				Status status = comm.recv(buffer, 0, 1, 0, OTHER_TAG);
+				assertEquals(0, status.getSource());
+				assertEquals(1, status.getCount());
+				assertEquals(7, buffer[0]);
+				for (long i = 0; i < 100; i++) {
+					comm.recv(buffer, 0, 2, Communicator.ANY_SOURCE, TAG);
+					assertArrayEquals(new long[] { i, -i }, buffer);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A message sent from a buffer isn't changed by later writes to it.
+	 */
+	@Test(timeout = 10000)
+	public void testIsendCopies() throws Exception {
+		ThreadCommunicator.run(2, new ParallelJob() {
+			public void run(Communicator comm) {
+				if (comm.rank() == 0) {
+					long[] buffer = { 1, 2, 3 };
+					Request request = comm.isend(buffer, 1, 2, 1, TAG);
+					assertNotNull(request.test());
+					buffer[1] = 0;
+					return;
+				}
+				Status status = comm.probe(0, TAG);
+				assertEquals(2, status.getCount());
+				long[] buffer = new long[status.getCount()];
+				comm.recv(buffer, 0, buffer.length, 0, TAG);
+				assertArrayEquals(new long[] { 2, 3 }, buffer);
+			}
+		});
+	}
+
+	/**
+	 * Posted receives get the messages before probes, from any source.
+	 */
+	@Test(timeout = 10000)
+	public void testIrecv() throws Exception {
+		final int size = 5;
+		ThreadCommunicator.run(size, new ParallelJob() {
+			public void run(Communicator comm) {
+				if (comm.rank() != 0) {
+					comm.send(new long[] { comm.rank() }, 0, 1, 0, TAG);
+					return;
+				}
+				long sum = 0;
+				for (int i = 1; i < size; i++) {
+					long[] buffer = new long[1];
+					Request request = comm.irecv(buffer, 0, 1,
+							Communicator.ANY_SOURCE, TAG);
+					assertNull(comm.iprobe(Communicator.ANY_SOURCE, OTHER_TAG));
+					Status status = request.test();
+					while (status == null) {
+						Thread.yield();
+						status = request.test();
+					}
+					assertEquals(status.getSource(), buffer[0]);
+					sum += buffer[0];
+				}
+				assertEquals(size * (size - 1) / 2, sum);
+				// Nothing left
+				Request request = comm.irecv(new long[1], 0, 1,
+						Communicator.ANY_SOURCE, TAG);
+				assertNull(request.test());
+				request.cancel();
+				assertNull(comm.iprobe(Communicator.ANY_SOURCE, TAG));
+			}
+		});
+	}
+
+	/**
+	 * The failure of a rank is thrown by run() and the ranks waiting for it
+	 * are released.
+	 */
+	@Test(timeout = 10000)
+	public void testFailure() throws Exception {
+		try {
+			ThreadCommunicator.run(3, new ParallelJob() {
+				public void run(Communicator comm) throws Exception {
+					if (comm.rank() == 2) {
+						throw new UnsupportedOperationException("rank 2");
+					}
+					// Never sent
+					comm.recv(new long[1], 0, 1, 2, TAG);
+				}
+			});
+			fail("The failure wasn't thrown");
+		} catch (UnsupportedOperationException e) {
+			assertEquals("rank 2", e.getMessage());
+		}
+	}
+}
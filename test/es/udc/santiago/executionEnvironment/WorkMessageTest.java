@@ -0,0 +1,124 @@
+package es.udc.santiago.executionEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.parallel.Junction;
+
+/**
+ * Checks the messages of the parallel protocol.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class WorkMessageTest {
+
+	/**
+	 * Builds some tasks which share a long prefix, as the junctions of a
+	 * single walk do.
+	 */
+	private static List<Junction> tasks(int count, int prefix, int suffix) {
+		Path common = new Path(new Point(10, 20));
+		for (int i = 0; i < prefix; i++) {
+			common.addMovement((i % 3 == 0) ? Path.DOWN : Path.RIGHT);
+		}
+		List<Junction> result = new ArrayList<Junction>();
+		for (int i = 0; i < count; i++) {
+			Path path = common.clone();
+			for (int j = 0; j < suffix + i; j++) {
+				path.addMovement(((i + j) % 2 == 0) ? Path.UP : Path.LEFT);
+			}
+			result.add(new Junction(path, (byte) (Path.UP | (i % 2 == 0 ? Path.LEFT
+					: Path.RIGHT)), Junction.id(i, 3 * i)));
+		}
+		return result;
+	}
+
+	/**
+	 * encode() and decode()
+	 */
+	@Test
+	public void testEncodeDecode() {
+		List<Junction> tasks = tasks(7, 100, 5);
+		WorkMessage decoded = WorkMessage.decode(new WorkMessage(
+				WorkMessage.WORK, 1234, tasks, true).encode());
+		assertEquals(WorkMessage.WORK, decoded.getOpcode());
+		assertEquals(1234, decoded.getWorker());
+		assertEquals(tasks.size(), decoded.getTasks().size());
+		for (int i = 0; i < tasks.size(); i++) {
+			Path expected = tasks.get(i).getPath();
+			Path actual = decoded.getTasks().get(i).getPath();
+			assertEquals(expected.getStart(), actual.getStart());
+			assertArrayEquals(expected.toArray(), actual.toArray());
+			assertEquals(tasks.get(i).getDirections(), decoded.getTasks()
+					.get(i).getDirections());
+		}
+		// Without tasks
+		decoded = WorkMessage.decode(new WorkMessage(WorkMessage.NO_PATH, 0)
+				.encode());
+		assertEquals(WorkMessage.NO_PATH, decoded.getOpcode());
+		assertTrue(decoded.getTasks().isEmpty());
+		// Empty path
+		decoded = WorkMessage.decode(new WorkMessage(WorkMessage.WORK, 3,
+				tasks(1, 0, 0), true).encode());
+		assertEquals(0, decoded.getTasks().get(0).getPath().size());
+		assertEquals(new Point(10, 20), decoded.getTasks().get(0).getPath()
+				.getStart());
+	}
+
+	/**
+	 * encode() and decode() sending only junctions
+	 */
+	@Test
+	public void testEncodeDecodeJunctions() {
+		List<Junction> tasks = tasks(5, 100, 5);
+		tasks.add(new Junction(new Path(new Point(3, 4)), Path.DOWN,
+				Junction.NO_ID));
+		WorkMessage decoded = WorkMessage.decode(new WorkMessage(
+				WorkMessage.TRACE, 77, tasks, false).encode());
+		assertEquals(WorkMessage.TRACE, decoded.getOpcode());
+		assertEquals(77, decoded.getWorker());
+		assertEquals(false, decoded.isPaths());
+		assertEquals(tasks.size(), decoded.getTasks().size());
+		for (int i = 0; i < tasks.size(); i++) {
+			Junction expected = tasks.get(i);
+			Junction actual = decoded.getTasks().get(i);
+			assertEquals(expected.getX(), actual.getX());
+			assertEquals(expected.getY(), actual.getY());
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getDirections(), actual.getDirections());
+		}
+		assertEquals(4, Junction.owner(decoded.getTasks().get(4).getId()));
+		assertEquals(12, Junction.index(decoded.getTasks().get(4).getId()));
+	}
+
+	/**
+	 * A batch is more than 10 times smaller than the old messages (a
+	 * 3-byte operation, the path size and one int per movement for every
+	 * task).
+	 */
+	@Test
+	public void testSize() {
+		List<Junction> tasks = tasks(8, 1000, 20);
+		long oldBytes = 0;
+		for (Junction task : tasks) {
+			oldBytes += 3 + 4 + 4 * (2 + task.getPath().size());
+		}
+		long newBytes = 8 * new WorkMessage(WorkMessage.WORK, 1, tasks, true)
+				.encode().length;
+		assertTrue(newBytes * 10 < oldBytes);
+		// Sending only junctions, the size doesn't depend on the depth
+		assertEquals(1 + 2 * tasks.size(), new WorkMessage(WorkMessage.WORK,
+				1, tasks, false).encode().length);
+		assertEquals(1 + 2 * tasks.size(), new WorkMessage(WorkMessage.WORK,
+				1, tasks(8, 100000, 20), false).encode().length);
+	}
+}
@@ -0,0 +1,114 @@
+package es.udc.santiago.maze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import es.udc.santiago.maze.utils.IntRingBuffer;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Checks the maze generator.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeGeneratorTest {
+
+	/**
+	 * Checks that a maze is perfect: every cell can be reached and there are
+	 * exactly <i>cells - 1</i> openings (so there aren't loops).
+	 */
+	public static void assertPerfect(Maze m) {
+		int width = m.getWidth();
+		int cells = width * m.getHeight();
+		int openings = 0;
+		boolean[] reached = new boolean[cells];
+		IntRingBuffer queue = new IntRingBuffer(1024);
+		reached[0] = true;
+		queue.add(0);
+		int reachedCells = 1;
+		while (!queue.isEmpty()) {
+			int cell = queue.poll();
+			int directions = m.openDirections(cell % width, cell / width,
+					Path.NO_DIRECTION);
+			openings += Integer.bitCount(directions);
+			int[] neighbors = { cell - width, cell + 1, cell + width, cell - 1 };
+			for (int i = 0; i < 4; i++) {
+				if ((directions & (1 << i)) != 0 && !reached[neighbors[i]]) {
+					reached[neighbors[i]] = true;
+					reachedCells++;
+					queue.add(neighbors[i]);
+				}
+			}
+		}
+		assertEquals(cells, reachedCells);
+		// Every opening was counted from both sides
+		assertEquals(cells - 1, openings / 2);
+	}
+
+	/**
+	 * generate()
+	 */
+	@Test
+	public void testGenerate() {
+		for (int i = 0; i < 10; i++) {
+			Maze m = new MazeGenerator(i).generate(100 + i, 150 - i);
+			assertEquals(100 + i, m.getHeight());
+			assertEquals(150 - i, m.getWidth());
+			assertPerfect(m);
+		}
+		assertPerfect(new MazeGenerator(7).generate(1, 50));
+		assertPerfect(new MazeGenerator(7).generate(50, 1));
+	}
+
+	/**
+	 * The same seed gives the same maze.
+	 */
+	@Test
+	public void testSeed() {
+		Maze first = new Maze(200, 300, 42L);
+		Maze second = new Maze(200, 300, 42L);
+		Maze other = new Maze(200, 300, 43L);
+		assertTrue(Arrays.equals(first.getWalls().getBits(), second.getWalls()
+				.getBits()));
+		assertEquals(first.getStart(), second.getStart());
+		assertEquals(first.getEnd(), second.getEnd());
+		assertFalse(Arrays.equals(first.getWalls().getBits(), other
+				.getWalls().getBits()));
+	}
+
+	/**
+	 * generate() on several threads: still perfect and it only depends on the
+	 * seed and the number of threads.
+	 */
+	@Test
+	public void testGenerateParallel() {
+		// 77 columns: bands can't start at every row
+		for (int threads = 2; threads <= 8; threads *= 2) {
+			Maze m = new MazeGenerator(threads).generate(300, 77, threads);
+			assertPerfect(m);
+			Maze again = new MazeGenerator(threads).generate(300, 77, threads);
+			assertTrue(Arrays.equals(m.getWalls().getBits(), again.getWalls()
+					.getBits()));
+		}
+		// Less rows than threads
+		assertPerfect(new MazeGenerator(1).generate(3, 100, 8));
+		// One thread is the sequential generator
+		assertTrue(Arrays.equals(new MazeGenerator(5).generate(64, 64)
+				.getWalls().getBits(), new MazeGenerator(5).generate(64, 64, 1)
+				.getWalls().getBits()));
+	}
+
+	/**
+	 * Generating without threads is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testGenerateNoThreads() {
+		new MazeGenerator(1).generate(64, 64, 0);
+	}
+}
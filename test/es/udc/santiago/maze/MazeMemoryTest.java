@@ -0,0 +1,79 @@
+package es.udc.santiago.maze;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Compares the memory used by the packed walls against the old Cell[][]
+ * layout. Sizes are computed, not measured, so they don't depend on the GC.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeMemoryTest {
+	private static final int SIZE = 1000;
+	/**
+	 * Smallest object header (HotSpot with compressed class pointers).
+	 */
+	private static final int OBJECT_HEADER = 12;
+	/**
+	 * Smallest array header (object header plus the length).
+	 */
+	private static final int ARRAY_HEADER = 16;
+	/**
+	 * Smallest reference (compressed oops).
+	 */
+	private static final int REFERENCE = 4;
+	private static final int ALIGNMENT = 8;
+
+	private static long align(long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Lower bound of the bytes taken by a Cell[height][width] matrix: a Cell
+	 * (header, 2 ints and 4 booleans) and a reference to it per cell, plus
+	 * the arrays.
+	 */
+	private static long cellMatrixBytes(int width, int height) {
+		long cell = align(OBJECT_HEADER + 2 * Integer.SIZE / Byte.SIZE + 4);
+		long row = align(ARRAY_HEADER + (long) REFERENCE * width);
+		long rows = align(ARRAY_HEADER + (long) REFERENCE * height);
+		return rows + height * (row + width * cell);
+	}
+
+	/**
+	 * Bytes taken by the packed walls (the array of words).
+	 */
+	private static long packedBytes(PackedWalls walls) {
+		return align(ARRAY_HEADER + (long) Long.SIZE / Byte.SIZE
+				* walls.getBits().length);
+	}
+
+	/**
+	 * A SIZE x SIZE maze takes 2 bits per cell, every wall up.
+	 */
+	@Test
+	public void testPackedSize() {
+		PackedWalls walls = new PackedWalls(SIZE, SIZE);
+		long bits = (long) SIZE * SIZE * PackedWalls.BITS_PER_CELL;
+		assertEquals((bits + Long.SIZE - 1) / Long.SIZE,
+				walls.getBits().length);
+		assertTrue(walls.hasAllWallsUp(0, 0));
+		assertTrue(walls.hasAllWallsUp(SIZE - 1, SIZE - 1));
+	}
+
+	/**
+	 * The packed walls take at least 100 times less memory than the cells
+	 * (28 bytes per cell against a quarter of a byte).
+	 */
+	@Test
+	public void testMemory() {
+		long cells = cellMatrixBytes(SIZE, SIZE);
+		long packed = packedBytes(new PackedWalls(SIZE, SIZE));
+		assertTrue(cells >= 28L * SIZE * SIZE);
+		assertTrue(packed * 100 < cells);
+	}
+}
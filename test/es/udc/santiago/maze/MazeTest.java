@@ -5,10 +5,14 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Point;
+import java.util.Arrays;
 
 import org.junit.Test;
 
 import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.WalkerTest;
+import es.udc.santiago.maze.walker.sequential.BreadthFirstWalker;
 
 /**
  * Checks the correct functionality of Maze class.
@@ -69,6 +73,7 @@ public class MazeTest {
 		assertFalse(m.canWalk(new Point(0, 0), new Point(200, 0)));
 		cells[0][2] = new Cell(2, 0, true, false, false, false);
 		cells[0][1] = new Cell(1, 0, true, false, true, true);
+		m = new Maze(cells, null, null);
 		assertTrue(m.canWalk(new Point(1, 0), new Point(2, 0)));
 	}
 
@@ -94,11 +99,132 @@ public class MazeTest {
 		cells[4][5] = new Cell(4, 5, true, true, false, true);
 		cells[5][4] = new Cell(5, 4, true, false, true, true);
 		m = new Maze(cells, null, null);
-		assertTrue(1 == MazeUtils.directionsByteToList(
+		assertTrue(Path.RIGHT == MazeUtils.directionsByteToList(
 				m.findPossibleDirections(new Point(5, 5))).get(0));
-		assertTrue(2 == MazeUtils.directionsByteToList(
+		assertTrue(Path.DOWN == MazeUtils.directionsByteToList(
 				m.findPossibleDirections(new Point(5, 5))).get(1));
-		assertTrue(3 == MazeUtils.directionsByteToList(
+		assertTrue(Path.LEFT == MazeUtils.directionsByteToList(
 				m.findPossibleDirections(new Point(5, 5))).get(2));
 	}
+
+	/**
+	 * openDirections() must agree with canWalk() for every cell and incoming
+	 * direction.
+	 */
+	@Test
+	public void testOpenDirections() {
+		Maze m = new Maze(40, 60, true);
+		byte[] incoming = { Path.NO_DIRECTION, Path.UP, Path.RIGHT, Path.DOWN,
+				Path.LEFT };
+		for (int y = 0; y < m.getHeight(); y++) {
+			for (int x = 0; x < m.getWidth(); x++) {
+				Point p = new Point(x, y);
+				for (byte in : incoming) {
+					int expected = 0;
+					if (m.canWalk(p, new Point(x, y - 1)) && in != Path.DOWN) {
+						expected |= Path.UP;
+					}
+					if (m.canWalk(p, new Point(x + 1, y)) && in != Path.LEFT) {
+						expected |= Path.RIGHT;
+					}
+					if (m.canWalk(p, new Point(x, y + 1)) && in != Path.UP) {
+						expected |= Path.DOWN;
+					}
+					if (m.canWalk(p, new Point(x - 1, y)) && in != Path.RIGHT) {
+						expected |= Path.LEFT;
+					}
+					assertEquals(expected, m.openDirections(x, y, in));
+					assertEquals(expected, m.findPossibleDirections(p, in));
+				}
+			}
+		}
+		assertEquals(Path.NO_DIRECTION,
+				m.openDirections(-1, 0, Path.NO_DIRECTION));
+	}
+
+	/**
+	 * getCell()
+	 */
+	@Test
+	public void testGetCell() {
+		Maze m = new Maze(new PackedWalls(4, 3), new Point(0, 0), new Point(3,
+				2));
+		// Cells are views: opening a wall opens the neighbor's one too
+		m.getCell(1, 1).setRightWall(false);
+		assertFalse(m.getCell(1, 2).hasLeftWall());
+		assertTrue(m.canWalk(new Point(1, 1), new Point(2, 1)));
+		assertTrue(m.canWalk(new Point(2, 1), new Point(1, 1)));
+		m.getCell(2, 3).setTopWall(false);
+		assertFalse(m.getCell(1, 3).hasBottomWall());
+		assertTrue(m.canWalk(new Point(3, 1), new Point(3, 2)));
+		// Borders can't be opened
+		m.getCell(0, 0).setLeftWall(false);
+		assertTrue(m.getCell(0, 0).hasLeftWall());
+		assertTrue(m.getCell(0, 0).hasAllWallsUp());
+	}
+
+	/**
+	 * Copies a maze (its walls aren't shared).
+	 */
+	private static Maze copy(Maze m) {
+		PackedWalls walls = new PackedWalls(m.getWidth(), m.getHeight(), m
+				.getWalls().getBits().clone());
+		return new Maze(walls, m.getStart(), m.getEnd());
+	}
+
+	/**
+	 * fillDeadEnds(): only the route from start to end remains open, with
+	 * one or several threads.
+	 */
+	@Test
+	public void testFillDeadEnds() {
+		// 77 columns: bands can't start at every row
+		Maze m = new Maze(150, 77, true);
+		Path expected = new BreadthFirstWalker(m).walk();
+		Maze sequential = copy(m);
+		Maze threaded = copy(m);
+		int filled = sequential.fillDeadEnds();
+		assertEquals(filled, threaded.fillDeadEnds(4));
+		assertTrue(Arrays.equals(sequential.getWalls().getBits(), threaded
+				.getWalls().getBits()));
+		int openCells = 0;
+		for (int y = 0; y < m.getHeight(); y++) {
+			for (int x = 0; x < m.getWidth(); x++) {
+				if (sequential.openDirections(x, y, Path.NO_DIRECTION) != 0) {
+					openCells++;
+				}
+			}
+		}
+		assertEquals(expected.size() + 1, openCells);
+		assertEquals(m.getWidth() * m.getHeight() - openCells, filled);
+		Path result = new BreadthFirstWalker(sequential).walk();
+		WalkerTest.assertValidPath(m, result);
+		assertEquals(expected.size(), result.size());
+	}
+
+	/**
+	 * PackedWalls.getRegion(): walls are copied and cells outside the maze
+	 * have all walls up.
+	 */
+	@Test
+	public void testGetRegion() {
+		Maze m = new Maze(70, 90, 3L);
+		PackedWalls walls = m.getWalls();
+		int[][] regions = { { 0, 0, 90, 70 }, { -1, -1, 40, 33 },
+				{ 17, 5, 33, 64 }, { 61, 50, 31, 21 }, { 89, 69, 1, 1 } };
+		for (int[] r : regions) {
+			PackedWalls region = walls.getRegion(r[0], r[1], r[2], r[3]);
+			for (int y = 0; y < r[3]; y++) {
+				for (int x = 0; x < r[2]; x++) {
+					int mx = r[0] + x;
+					int my = r[1] + y;
+					boolean inside = mx >= 0 && mx < 90 && my >= 0 && my < 70;
+					assertEquals(!inside || walls.hasRightWall(mx, my),
+							region.hasRightWall(x, y));
+					assertEquals(!inside || walls.hasBottomWall(mx, my),
+							region.hasBottomWall(x, y));
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,90 @@
+package es.udc.santiago.maze.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+
+import org.junit.Test;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.walker.Path;
+
+/**
+ * Checks the junction graph.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class JunctionGraphTest {
+
+	/**
+	 * A corridor with a branch: start, end, the junction and the dead end
+	 * are the only nodes.
+	 */
+	@Test
+	public void testBuild() {
+		// Row 0 is a corridor from (0, 0) to (5, 0), (2, 0) goes down to
+		// (2, 2)
+		PackedWalls walls = new PackedWalls(6, 3);
+		for (int x = 0; x < 5; x++) {
+			walls.setRightWall(x, 0, false);
+		}
+		walls.setBottomWall(2, 0, false);
+		walls.setBottomWall(2, 1, false);
+		Maze m = new Maze(walls, new Point(0, 0), new Point(5, 0));
+		JunctionGraph graph = new JunctionGraphBuilder(m).build();
+		assertEquals(4, graph.getNodeCount());
+		assertEquals(6, graph.getEdgeCount());
+		int junction = graph.findNode(2, 0);
+		assertEquals(JunctionGraph.NO_NODE, graph.findNode(1, 0));
+		assertEquals(3, graph.getEndEdge(junction)
+				- graph.getFirstEdge(junction));
+		for (int edge = graph.getFirstEdge(junction); edge < graph
+				.getEndEdge(junction); edge++) {
+			int target = graph.getTarget(edge);
+			if (target == graph.getStartNode()) {
+				assertEquals(2, graph.getLength(edge));
+				assertEquals(Path.LEFT, graph.getDirection(edge));
+			} else if (target == graph.getEndNode()) {
+				assertEquals(3, graph.getLength(edge));
+				assertEquals(Path.RIGHT, graph.getDirection(edge));
+			} else {
+				assertEquals(graph.findNode(2, 2), target);
+				assertEquals(2, graph.getLength(edge));
+				assertEquals(Path.DOWN, graph.getDirection(edge));
+			}
+		}
+	}
+
+	/**
+	 * Edges are symmetric and expanding them walks the whole corridor.
+	 */
+	@Test
+	public void testEdges() {
+		Maze m = new Maze(200, 200, true);
+		JunctionGraph graph = new JunctionGraphBuilder(m).build();
+		int cells = m.getWidth() * m.getHeight();
+		assertTrue(graph.getNodeCount() * 3 < cells);
+		for (int node = 0; node < graph.getNodeCount(); node++) {
+			for (int edge = graph.getFirstEdge(node); edge < graph
+					.getEndEdge(node); edge++) {
+				int target = graph.getTarget(edge);
+				boolean back = false;
+				for (int other = graph.getFirstEdge(target); other < graph
+						.getEndEdge(target); other++) {
+					back |= graph.getTarget(other) == node
+							&& graph.getLength(other) == graph.getLength(edge);
+				}
+				assertTrue(back);
+				Path path = new Path(new Point(graph.getNodeX(node), graph
+						.getNodeY(node)));
+				graph.appendCorridor(path, edge);
+				assertEquals(graph.getLength(edge), path.size());
+				assertEquals(graph.getNodeX(target), path.getCurrentX());
+				assertEquals(graph.getNodeY(target), path.getCurrentY());
+			}
+		}
+	}
+}
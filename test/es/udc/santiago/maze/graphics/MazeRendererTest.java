@@ -0,0 +1,168 @@
+package es.udc.santiago.maze.graphics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * MazeRenderer class (it doesn't need a display).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeRendererTest {
+	private static final int CELL = 6;
+	private static final int WHITE = Color.WHITE.getRGB();
+	private static final int BLACK = Color.BLACK.getRGB();
+
+	/**
+	 * Walls, borders, start, end and path cells.
+	 */
+	@Test
+	public void testPixels() {
+		Maze m = new Maze(12, 17, 3L);
+		Path path = new SequentialWalker(m).walk();
+		MazeRenderer renderer = new MazeRenderer(m, CELL, 3);
+		renderer.addPath(path, Color.GREEN);
+		BufferedImage image = renderer.render();
+		assertEquals(17 * CELL + 1, image.getWidth());
+		assertEquals(12 * CELL + 1, image.getHeight());
+		PackedWalls walls = m.getWalls();
+		for (int y = 0; y < m.getHeight(); y++) {
+			for (int x = 0; x < m.getWidth(); x++) {
+				int left = x * CELL;
+				int top = y * CELL;
+				assertEquals(BLACK, image.getRGB(left, top));
+				assertEquals(walls.hasTopWall(x, y) ? BLACK : WHITE,
+						image.getRGB(left + CELL / 2, top));
+				assertEquals(walls.hasLeftWall(x, y) ? BLACK : WHITE,
+						image.getRGB(left, top + CELL / 2));
+				// Gap between the walls and the marks
+				assertEquals(WHITE, image.getRGB(left + 1, top + 1));
+			}
+		}
+		for (int x = 0; x < image.getWidth(); x++) {
+			assertEquals(BLACK, image.getRGB(x, image.getHeight() - 1));
+		}
+		for (int y = 0; y < image.getHeight(); y++) {
+			assertEquals(BLACK, image.getRGB(image.getWidth() - 1, y));
+		}
+		assertEquals(Color.BLUE.getRGB(), center(image, m.getStart()));
+		assertEquals(Color.RED.getRGB(), center(image, m.getEnd()));
+		for (Point point : path.getPoints()) {
+			if (!point.equals(m.getStart()) && !point.equals(m.getEnd())) {
+				assertEquals(Color.GREEN.getRGB(), center(image, point));
+			}
+		}
+	}
+
+	/**
+	 * A region is the same crop of the whole image, whatever the threads.
+	 */
+	@Test
+	public void testRegion() {
+		Maze m = new Maze(30, 25, 5L);
+		MazeRenderer renderer = new MazeRenderer(m, CELL, 4);
+		renderer.addPath(new SequentialWalker(m).walk(), Color.GREEN);
+		BufferedImage whole = renderer.render();
+		BufferedImage region = new MazeRenderer(m, CELL, 1).render(7, 11, 50,
+				90);
+		for (int y = 0; y < region.getHeight(); y++) {
+			for (int x = 0; x < region.getWidth(); x++) {
+				int expected = whole.getRGB(x + 7, y + 11);
+				if (expected == Color.GREEN.getRGB()) {
+					// The second renderer has no path
+					expected = WHITE;
+				}
+				assertEquals(expected, region.getRGB(x, y));
+			}
+		}
+	}
+
+	/**
+	 * The whole image and its tiles.
+	 */
+	@Test
+	public void testPng() throws IOException {
+		Maze m = new Maze(20, 30, 7L);
+		MazeRenderer renderer = new MazeRenderer(m, CELL, 2);
+		renderer.addPath(new SequentialWalker(m).walk(), Color.GREEN);
+		File file = File.createTempFile("maze", ".png");
+		file.deleteOnExit();
+		renderer.writePng(file);
+		BufferedImage whole = ImageIO.read(file);
+		assertEquals(renderer.getWidth(), whole.getWidth());
+		assertEquals(renderer.getHeight(), whole.getHeight());
+		List<File> tiles = renderer.writeTiles(file, 64);
+		// 181x121 pixels
+		assertEquals(2 * 3, tiles.size());
+		int tile = 0;
+		for (int top = 0; top < whole.getHeight(); top += 64) {
+			for (int left = 0; left < whole.getWidth(); left += 64) {
+				File name = tiles.get(tile++);
+				name.deleteOnExit();
+				assertTrue(name.getName().endsWith(
+						"-" + (top / 64) + "-" + (left / 64) + ".png"));
+				BufferedImage image = ImageIO.read(name);
+				for (int y = 0; y < image.getHeight(); y++) {
+					for (int x = 0; x < image.getWidth(); x++) {
+						assertEquals(whole.getRGB(left + x, top + y),
+								image.getRGB(x, y));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Regions with the paths (indexed by rows) are crops of the whole image,
+	 * also when they cut cells.
+	 */
+	@Test
+	public void testRegionPaths() {
+		Maze m = new Maze(40, 35, 11L);
+		MazeRenderer renderer = new MazeRenderer(m, CELL, 3);
+		renderer.addPath(new SequentialWalker(m).walk(), Color.GREEN);
+		BufferedImage whole = renderer.render();
+		int[][] regions = { { 0, 0, 64, 64 }, { 33, 47, 70, 31 },
+				{ 100, 130, 111, 111 }, { 5, 200, 205, 41 } };
+		for (int[] r : regions) {
+			BufferedImage region = renderer.render(r[0], r[1], r[2], r[3]);
+			for (int y = 0; y < r[3]; y++) {
+				for (int x = 0; x < r[2]; x++) {
+					assertEquals(whole.getRGB(r[0] + x, r[1] + y),
+							region.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tiles must have pixels.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongTileSize() throws IOException {
+		new MazeRenderer(new Maze(5, 5, 1L)).writeTiles(new File("maze.png"),
+				0);
+	}
+
+	private static int center(BufferedImage image, Point cell) {
+		return image.getRGB(cell.x * CELL + CELL / 2, cell.y * CELL + CELL
+				/ 2);
+	}
+}
@@ -0,0 +1,61 @@
+package es.udc.santiago.maze.graphics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * MazeView class (it doesn't need a display).
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MazeViewTest {
+	private static final int CELL = 8;
+
+	/**
+	 * Any region of the view, across tiles or outside the maze, is painted as
+	 * MazeRenderer draws it.
+	 */
+	@Test
+	public void testPaint() {
+		Maze m = new Maze(150, 170, 9L);
+		Path path = new SequentialWalker(m).walk();
+		MazeView view = new MazeView(m, CELL);
+		view.addPath(path, Color.GREEN);
+		MazeRenderer renderer = new MazeRenderer(m, CELL, 2);
+		renderer.addPath(path, Color.GREEN);
+		BufferedImage whole = renderer.render();
+		int[][] regions = { { 0, 0, 300, 200 }, { 500, 700, 600, 400 },
+				{ -5, -5, 1200, 1300 }, { 1000, 900, 400, 400 } };
+		for (int[] region : regions) {
+			BufferedImage image = new BufferedImage(region[2], region[3],
+					BufferedImage.TYPE_INT_RGB);
+			Graphics g = image.getGraphics();
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, region[2], region[3]);
+			view.paint(g, region[0], region[1], region[2], region[3]);
+			g.dispose();
+			for (int y = 0; y < region[3]; y++) {
+				for (int x = 0; x < region[2]; x++) {
+					int left = region[0] + x;
+					int top = region[1] + y;
+					int expected = Color.WHITE.getRGB();
+					if (left >= 0 && top >= 0 && left < whole.getWidth()
+							&& top < whole.getHeight()) {
+						expected = whole.getRGB(left, top);
+					}
+					assertEquals(left + "," + top, expected, image.getRGB(x, y));
+				}
+			}
+		}
+	}
+}
@@ -3,9 +3,16 @@ package es.udc.santiago.maze.utils;
 import static org.junit.Assert.*;
 
 import java.awt.Point;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import org.junit.Test;
 
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
 import es.udc.santiago.maze.walker.Path;
 
 /**
@@ -25,4 +32,129 @@ public class MazeUtilsTest {
 		assertEquals(MazeUtils.getNextPoint(point, Path.RIGHT), new Point(6, 5));
 	}
 
+	/**
+	 * mazeToFile() and fileToMaze()
+	 */
+	@Test
+	public void testFile() throws IOException {
+		File file = File.createTempFile("maze", ".maze");
+		file.deleteOnExit();
+		Maze maze = new Maze(123, 77, 42L);
+		MazeUtils.mazeToFile(maze, file);
+		int words = PackedWalls.wordsFor(77, 123);
+		assertEquals(MazeUtils.HEADER_SIZE + 8L * words, file.length());
+		Maze read = MazeUtils.fileToMaze(file);
+		assertEquals(maze.getWidth(), read.getWidth());
+		assertEquals(maze.getHeight(), read.getHeight());
+		assertEquals(maze.getStart(), read.getStart());
+		assertEquals(maze.getEnd(), read.getEnd());
+		assertEquals(Long.valueOf(42L), read.getSeed());
+		assertTrue(Arrays.equals(maze.getWalls().getBits(), read.getWalls()
+				.getBits()));
+		// The walls are mapped: changing them doesn't change the file
+		int filled = read.fillDeadEnds(4);
+		assertTrue(filled > 0);
+		assertEquals(filled, MazeUtils.fileToMaze(file).fillDeadEnds(1));
+		assertTrue(Arrays.equals(maze.getWalls().getBits(), MazeUtils
+				.fileToMaze(file).getWalls().getBits()));
+		// Without seed
+		maze = new Maze(new PackedWalls(3, 2), new Point(0, 0), new Point(2,
+				1));
+		MazeUtils.mazeToFile(maze, file);
+		read = MazeUtils.fileToMaze(file);
+		assertNull(read.getSeed());
+		assertTrue(read.getWalls().hasAllWallsUp(2, 1));
+		// Not a maze
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[MazeUtils.HEADER_SIZE]);
+		out.close();
+		try {
+			MazeUtils.fileToMaze(file);
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Headers with a magic but a wrong size or points are rejected.
+	 */
+	@Test
+	public void testWrongHeader() throws IOException {
+		File file = File.createTempFile("maze", ".maze");
+		file.deleteOnExit();
+		// Offset of the int and its wrong value: width, height, start x, end y
+		int[][] wrong = { { 8, -1 }, { 12, 0 }, { 8, Integer.MAX_VALUE },
+				{ 16, 10 }, { 28, -3 } };
+		for (int[] field : wrong) {
+			MazeUtils.mazeToFile(new Maze(5, 10, 1L), file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(field[0]);
+			raf.writeInt(field[1]);
+			raf.close();
+			try {
+				MazeUtils.fileToMaze(file);
+				fail("Offset " + field[0]);
+			} catch (IOException e) {
+				// Expected
+			}
+		}
+	}
+
+	/**
+	 * Checks that two grids have the same walls.
+	 */
+	private static void assertSameWalls(PackedWalls expected, PackedWalls actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				assertEquals(expected.hasRightWall(x, y), actual.hasRightWall(x,
+						y));
+				assertEquals(expected.hasBottomWall(x, y), actual
+						.hasBottomWall(x, y));
+			}
+		}
+	}
+
+	/**
+	 * openBandWriter() and openBandReader()
+	 */
+	@Test
+	public void testBands() throws IOException {
+		File file = File.createTempFile("maze", ".maze");
+		file.deleteOnExit();
+		// 77 columns: rows don't start at a word boundary
+		Maze maze = new Maze(123, 77, 42L);
+		MazeBandWriter writer = MazeUtils.openBandWriter(file, 77, 123, maze
+				.getStart(), maze.getEnd(), maze.getSeed());
+		for (int row = 0; row < 123; row += 10) {
+			writer.writeRows(maze.getWalls().getRows(row,
+					Math.min(10, 123 - row)));
+		}
+		writer.close();
+		Maze read = MazeUtils.fileToMaze(file);
+		assertEquals(maze.getStart(), read.getStart());
+		assertEquals(Long.valueOf(42L), read.getSeed());
+		assertSameWalls(maze.getWalls(), read.getWalls());
+		MazeBandReader reader = MazeUtils.openBandReader(file);
+		assertEquals(77, reader.getWidth());
+		assertEquals(123, reader.getHeight());
+		for (int row = 0; row < 123; row += 17) {
+			int rows = Math.min(23, 123 - row);
+			assertSameWalls(maze.getWalls().getRows(row, rows), reader
+					.readRows(row, rows));
+		}
+		reader.close();
+		// Missing rows
+		writer = MazeUtils.openBandWriter(file, 77, 123, maze.getStart(),
+				maze.getEnd(), null);
+		writer.writeRows(maze.getWalls().getRows(0, 10));
+		try {
+			writer.close();
+			fail();
+		} catch (IOException e) {
+			// Expected
+		}
+	}
 }
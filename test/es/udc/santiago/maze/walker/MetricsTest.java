@@ -0,0 +1,223 @@
+package es.udc.santiago.maze.walker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.MeteredCommunicator;
+import es.udc.santiago.executionEnvironment.ParallelJob;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.Request;
+import es.udc.santiago.executionEnvironment.ThreadCommunicator;
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.walker.bidirectional.BidirectionalWalker;
+import es.udc.santiago.maze.walker.parallel.ForkJoinWalker;
+import es.udc.santiago.maze.walker.parallel.ParallelWalker;
+import es.udc.santiago.maze.walker.parallel.ParallelWalkingManager;
+import es.udc.santiago.maze.walker.sequential.BreadthFirstWalker;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * Metrics and MeteredCommunicator classes.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class MetricsTest {
+	private static final int TAG = 3;
+
+	/**
+	 * Counters, queue depths and the copy sent between processes.
+	 */
+	@Test
+	public void testCounters() {
+		Metrics metrics = new Metrics(2);
+		metrics.addWalk(10, 2, 1, 3);
+		metrics.add(Metrics.CELLS_EXPANDED, 5);
+		metrics.queueDepth(4);
+		metrics.queueDepth(8);
+		metrics.queueDepth(6);
+		metrics.sent(TAG, 16);
+		metrics.received(TAG, 8);
+		metrics.received(TAG, 8);
+		assertEquals(15, metrics.get(Metrics.CELLS_EXPANDED));
+		assertEquals(2, metrics.get(Metrics.JUNCTIONS_FOUND));
+		assertEquals(1, metrics.get(Metrics.DUPLICATE_EXPANSIONS));
+		assertEquals(3, metrics.get(Metrics.BACKTRACKS));
+		assertEquals(8, metrics.get(Metrics.MAX_QUEUE_DEPTH));
+		assertEquals(18, metrics.get(Metrics.QUEUE_DEPTH_SUM));
+		assertEquals(3, metrics.get(Metrics.QUEUE_SAMPLES));
+		assertEquals(1, metrics.getSent(TAG));
+		assertEquals(16, metrics.getSentBytes(TAG));
+		assertEquals(2, metrics.getReceived(TAG));
+		assertEquals(16, metrics.getReceivedBytes(TAG));
+		Metrics copy = Metrics.fromArray(2, metrics.toArray());
+		assertArrayEquals(metrics.toArray(), copy.toArray());
+	}
+
+	/**
+	 * DISABLED doesn't record anything.
+	 */
+	@Test
+	public void testDisabled() {
+		Metrics.DISABLED.addWalk(1, 1, 1, 1);
+		Metrics.DISABLED.queueDepth(1);
+		Metrics.DISABLED.sent(TAG, 8);
+		assertFalse(Metrics.DISABLED.isEnabled());
+		assertEquals(0, Metrics.DISABLED.get(Metrics.CELLS_EXPANDED));
+		assertEquals(0, Metrics.DISABLED.getSent(TAG));
+		assertArrayEquals(new long[Metrics.SIZE], Metrics.DISABLED.toArray());
+	}
+
+	/**
+	 * Walkers report what they expand. Mazes are perfect, so nothing is
+	 * expanded twice.
+	 */
+	@Test
+	public void testWalkers() {
+		Maze m = new Maze(200, 200, 11L);
+		Walker[] walkers = { new SequentialWalker(m),
+				new BreadthFirstWalker(m), new BidirectionalWalker(m, true),
+				new ForkJoinWalker(m, 4) };
+		for (Walker walker : walkers) {
+			Metrics metrics = new Metrics(0);
+			walker.setMetrics(metrics);
+			WalkerTest.assertValidPath(m, walker.walk());
+			String name = walker.getClass().getSimpleName();
+			assertTrue(name, metrics.get(Metrics.CELLS_EXPANDED) > 0);
+			assertTrue(name, metrics.get(Metrics.JUNCTIONS_FOUND) > 0);
+			assertTrue(name, metrics.get(Metrics.BACKTRACKS) > 0);
+			assertEquals(name, 0, metrics.get(Metrics.DUPLICATE_EXPANSIONS));
+			assertTrue(name, metrics.get(Metrics.MAX_QUEUE_DEPTH) > 0);
+		}
+	}
+
+	/**
+	 * Messages are counted by tag, posted receives when they complete.
+	 */
+	@Test(timeout = 10000)
+	public void testMeteredCommunicator() throws Exception {
+		final Metrics[] metrics = { new Metrics(0), new Metrics(1) };
+		ThreadCommunicator.run(2, new ParallelJob() {
+			public void run(Communicator threads) {
+				Communicator comm = new MeteredCommunicator(threads,
+						metrics[threads.rank()]);
+				if (comm.rank() == 0) {
+					comm.send(new long[3], 0, 3, 1, TAG);
+					comm.isend(new long[2], 0, 2, 1, TAG + 1);
+					return;
+				}
+				comm.recv(new long[3], 0, 3, 0, TAG);
+				Request request = comm.irecv(new long[2], 0, 2, 0, TAG + 1);
+				while (request.test() == null) {
+					Thread.yield();
+				}
+				assertNotNull(request.test());
+			}
+		});
+		assertEquals(1, metrics[0].getSent(TAG));
+		assertEquals(24, metrics[0].getSentBytes(TAG));
+		assertEquals(16, metrics[0].getSentBytes(TAG + 1));
+		assertEquals(1, metrics[1].getReceived(TAG));
+		assertEquals(24, metrics[1].getReceivedBytes(TAG));
+		assertEquals(1, metrics[1].getReceived(TAG + 1));
+		assertEquals(16, metrics[1].getReceivedBytes(TAG + 1));
+	}
+
+	/**
+	 * The sons of a parallel solve report their walks and send their metrics
+	 * to the master.
+	 */
+	@Test(timeout = 60000)
+	public void testParallel() throws Exception {
+		final Maze m = new Maze(200, 200, 13L);
+		final List<Metrics> processes = new ArrayList<Metrics>();
+		ThreadCommunicator.run(4, new ParallelJob() {
+			public void run(Communicator threads) {
+				Metrics metrics = new Metrics(threads.rank());
+				Communicator comm = new MeteredCommunicator(threads, metrics);
+				Maze received = ParallelUtils.broadcastMaze(comm,
+						(comm.rank() == 0) ? m : null);
+				if (comm.rank() != 0) {
+					ParallelWalker walker = new ParallelWalker(comm, received);
+					walker.setMetrics(metrics);
+					walker.doJob();
+					ParallelUtils.sendMetrics(comm, metrics);
+					return;
+				}
+				new ParallelWalkingManager(comm, received).doJob();
+				processes.add(metrics);
+				for (int son = 1; son < comm.size(); son++) {
+					processes.add(ParallelUtils.receiveMetrics(comm, son));
+				}
+			}
+		});
+		long expanded = 0;
+		for (Metrics metrics : processes.subList(1, processes.size())) {
+			expanded += metrics.get(Metrics.CELLS_EXPANDED);
+		}
+		assertTrue(expanded > 0);
+		assertEquals(4, processes.size());
+		// At least the result
+		assertTrue(processes.get(0).getReceived(
+				ParallelUtils.TAG_COMMUNICATION) > 0);
+	}
+
+	/**
+	 * CSV and JSON files.
+	 */
+	@Test
+	public void testWrite() throws IOException {
+		Metrics first = new Metrics(0);
+		first.addWalk(7, 0, 0, 0);
+		Metrics second = new Metrics(1);
+		second.sent(TAG, 8);
+		List<Metrics> processes = Arrays.asList(first, second);
+		File csv = File.createTempFile("metrics", ".csv");
+		csv.deleteOnExit();
+		Metrics.write(processes, csv);
+		List<String> lines = readLines(csv);
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0).startsWith("rank,cellsExpanded,"));
+		assertTrue(lines.get(0).endsWith(",tag3.sent,tag3.sentBytes,"
+				+ "tag3.received,tag3.receivedBytes"));
+		assertTrue(lines.get(1).startsWith("0,7,"));
+		assertTrue(lines.get(2).endsWith(",1,8,0,0"));
+		File json = File.createTempFile("metrics", ".json");
+		json.deleteOnExit();
+		Metrics.write(processes, json);
+		lines = readLines(json);
+		assertEquals(4, lines.size());
+		assertTrue(lines.get(1).contains("\"rank\": 0, \"cellsExpanded\": 7,"));
+		assertTrue(lines.get(2).contains("\"messages\": {\"3\": {\"sent\": 1, "
+				+ "\"sentBytes\": 8, \"received\": 0, \"receivedBytes\": 0}}"));
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line = reader.readLine();
+			while (line != null) {
+				lines.add(line);
+				line = reader.readLine();
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -3,6 +3,7 @@ package es.udc.santiago.maze.walker;
 import static org.junit.Assert.*;
 
 import java.awt.Point;
+import java.util.LinkedList;
 
 import org.junit.Test;
 
@@ -43,4 +44,59 @@ public class PathTest {
 		assertEquals(new Point(53, 13), path.getCurrentPoint());
 	}
 
+
+	/**
+	 * clone() shares the walked movements but both paths can keep walking on
+	 * their own.
+	 */
+	@Test
+	public void testClone() {
+		Path path = new Path(new Point(0, 0));
+		for (int i = 0; i < 100; i++) {
+			path.addMovement(Path.RIGHT);
+		}
+		Path clone = path.clone();
+		path.addMovement(Path.DOWN);
+		clone.addMovement(Path.UP);
+		clone.addMovement(Path.LEFT);
+		assertEquals(101, path.size());
+		assertEquals(102, clone.size());
+		assertEquals(new Point(100, 1), path.getCurrentPoint());
+		assertEquals(new Point(99, -1), clone.getCurrentPoint());
+		assertEquals(Byte.valueOf(Path.DOWN),
+				new LinkedList<Byte>(path.getMovements()).getLast());
+		LinkedList<Byte> cloneMovements = new LinkedList<Byte>(
+				clone.getMovements());
+		assertEquals(Byte.valueOf(Path.LEFT), cloneMovements.removeLast());
+		assertEquals(Byte.valueOf(Path.UP), cloneMovements.removeLast());
+		assertEquals(Byte.valueOf(Path.RIGHT), cloneMovements.getLast());
+		// Clone of a clone
+		Path second = clone.clone();
+		second.addMovement(Path.DOWN);
+		assertEquals(103, second.size());
+		assertEquals(102, clone.size());
+		assertEquals(clone.getPoints().size() + 1, second.getPoints().size());
+	}
+
+	/**
+	 * getAsIntArray() and Path(int[])
+	 */
+	@Test
+	public void testAsIntArray() {
+		Path path = new Path(new Point(3, 4));
+		byte[] movements = { Path.UP, Path.RIGHT, Path.DOWN, Path.LEFT };
+		for (int i = 0; i < 1000; i++) {
+			path.addMovement(movements[i % movements.length]);
+		}
+		int[] array = path.getAsIntArray();
+		assertEquals(1002, array.length);
+		assertEquals(3, array[0]);
+		assertEquals(4, array[1]);
+		Path copy = new Path(array);
+		assertEquals(path.getStart(), copy.getStart());
+		assertEquals(path.getCurrentPoint(), copy.getCurrentPoint());
+		assertEquals(path.getMovements(), copy.getMovements());
+		assertArrayEquals(array, copy.getAsIntArray());
+	}
 }
+
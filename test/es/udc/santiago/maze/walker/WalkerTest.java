@@ -1,11 +1,24 @@
 package es.udc.santiago.maze.walker;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
 
 import org.junit.Test;
 
 import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.bidirectional.BidirectionalWalker;
+import es.udc.santiago.maze.walker.parallel.ForkJoinWalker;
+import es.udc.santiago.maze.walker.sequential.BreadthFirstWalker;
+import es.udc.santiago.maze.walker.sequential.JunctionGraphWalker;
 import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+import es.udc.santiago.maze.walker.sequential.StreamingWalker;
 
 /**
  * Walker class.
@@ -35,4 +48,143 @@ public class WalkerTest {
 		System.out.println("Milliseconds: " + totalTime);
 		System.out.println("Milliseconds per maze: " + totalTime/10);
 	}
+
+	/**
+	 * Checks that a path goes from the maze's start to its end without
+	 * crossing any wall.
+	 */
+	public static void assertValidPath(Maze m, Path path) {
+		assertEquals(m.getStart(), path.getStart());
+		Point current = path.getStart();
+		for (byte direction : path.getMovements()) {
+			Point next = MazeUtils.getNextPoint(current, direction);
+			assertTrue("Wall between " + current + " and " + next,
+					m.canWalk(current, next));
+			current = next;
+		}
+		assertEquals(m.getEnd(), current);
+	}
+
+	/**
+	 * BreadthFirstWalker.walk()
+	 */
+	@Test
+	public void testBreadthFirstWalk() {
+		for (int i = 0; i < 10; i++) {
+			Maze m = new Maze(300, 300, true);
+			Path result = new BreadthFirstWalker(m).walk();
+			assertValidPath(m, result);
+			// Perfect mazes have a single path
+			assertEquals(new SequentialWalker(m).walk().size(), result.size());
+		}
+		// Without inner walls the shortest path is the straight one
+		PackedWalls walls = new PackedWalls(20, 10);
+		for (int y = 0; y < 10; y++) {
+			for (int x = 0; x < 20; x++) {
+				walls.setRightWall(x, y, x == 19);
+				walls.setBottomWall(x, y, y == 9);
+			}
+		}
+		Maze m = new Maze(walls, new Point(2, 1), new Point(17, 8));
+		Path result = new BreadthFirstWalker(m).walk();
+		assertValidPath(m, result);
+		assertEquals(15 + 7, result.size());
+		// Unreachable end
+		m = new Maze(new PackedWalls(5, 5), new Point(0, 0), new Point(4, 4));
+		assertNull(new BreadthFirstWalker(m).walk());
+	}
+
+	/**
+	 * BidirectionalWalker.walk() on one and two threads.
+	 */
+	@Test
+	public void testBidirectionalWalk() {
+		for (int i = 0; i < 10; i++) {
+			Maze m = new Maze(300, 300, true);
+			int length = new BreadthFirstWalker(m).walk().size();
+			Path result = new BidirectionalWalker(m, false).walk();
+			assertValidPath(m, result);
+			assertEquals(length, result.size());
+			result = new BidirectionalWalker(m, true).walk();
+			assertValidPath(m, result);
+			assertEquals(length, result.size());
+		}
+		Maze m = new Maze(new PackedWalls(5, 5), new Point(0, 0), new Point(4,
+				4));
+		assertNull(new BidirectionalWalker(m, false).walk());
+		assertNull(new BidirectionalWalker(m, true).walk());
+	}
+
+	/**
+	 * ForkJoinWalker.walk()
+	 */
+	@Test
+	public void testForkJoinWalk() {
+		for (int i = 0; i < 10; i++) {
+			Maze m = new Maze(300, 300, true);
+			Path result = new ForkJoinWalker(m, 4).walk();
+			assertValidPath(m, result);
+		}
+		// Lots of loops
+		PackedWalls walls = new PackedWalls(50, 50);
+		for (int y = 0; y < 50; y++) {
+			for (int x = 0; x < 50; x++) {
+				walls.setRightWall(x, y, x == 49);
+				walls.setBottomWall(x, y, y == 49);
+			}
+		}
+		Maze m = new Maze(walls, new Point(0, 0), new Point(49, 49));
+		assertValidPath(m, new ForkJoinWalker(m, 4).walk());
+		m = new Maze(new PackedWalls(5, 5), new Point(0, 0), new Point(4, 4));
+		assertNull(new ForkJoinWalker(m, 4).walk());
+	}
+
+	/**
+	 * JunctionGraphWalker.walk()
+	 */
+	@Test
+	public void testJunctionGraphWalk() {
+		for (int i = 0; i < 10; i++) {
+			Maze m = new Maze(300, 300, true);
+			Path result = new JunctionGraphWalker(m).walk();
+			assertValidPath(m, result);
+			assertEquals(new BreadthFirstWalker(m).walk().size(), result.size());
+		}
+		// Without inner walls every cell is a junction
+		PackedWalls walls = new PackedWalls(20, 10);
+		for (int y = 0; y < 10; y++) {
+			for (int x = 0; x < 20; x++) {
+				walls.setRightWall(x, y, x == 19);
+				walls.setBottomWall(x, y, y == 9);
+			}
+		}
+		Maze m = new Maze(walls, new Point(2, 1), new Point(17, 8));
+		Path result = new JunctionGraphWalker(m).walk();
+		assertValidPath(m, result);
+		assertEquals(15 + 7, result.size());
+		m = new Maze(new PackedWalls(5, 5), new Point(0, 0), new Point(4, 4));
+		assertNull(new JunctionGraphWalker(m).walk());
+	}
+
+	/**
+	 * StreamingWalker.walk() with a small window.
+	 */
+	@Test
+	public void testStreamingWalk() throws IOException {
+		File file = File.createTempFile("maze", ".maze");
+		file.deleteOnExit();
+		for (int i = 0; i < 5; i++) {
+			Maze m = new Maze(300, 250, true);
+			MazeUtils.mazeToFile(m, file);
+			StreamingWalker walker = new StreamingWalker(file, 8);
+			Path result = walker.walk();
+			assertValidPath(m, result);
+			assertEquals(new BreadthFirstWalker(m).walk().size(), result.size());
+			assertTrue(walker.getWindowLoads() > 1);
+		}
+		Maze m = new Maze(new PackedWalls(5, 5), new Point(0, 0), new Point(4,
+				4));
+		MazeUtils.mazeToFile(m, file);
+		assertNull(new StreamingWalker(file, 2).walk());
+	}
 }
@@ -0,0 +1,177 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import static es.udc.santiago.maze.walker.WalkerTest.assertValidPath;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.awt.Point;
+import java.io.File;
+
+import org.junit.Test;
+
+import es.udc.santiago.executionEnvironment.Communicator;
+import es.udc.santiago.executionEnvironment.ParallelJob;
+import es.udc.santiago.executionEnvironment.ParallelUtils;
+import es.udc.santiago.executionEnvironment.ThreadCommunicator;
+import es.udc.santiago.executionEnvironment.WorkMessage;
+import es.udc.santiago.maze.Maze;
+import es.udc.santiago.maze.PackedWalls;
+import es.udc.santiago.maze.utils.MazeUtils;
+import es.udc.santiago.maze.walker.Path;
+import es.udc.santiago.maze.walker.sequential.SequentialWalker;
+
+/**
+ * ParallelWalker and TileWalker classes, with a thread per process.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class ParallelWalkerTest {
+	private static final int[] PROCESSES = { 2, 3, 5, 8 };
+
+	/**
+	 * Solves a maze with the work stealing walkers.
+	 * 
+	 * @return Path found by the master.
+	 */
+	private static Path solve(int nproc, final Maze maze, final boolean paths)
+			throws Exception {
+		final Path[] result = new Path[1];
+		ThreadCommunicator.run(nproc, new ParallelJob() {
+			public void run(Communicator comm) {
+				Maze received = ParallelUtils.broadcastMaze(comm,
+						(comm.rank() == 0) ? maze : null);
+				if (comm.rank() == 0) {
+					result[0] = new ParallelWalkingManager(comm, received,
+							paths).doJob();
+				} else {
+					new ParallelWalker(comm, received, paths).doJob();
+				}
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Solves a maze with the tile walkers.
+	 * 
+	 * @param file
+	 *            Maze file, <i>null</i> to send the tiles of the maze.
+	 * @return Path found by the master.
+	 */
+	private static Path solveTiles(int nproc, final Maze maze,
+			final File file) throws Exception {
+		final Path[] result = new Path[1];
+		ThreadCommunicator.run(nproc, new ParallelJob() {
+			public void run(Communicator comm) throws Exception {
+				if (comm.rank() != 0) {
+					new TileWalker(comm).doJob();
+				} else if (file != null) {
+					result[0] = new TileWalkingManager(comm, file).doJob();
+				} else {
+					result[0] = new TileWalkingManager(comm, maze).doJob();
+				}
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Closes the end of a maze, so there isn't any path.
+	 */
+	private static Maze closeEnd(Maze maze) {
+		Point end = maze.getEnd();
+		PackedWalls walls = maze.getWalls();
+		walls.setTopWall(end.x, end.y, true);
+		walls.setRightWall(end.x, end.y, true);
+		walls.setBottomWall(end.x, end.y, true);
+		walls.setLeftWall(end.x, end.y, true);
+		return maze;
+	}
+
+	/**
+	 * Sending whole paths.
+	 */
+	@Test(timeout = 60000)
+	public void testPaths() throws Exception {
+		for (int nproc : PROCESSES) {
+			Maze m = new Maze(200, 300, 17L + nproc);
+			Path result = solve(nproc, m, true);
+			assertValidPath(m, result);
+			// Perfect mazes have a single path
+			assertEquals(new SequentialWalker(m).walk().size(), result.size());
+		}
+	}
+
+	/**
+	 * Sending only junctions (the master rebuilds the path).
+	 */
+	@Test(timeout = 60000)
+	public void testJunctions() throws Exception {
+		for (int nproc : PROCESSES) {
+			Maze m = new Maze(200, 300, 31L + nproc);
+			Path result = solve(nproc, m, false);
+			assertValidPath(m, result);
+			assertEquals(new SequentialWalker(m).walk().size(), result.size());
+		}
+	}
+
+	/**
+	 * One tile per son, sent from memory and read from a file.
+	 */
+	@Test(timeout = 60000)
+	public void testTiles() throws Exception {
+		File file = File.createTempFile("tiles", ".maze");
+		file.deleteOnExit();
+		for (int nproc : PROCESSES) {
+			Maze m = new Maze(150, 250, 43L + nproc);
+			Path result = solveTiles(nproc, m, null);
+			assertValidPath(m, result);
+			assertEquals(new SequentialWalker(m).walk().size(), result.size());
+			MazeUtils.mazeToFile(m, file);
+			assertValidPath(m, solveTiles(nproc, null, file));
+		}
+	}
+
+	/**
+	 * The son which found the end stays parked until the kill signal, even
+	 * if the termination token reaches it.
+	 */
+	@Test(timeout = 60000)
+	public void testFoundSonWaits() throws Exception {
+		final Maze m = new Maze(100, 100, 11L);
+		final Thread[] son = new Thread[1];
+		ThreadCommunicator.run(2, new ParallelJob() {
+			public void run(Communicator comm) throws Exception {
+				if (comm.rank() == 1) {
+					son[0] = Thread.currentThread();
+					new ParallelWalker(comm, m, true).doJob();
+					return;
+				}
+				new ParallelWalkingManager(comm, m, true).prepareJob();
+				assertEquals(WorkMessage.PATH_FOUND, ParallelUtils
+						.receiveFromSons(comm).getOpcode());
+				ParallelUtils.sendToken(comm, 0, false);
+				Thread.sleep(100);
+				for (int i = 0; i < 10; i++) {
+					assertEquals(Thread.State.TIMED_WAITING, son[0].getState());
+					Thread.sleep(20);
+				}
+				ParallelUtils.tellSonsToStop(comm);
+			}
+		});
+	}
+
+	/**
+	 * The sons find out that the end can't be reached.
+	 */
+	@Test(timeout = 60000)
+	public void testNoPath() throws Exception {
+		for (int nproc : PROCESSES) {
+			assertNull(solve(nproc, closeEnd(new Maze(100, 100, 5L)), true));
+			assertNull(solve(nproc, closeEnd(new Maze(100, 100, 6L)), false));
+			assertNull(solveTiles(nproc, closeEnd(new Maze(100, 100, 7L)),
+					null));
+		}
+	}
+}
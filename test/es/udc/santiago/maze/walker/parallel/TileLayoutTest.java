@@ -0,0 +1,46 @@
+package es.udc.santiago.maze.walker.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the split of mazes in tiles.
+ * 
+ * @author Santiago Munín González
+ * 
+ */
+public class TileLayoutTest {
+
+	/**
+	 * Every cell belongs to exactly the tile which contains it, and tiles are
+	 * as square as possible.
+	 */
+	@Test
+	public void testTileOf() {
+		int[][] cases = { { 100, 100, 4 }, { 333, 77, 6 }, { 50, 400, 12 },
+				{ 10, 10, 7 }, { 17, 3, 1 }, { 64, 64, 16 } };
+		for (int[] c : cases) {
+			TileLayout layout = new TileLayout(c[0], c[1], c[2]);
+			assertEquals(c[2], layout.size());
+			int cells = 0;
+			for (int tile = 0; tile < layout.size(); tile++) {
+				assertTrue(layout.getWidth(tile) > 0);
+				assertTrue(layout.getHeight(tile) > 0);
+				cells += layout.getWidth(tile) * layout.getHeight(tile);
+				for (int y = layout.getTop(tile); y < layout.getTop(tile)
+						+ layout.getHeight(tile); y++) {
+					for (int x = layout.getLeft(tile); x < layout.getLeft(tile)
+							+ layout.getWidth(tile); x++) {
+						assertEquals(tile, layout.tileOf(x, y));
+						assertEquals(tile + 1, layout.owner(x, y));
+					}
+				}
+			}
+			assertEquals(c[0] * c[1], cells);
+		}
+		assertEquals(2, new TileLayout(100, 100, 4).getColumns());
+		assertEquals(6, new TileLayout(400, 100, 12).getColumns());
+	}
+}